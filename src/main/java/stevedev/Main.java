@@ -18,6 +18,9 @@ import stevedev.gui.MainWindow;
  * - Cancelación de descargas en progreso
  * - Gestión de archivos parciales
  * 
+ * Para servidores sin pantalla, {@link stevedev.cli.DownloadCli} ejecuta el mismo gestor
+ * sin cargar JavaFX.
+ * 
  * @author MrxSteve
  * @version 1.0
  */
@@ -0,0 +1,386 @@
+package stevedev.cli;
+
+import stevedev.core.DownloadManager;
+import stevedev.model.DownloadItem;
+import stevedev.util.FileUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Modo sin interfaz gráfica: descarga las URL indicadas con {@link DownloadManager},
+ * muestra el progreso agregado cada pocos segundos y termina con un código de salida.
+ *
+ * No carga ninguna clase de JavaFX, así que arranca en una fracción del tiempo de la
+ * aplicación gráfica y sirve en servidores sin pantalla. Uso:
+ *
+ * <pre>
+ * mvn -q compile exec:java -Dexec.mainClass=stevedev.cli.DownloadCli -Dexec.args="-i urls.txt -c 8"
+ * </pre>
+ *
+ * Códigos de salida: 0 si todas las descargas se completan, 1 si alguna falla, no pasa la
+ * verificación de hash o se cancela, y 2 si los argumentos o la lista de URL no son válidos.
+ */
+public class DownloadCli {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_INTERVAL_SECONDS = 2;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Uso: DownloadCli [opciones] [URL ...]",
+            "  -i, --input ARCHIVO     Lista de URL, una por línea: URL [hash] (# para comentarios)",
+            "  -o, --output DIR        Carpeta de destino (por defecto, la carpeta de descargas)",
+            "  -c, --concurrency N     Descargas simultáneas (por defecto " + DEFAULT_CONCURRENCY + ")",
+            "      --interval S        Segundos entre líneas de progreso, 0 para ninguna (por defecto "
+                    + DEFAULT_INTERVAL_SECONDS + ")",
+            "      --metrics-port P    Publica métricas Prometheus en 127.0.0.1:P/metrics durante la ejecución",
+            "      --trace             Muestra al final el reparto del tiempo por fases",
+            "  -h, --help              Muestra esta ayuda");
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public DownloadCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new DownloadCli(System.out, System.err).run(args));
+    }
+
+    /**
+     * Ejecuta las descargas indicadas y espera a que terminen todas
+     * @return Código de salida
+     */
+    public int run(String[] args) {
+        Options options;
+        List<Request> requests;
+        try {
+            options = Options.parse(args);
+            if (options.help) {
+                out.println(USAGE);
+                return EXIT_OK;
+            }
+            requests = options.requests();
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("Error: " + e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (requests.isEmpty()) {
+            err.println("Error: no hay URL que descargar");
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        DownloadManager manager = new DownloadManager(options.concurrency);
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Thread interruptHook = new Thread(() -> {
+            // Ctrl+C: cancelar para no dejar archivos a medias sin marcar
+            if (!finished.get()) {
+                manager.cancelAllDownloads();
+            }
+        }, "download-cli-interrupt");
+        Runtime.getRuntime().addShutdownHook(interruptHook);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-cli-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            if (options.metricsPort >= 0) {
+                int port = manager.startMetricsServer(options.metricsPort);
+                out.println("Métricas en http://127.0.0.1:" + port + "/metrics");
+            }
+
+            List<DownloadItem> items = new ArrayList<>();
+            List<CompletableFuture<DownloadItem>> results = new ArrayList<>();
+            for (Request request : requests) {
+                DownloadItem item = request.toItem(options.outputDir);
+                items.add(item);
+                results.add(manager.startDownloadAsync(item));
+            }
+
+            Progress progress = new Progress(items, manager);
+            if (options.intervalSeconds > 0) {
+                reporter.scheduleAtFixedRate(() -> out.println(progress.line()),
+                        options.intervalSeconds, options.intervalSeconds, TimeUnit.SECONDS);
+            }
+
+            for (CompletableFuture<DownloadItem> result : results) {
+                result.get();
+            }
+            reporter.shutdownNow();
+            out.println(progress.line());
+
+            return report(items, options.trace ? manager : null);
+
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_USAGE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            manager.cancelAllDownloads();
+            return EXIT_FAILED;
+        } catch (ExecutionException e) {
+            err.println("Error inesperado: " + e.getCause().getMessage());
+            return EXIT_FAILED;
+        } finally {
+            finished.set(true);
+            reporter.shutdownNow();
+            manager.shutdown();
+            try {
+                Runtime.getRuntime().removeShutdownHook(interruptHook);
+            } catch (IllegalStateException e) {
+                // La JVM ya se está cerrando y el gancho está en marcha
+            }
+        }
+    }
+
+    /**
+     * Lista las descargas que no se completaron y devuelve el código de salida
+     */
+    private int report(List<DownloadItem> items, DownloadManager traced) {
+        int failed = 0;
+        for (DownloadItem item : items) {
+            if (item.getStatus() != DownloadItem.DownloadStatus.COMPLETED) {
+                failed++;
+                err.println(item.getStatus() + " " + item.getUrl()
+                        + (item.getErrorMessage() != null ? ": " + item.getErrorMessage() : ""));
+            }
+        }
+        if (traced != null) {
+            out.print(traced.getTraceSummary().format());
+        }
+        out.println((items.size() - failed) + " de " + items.size() + " descargas completadas");
+        return failed == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    /**
+     * Línea de progreso agregado: descargas terminadas, en curso y velocidad desde la
+     * línea anterior
+     */
+    private static final class Progress {
+        private final List<DownloadItem> items;
+        private final DownloadManager manager;
+        private final long startedAt = System.nanoTime();
+        private long lastBytes;
+        private long lastAt = startedAt;
+
+        Progress(List<DownloadItem> items, DownloadManager manager) {
+            this.items = items;
+            this.manager = manager;
+        }
+
+        synchronized String line() {
+            int completed = 0;
+            int failed = 0;
+            long bytes = 0;
+            for (DownloadItem item : items) {
+                switch (item.getStatus()) {
+                    case COMPLETED:
+                        completed++;
+                        break;
+                    case FAILED:
+                    case HASH_MISMATCH:
+                    case CANCELLED:
+                        failed++;
+                        break;
+                    default:
+                        break;
+                }
+                bytes += item.getDownloadedSize();
+            }
+
+            long now = System.nanoTime();
+            double seconds = (now - lastAt) / 1e9;
+            long rate = seconds > 0 ? (long) (Math.max(0, bytes - lastBytes) / seconds) : 0;
+            lastBytes = bytes;
+            lastAt = now;
+
+            return String.format("[%6.1fs] %d/%d completadas, %d fallidas, %d activas, %d en cola | %s, %s/s",
+                    (now - startedAt) / 1e9, completed, items.size(), failed,
+                    manager.getActiveDownloadsCount(), manager.getQueuedDownloadsCount(),
+                    FileUtils.formatBytes(bytes), FileUtils.formatBytes(rate));
+        }
+    }
+
+    /**
+     * Una URL pedida, con su hash esperado si se indicó y el nombre con el que se guarda
+     */
+    private static final class Request {
+        final String url;
+        final String expectedHash;
+        String fileName;
+
+        Request(String url, String expectedHash) {
+            this.url = url;
+            this.expectedHash = expectedHash;
+        }
+
+        DownloadItem toItem(Path outputDir) {
+            Path directory = outputDir != null ? outputDir : Paths.get(FileUtils.getDownloadsDirectory());
+            DownloadItem item = new DownloadItem(url, fileName, directory.resolve(fileName).toString());
+            item.setExpectedHash(expectedHash);
+            return item;
+        }
+    }
+
+    private static final class Options {
+        final List<Request> urls = new ArrayList<>();
+        final List<Path> inputs = new ArrayList<>();
+        Path outputDir;
+        int concurrency = DEFAULT_CONCURRENCY;
+        int intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+        int metricsPort = -1;
+        boolean trace;
+        boolean help;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h":
+                    case "--help":
+                        options.help = true;
+                        break;
+                    case "-i":
+                    case "--input":
+                        options.inputs.add(Paths.get(value(args, ++i, arg)));
+                        break;
+                    case "-o":
+                    case "--output":
+                        options.outputDir = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "-c":
+                    case "--concurrency":
+                        options.concurrency = number(value(args, ++i, arg), arg, 1);
+                        break;
+                    case "--interval":
+                        options.intervalSeconds = number(value(args, ++i, arg), arg, 0);
+                        break;
+                    case "--metrics-port":
+                        options.metricsPort = number(value(args, ++i, arg), arg, 0);
+                        break;
+                    case "--trace":
+                        options.trace = true;
+                        break;
+                    default:
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("opción desconocida " + arg);
+                        }
+                        options.urls.add(new Request(checkUrl(arg, "argumento"), null));
+                }
+            }
+            return options;
+        }
+
+        /**
+         * URL de la línea de comandos seguidas de las de los archivos de lista, sin repetir
+         */
+        List<Request> requests() throws IOException {
+            List<Request> requests = new ArrayList<>(urls);
+            for (Path input : inputs) {
+                List<String> lines = Files.readAllLines(input, StandardCharsets.UTF_8);
+                for (int n = 0; n < lines.size(); n++) {
+                    String line = lines.get(n).trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split("\\s+");
+                    if (fields.length > 2) {
+                        throw new IllegalArgumentException(input + ":" + (n + 1) + ": se esperaba URL [hash]");
+                    }
+                    String where = input + ":" + (n + 1);
+                    requests.add(new Request(checkUrl(fields[0], where), fields.length == 2 ? fields[1] : null));
+                }
+            }
+
+            Set<String> seen = new HashSet<>();
+            requests.removeIf(request -> !seen.add(request.url));
+
+            // URL distintas con el mismo último segmento (v1/index.html, v2/index.html) no
+            // pueden escribir en el mismo archivo: la segunda y siguientes llevan sufijo
+            Set<String> names = new HashSet<>();
+            for (Request request : requests) {
+                request.fileName = uniqueName(FileUtils.extractFileNameFromUrl(request.url), names);
+            }
+            if (outputDir != null) {
+                Files.createDirectories(outputDir);
+            }
+            return requests;
+        }
+
+        /**
+         * El nombre indicado o, si ya está tomado, el primero libre de nombre-2.ext,
+         * nombre-3.ext... Se compara sin distinguir mayúsculas, como en muchos discos.
+         */
+        private static String uniqueName(String fileName, Set<String> taken) {
+            int dot = fileName.lastIndexOf('.');
+            String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+            String extension = dot > 0 ? fileName.substring(dot) : "";
+            String name = fileName;
+            for (int n = 2; !taken.add(name.toLowerCase(Locale.ROOT)); n++) {
+                name = base + "-" + n + extension;
+            }
+            return name;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("falta el valor de " + option);
+            }
+            return args[index];
+        }
+
+        private static int number(String value, String option, int min) {
+            try {
+                int number = Integer.parseInt(value);
+                if (number < min) {
+                    throw new IllegalArgumentException(option + " debe ser al menos " + min);
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(option + " no es un número: " + value);
+            }
+        }
+
+        private static String checkUrl(String url, String where) {
+            try {
+                URI uri = new URI(url);
+                String scheme = uri.getScheme();
+                if (uri.getHost() == null || scheme == null
+                        || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+                    throw new IllegalArgumentException(where + ": URL no válida: " + url);
+                }
+                return url;
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(where + ": URL no válida: " + url);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package stevedev.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracción de archivos comprimidos leyendo un flujo secuencial, sin esperar al archivo completo.
+ *
+ * Soporta zip (a partir de las cabeceras locales de cada entrada) y tar, con o sin gzip.
+ * Sólo se extraen archivos regulares y directorios; enlaces y entradas especiales se
+ * ignoran. Las rutas que saldrían del directorio de destino se rechazan.
+ */
+final class ArchiveExtractor {
+    private static final int TAR_BLOCK = 512;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Formatos soportados
+     */
+    enum Format {
+        ZIP,
+        TAR_GZ,
+        TAR;
+
+        /**
+         * Detecta el formato por el nombre del archivo o, en su defecto, por el Content-Type
+         * @return Formato o null si no es un archivo comprimido soportado
+         */
+        static Format detect(String fileName, String contentType) {
+            String name = fileName != null ? fileName.toLowerCase(Locale.ROOT) : "";
+            if (name.endsWith(".zip")) return ZIP;
+            if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) return TAR_GZ;
+            if (name.endsWith(".tar")) return TAR;
+
+            String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+            if (type.contains("application/zip")) return ZIP;
+            if (type.contains("application/gzip") || type.contains("application/x-gzip")) return TAR_GZ;
+            if (type.contains("application/x-tar")) return TAR;
+            return null;
+        }
+    }
+
+    private final Format format;
+    private final Path targetDirectory;
+    /**
+     * Buffer de copia, uno por extracción y no por entrada. No sale de {@link BufferPool}:
+     * los flujos de zip y gzip sólo leen sobre arrays del heap, y el techo del pool cuenta
+     * memoria directa.
+     */
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+    /**
+     * Constructor
+     * @param format Formato del archivo comprimido
+     * @param targetDirectory Directorio donde se crean las entradas
+     */
+    ArchiveExtractor(Format format, Path targetDirectory) {
+        this.format = format;
+        this.targetDirectory = targetDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Extrae todas las entradas del flujo y lo consume hasta el final
+     * @return Número de archivos y directorios creados
+     */
+    int extract(InputStream input) throws IOException {
+        Files.createDirectories(targetDirectory);
+
+        int entries;
+        switch (format) {
+            case ZIP:
+                entries = extractZip(input);
+                break;
+            case TAR_GZ:
+                entries = extractTar(new GZIPInputStream(input, COPY_BUFFER_SIZE));
+                break;
+            default:
+                entries = extractTar(input);
+                break;
+        }
+
+        // Consumir el resto (directorio central del zip, relleno del tar)
+        input.transferTo(OutputStream.nullOutputStream());
+        return entries;
+    }
+
+    private int extractZip(InputStream input) throws IOException {
+        // No se cierra: el flujo de origen se sigue consumiendo después
+        ZipInputStream zip = new ZipInputStream(input);
+        int entries = 0;
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                if (!createDirectory(entry.getName())) {
+                    continue;
+                }
+            } else {
+                writeEntry(zip, resolveFile(entry.getName()), -1);
+            }
+            entries++;
+        }
+        return entries;
+    }
+
+    private int extractTar(InputStream input) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        int entries = 0;
+        String longName = null;
+
+        while (readBlock(input, header)) {
+            if (isZeroBlock(header)) {
+                // Fin del archivo
+                break;
+            }
+
+            long size = parseOctal(header, 124, 12);
+            char type = (char) header[156];
+            String name = longName != null ? longName : tarName(header);
+            longName = null;
+
+            if (type == 'L' || type == 'x') {
+                // Nombre largo de GNU o cabecera PAX: aplica a la entrada siguiente
+                byte[] data = input.readNBytes((int) size);
+                skipPadding(input, size);
+                longName = type == 'L' ? cString(data, 0, data.length) : paxPath(data);
+                continue;
+            }
+
+            if (type == '0' || type == '\0' || type == '7') {
+                writeEntry(input, resolveFile(name), size);
+                entries++;
+            } else if (type == '5') {
+                if (createDirectory(name)) {
+                    entries++;
+                }
+            } else {
+                // Enlaces, dispositivos y demás entradas especiales no se extraen
+                input.skipNBytes(size);
+            }
+            skipPadding(input, size);
+        }
+        return entries;
+    }
+
+    /**
+     * Copia una entrada a su destino
+     * @param size Bytes de la entrada o -1 para leer hasta el final de la entrada
+     */
+    private void writeEntry(InputStream input, Path target, long size) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        byte[] buffer = copyBuffer;
+        long remaining = size;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            while (size < 0 || remaining > 0) {
+                int toRead = size < 0 ? buffer.length : (int) Math.min(buffer.length, remaining);
+                int read = input.read(buffer, 0, toRead);
+                if (read == -1) {
+                    if (size < 0) {
+                        break;
+                    }
+                    throw new EOFException("Archivo comprimido truncado en " + target.getFileName());
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Resuelve una ruta de entrada dentro del destino, rechazando las que intentan salir de él
+     */
+    Path resolve(String entryName) throws IOException {
+        Path target = targetDirectory.resolve(entryName).normalize();
+        if (!target.startsWith(targetDirectory)) {
+            throw new IOException("Entrada fuera del directorio de extracción: " + entryName);
+        }
+        return target;
+    }
+
+    /**
+     * Resuelve la ruta de una entrada de archivo, que no puede ser el propio destino
+     */
+    private Path resolveFile(String entryName) throws IOException {
+        Path target = resolve(entryName);
+        if (target.equals(targetDirectory)) {
+            throw new IOException("Entrada de archivo sin nombre: " + entryName);
+        }
+        return target;
+    }
+
+    /**
+     * Crea el directorio de una entrada. La entrada del propio destino ("./", la primera
+     * de un tar creado con {@code tar -C dir .}) no crea nada.
+     * @return false si la entrada era el propio destino
+     */
+    private boolean createDirectory(String entryName) throws IOException {
+        Path target = resolve(entryName);
+        if (target.equals(targetDirectory)) {
+            return false;
+        }
+        Files.createDirectories(target);
+        return true;
+    }
+
+    private static boolean readBlock(InputStream input, byte[] block) throws IOException {
+        int read = input.readNBytes(block, 0, block.length);
+        if (read == 0) {
+            return false;
+        }
+        if (read < block.length) {
+            throw new EOFException("Cabecera tar incompleta");
+        }
+        return true;
+    }
+
+    private static void skipPadding(InputStream input, long size) throws IOException {
+        long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+        input.skipNBytes(padding);
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String tarName(byte[] header) {
+        String name = cString(header, 0, 100);
+        // Formato ustar: el prefijo completa rutas de más de 100 caracteres
+        if ("ustar".equals(cString(header, 257, 6).trim())) {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Extrae el valor "path" de los registros "longitud clave=valor\n" de una cabecera PAX
+     */
+    private static String paxPath(byte[] data) {
+        String records = new String(data, StandardCharsets.UTF_8);
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=');
+            if (space >= 0 && equals > space && "path".equals(record.substring(space + 1, equals))) {
+                return record.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String cString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long parseOctal(byte[] data, int offset, int length) throws IOException {
+        String value = cString(data, offset, length).trim();
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Tamaño tar no válido: " + value);
+        }
+    }
+}
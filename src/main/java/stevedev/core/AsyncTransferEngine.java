@@ -0,0 +1,140 @@
+package stevedev.core;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor de transferencia asíncrono sobre {@link Call#enqueue} de OkHttp.
+ *
+ * El motor bloqueante ocupa un hilo por descarga durante toda su vida: conexión, cuerpo y
+ * esperas entre reintentos. Aquí las peticiones se encolan en un {@link Dispatcher} propio
+ * que limita cuántas conexiones se están estableciendo a la vez, y la respuesta llega por
+ * callback. El cuerpo lo bombea un número fijo de hilos de bucle: cada paso lee de una
+ * descarga lo que haya disponible (hasta un buffer), entrega los bytes al
+ * {@link WriteBehindChannel} (el disco lo escribe su propio pool) y vuelve a encolar la
+ * descarga al final, así que unos pocos hilos atienden cientos de cuerpos abiertos. Los
+ * reintentos esperan en un temporizador, sin hilo, y los resultados se entregan en un hilo
+ * aparte para que lo que encadene el gestor (registro, índices) no frene el bombeo.
+ *
+ * OkHttp no ofrece lecturas no bloqueantes: un paso sobre una conexión sin datos bloquea
+ * su hilo de bucle hasta que llegan. Con muchas descargas en rueda el socket suele tener
+ * datos cuando le toca; con pocas conexiones lentas, o estancadas hasta que las aborta
+ * {@link StallDetector}, el motor bloqueante aprovecha mejor la red.
+ */
+final class AsyncTransferEngine {
+    /** Hilos de bucle por defecto: uno por núcleo */
+    static final int DEFAULT_EVENT_LOOPS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /** Conexiones estableciéndose a la vez por defecto */
+    static final int DEFAULT_MAX_CONNECTING = 64;
+
+    private final OkHttpClient httpClient;
+    private final ExecutorService connectors;
+    private final ExecutorService loops;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService completions;
+
+    /**
+     * Constructor
+     * @param httpClient Cliente base; se comparte su pool de conexiones
+     * @param eventLoops Hilos que bombean los cuerpos de las respuestas
+     * @param maxConnecting Peticiones a la vez hasta recibir las cabeceras
+     * @param maxConnectingPerHost Lo mismo, por servidor
+     */
+    AsyncTransferEngine(OkHttpClient httpClient, int eventLoops, int maxConnecting, int maxConnectingPerHost) {
+        this.connectors = Executors.newFixedThreadPool(maxConnecting, daemonThreads("download-connect-"));
+        this.loops = Executors.newFixedThreadPool(eventLoops, daemonThreads("download-loop-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("download-retry-"));
+        this.completions = Executors.newSingleThreadExecutor(daemonThreads("download-complete-"));
+
+        // El Dispatcher sólo cuenta la petición hasta que onResponse vuelve: el cuerpo
+        // abierto ya no ocupa plaza ni hilo de conexión
+        Dispatcher dispatcher = new Dispatcher(connectors);
+        dispatcher.setMaxRequests(maxConnecting);
+        dispatcher.setMaxRequestsPerHost(maxConnectingPerHost);
+        this.httpClient = httpClient.newBuilder()
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    AsyncTransferEngine(OkHttpClient httpClient, int eventLoops, int maxConnecting) {
+        this(httpClient, eventLoops, maxConnecting, maxConnecting);
+    }
+
+    AsyncTransferEngine(OkHttpClient httpClient) {
+        this(httpClient, DEFAULT_EVENT_LOOPS, DEFAULT_MAX_CONNECTING);
+    }
+
+    /**
+     * Motor sobre el cliente de un transporte de OkHttp. Los límites de peticiones del
+     * cliente pasan a ser los de las conexiones en curso del motor.
+     */
+    static AsyncTransferEngine forTransport(OkHttpTransport transport) {
+        OkHttpClient client = transport.getClient();
+        return new AsyncTransferEngine(client, DEFAULT_EVENT_LOOPS,
+                client.dispatcher().getMaxRequests(), client.dispatcher().getMaxRequestsPerHost());
+    }
+
+    /**
+     * Encola una petición; el callback se ejecuta en un hilo de conexión
+     */
+    Call enqueue(Request request, Callback callback) {
+        Call call = httpClient.newCall(request);
+        call.enqueue(callback);
+        return call;
+    }
+
+    /**
+     * Ejecuta un paso de bombeo en un hilo de bucle, detrás de los ya encolados
+     */
+    void execute(Runnable step) {
+        loops.execute(step);
+    }
+
+    /**
+     * Ejecuta una tarea tras una espera sin ocupar un hilo mientras tanto
+     */
+    void schedule(Runnable task, long delayMillis) {
+        timer.schedule(() -> loops.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Completa el resultado de una descarga fuera de los hilos de bucle
+     */
+    <T> void complete(CompletableFuture<T> result, T value) {
+        completions.execute(() -> result.complete(value));
+    }
+
+    boolean isShutdown() {
+        return loops.isShutdown();
+    }
+
+    /**
+     * Detiene los hilos del motor; las descargas en curso deben haberse cancelado antes
+     */
+    void shutdown() {
+        timer.shutdownNow();
+        loops.shutdown();
+        connectors.shutdown();
+        completions.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
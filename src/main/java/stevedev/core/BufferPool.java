@@ -0,0 +1,240 @@
+package stevedev.core;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool global de buffers directos por clases de tamaño.
+ *
+ * Las transferencias y el cálculo de hashes piden sus buffers aquí en lugar de crearlos
+ * en cada llamada. Pedir y devolver no usa bloqueos globales (colas lock-free, contadores
+ * atómicos y un conjunto concurrente de buffers prestados), y toda la memoria reservada,
+ * en uso o en caché, respeta un techo global configurable para que una ráfaga de
+ * descargas no agote la memoria directa.
+ *
+ * Sólo se aceptan de vuelta buffers prestados por el mismo pool y una sola vez: devolver
+ * uno ajeno o devolverlo dos veces descuadraría la memoria contada contra el techo.
+ *
+ * El techo inicial se toma de la propiedad del sistema {@code gestor.buffers.maxBytes}
+ * (64 MB por defecto).
+ */
+public class BufferPool {
+    /** Clases de tamaño disponibles: 8 KB, 64 KB, 256 KB y 1 MB */
+    public static final int[] SIZE_CLASSES = {8 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final BufferPool SHARED = new BufferPool(
+            Long.getLong("gestor.buffers.maxBytes", DEFAULT_MAX_BYTES));
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeLists;
+    private final Set<Loan> loans = ConcurrentHashMap.newKeySet();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private volatile long maxBytes;
+
+    /**
+     * Constructor
+     * @param maxBytes Memoria máxima (en uso más en caché) que puede reservar el pool
+     */
+    public BufferPool(long maxBytes) {
+        checkLimit(maxBytes);
+        this.maxBytes = maxBytes;
+        this.freeLists = new ArrayList<>(SIZE_CLASSES.length);
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            freeLists.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Obtiene el pool compartido por todas las descargas y verificaciones
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Cambia el techo de memoria. Los buffers en caché que sobren se liberan al reducirlo.
+     */
+    public void setMaxBytes(long maxBytes) {
+        checkLimit(maxBytes);
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Memoria reservada actualmente (buffers en uso más buffers en caché)
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Memoria de los buffers prestados actualmente
+     */
+    public long getInUseBytes() {
+        return inUseBytes.get();
+    }
+
+    /**
+     * Pide un buffer de al menos {@code minSize} bytes sin esperar
+     * @return Buffer limpio o null si el techo de memoria no lo permite ahora
+     */
+    public ByteBuffer tryAcquire(int minSize) {
+        int sizeClass = sizeClassFor(minSize);
+        int capacity = SIZE_CLASSES[sizeClass];
+
+        ByteBuffer buffer = freeLists.get(sizeClass).poll();
+        if (buffer == null) {
+            if (!reserve(capacity) && !(evictCached(capacity) && reserve(capacity))) {
+                return null;
+            }
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        loans.add(new Loan(buffer));
+        inUseBytes.addAndGet(capacity);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Pide un buffer de al menos {@code minSize} bytes, esperando si el techo está alcanzado
+     */
+    public ByteBuffer acquire(int minSize) throws InterruptedIOException {
+        ByteBuffer buffer = tryAcquire(minSize);
+        while (buffer == null) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido esperando memoria de buffers");
+            }
+            buffer = tryAcquire(minSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Devuelve un buffer obtenido de este pool
+     * @throws IllegalArgumentException Si su capacidad no es una de las clases de tamaño
+     * @throws IllegalStateException Si ya se devolvió o no lo prestó este pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        int sizeClass = exactSizeClass(capacity);
+        if (sizeClass < 0) {
+            throw new IllegalArgumentException("El buffer no pertenece al pool: " + capacity + " bytes");
+        }
+        if (!loans.remove(new Loan(buffer))) {
+            throw new IllegalStateException("El buffer ya se devolvió o no lo prestó este pool");
+        }
+
+        inUseBytes.addAndGet(-capacity);
+        if (reservedBytes.get() > maxBytes) {
+            // El techo se redujo mientras estaba prestado: no guardarlo en caché
+            reservedBytes.addAndGet(-capacity);
+            return;
+        }
+
+        buffer.clear();
+        freeLists.get(sizeClass).offer(buffer);
+    }
+
+    private boolean reserve(int capacity) {
+        while (true) {
+            long current = reservedBytes.get();
+            if (current + capacity > maxBytes) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(current, current + capacity)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libera buffers en caché de cualquier clase hasta dejar sitio para {@code needed} bytes
+     * @return true si se liberó algo
+     */
+    private boolean evictCached(long needed) {
+        boolean evicted = false;
+        for (int i = SIZE_CLASSES.length - 1; i >= 0 && reservedBytes.get() + needed > maxBytes; i--) {
+            ByteBuffer cached;
+            while (reservedBytes.get() + needed > maxBytes && (cached = freeLists.get(i).poll()) != null) {
+                reservedBytes.addAndGet(-cached.capacity());
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+
+    private void trimTo(long limit) {
+        for (int i = SIZE_CLASSES.length - 1; i >= 0 && reservedBytes.get() > limit; i--) {
+            ByteBuffer cached;
+            while (reservedBytes.get() > limit && (cached = freeLists.get(i).poll()) != null) {
+                reservedBytes.addAndGet(-cached.capacity());
+            }
+        }
+    }
+
+    private static void checkLimit(long maxBytes) {
+        int largest = SIZE_CLASSES[SIZE_CLASSES.length - 1];
+        if (maxBytes < largest) {
+            throw new IllegalArgumentException("El techo de memoria debe ser al menos " + largest + " bytes");
+        }
+    }
+
+    private static int sizeClassFor(int minSize) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (minSize <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Tamaño de buffer no soportado: " + minSize);
+    }
+
+    private static int exactSizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (SIZE_CLASSES[i] == capacity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Buffer prestado, comparado por identidad (ByteBuffer compara por contenido)
+     */
+    private static final class Loan {
+        private final ByteBuffer buffer;
+
+        Loan(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Loan && ((Loan) other).buffer == buffer;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package stevedev.core;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cuenta las conexiones que abre OkHttp y las que entrega a las peticiones, para calcular
+ * cuántas se reutilizan. Una única instancia atiende a todas las llamadas del cliente; el
+ * {@link TracingEventListener} de cada llamada le reenvía los eventos.
+ */
+final class ConnectionReuseListener extends EventListener {
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder acquired = new LongAdder();
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        opened.increment();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        acquired.increment();
+    }
+
+    long getOpened() {
+        return opened.sum();
+    }
+
+    long getAcquired() {
+        return acquired.sum();
+    }
+}
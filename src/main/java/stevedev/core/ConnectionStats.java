@@ -0,0 +1,62 @@
+package stevedev.core;
+
+/**
+ * Instantánea del pool de conexiones de un transporte.
+ *
+ * La tasa de reutilización es la fracción de peticiones que obtuvieron una conexión ya
+ * abierta: si es baja con muchos archivos pequeños, el tiempo se va en abrir conexiones y
+ * conviene un pool mayor o un keep-alive más largo.
+ */
+public class ConnectionStats {
+    private final int idleConnections;
+    private final int activeConnections;
+    private final long connectionsOpened;
+    private final long connectionsAcquired;
+
+    /**
+     * Constructor
+     * @param idleConnections Conexiones abiertas sin petición en curso
+     * @param activeConnections Conexiones con alguna petición en curso
+     * @param connectionsOpened Conexiones nuevas establecidas desde el inicio
+     * @param connectionsAcquired Veces que una petición obtuvo conexión (nueva o reutilizada)
+     */
+    public ConnectionStats(int idleConnections, int activeConnections, long connectionsOpened,
+            long connectionsAcquired) {
+        this.idleConnections = idleConnections;
+        this.activeConnections = activeConnections;
+        this.connectionsOpened = connectionsOpened;
+        this.connectionsAcquired = connectionsAcquired;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    public long getConnectionsAcquired() {
+        return connectionsAcquired;
+    }
+
+    /**
+     * Fracción de peticiones servidas por una conexión reutilizada (0 sin peticiones)
+     */
+    public double getReuseRatio() {
+        if (connectionsAcquired <= 0) {
+            return 0;
+        }
+        return Math.max(0, connectionsAcquired - connectionsOpened) / (double) connectionsAcquired;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionStats{idle=%d, active=%d, opened=%d, acquired=%d, reuse=%.0f%%}",
+                idleConnections, activeConnections, connectionsOpened, connectionsAcquired, getReuseRatio() * 100);
+    }
+}
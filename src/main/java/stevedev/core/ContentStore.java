@@ -0,0 +1,157 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+import stevedev.util.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Almacén local direccionado por contenido.
+ *
+ * Indexa por hash los archivos que ya se descargaron para que, cuando se vuelve a pedir
+ * un archivo cuyo hash esperado ya está en el índice, se pueda reutilizar el contenido
+ * (enlace duro o copia) sin tocar la red. El índice se persiste en JSON dentro del
+ * directorio de caché con {@link JsonIndex}, que agrupa las escrituras.
+ */
+public class ContentStore {
+    private static final String INDEX_FILE = "content-index.json";
+
+    private final JsonIndex<Entry> store;
+    private final Map<String, Entry> index;
+
+    /**
+     * Constructor
+     * @param directory Directorio donde se guarda el índice
+     */
+    public ContentStore(String directory) {
+        this.store = new JsonIndex<>(Paths.get(directory, INDEX_FILE), Entry.class, "índice de contenido");
+        this.index = store.entries();
+    }
+
+    /**
+     * Busca un archivo local cuyo contenido tenga el hash indicado
+     * @param hash Hash hexadecimal (cualquier algoritmo soportado)
+     * @return Ruta del archivo o null si no existe o ya no es válido
+     */
+    public Path lookup(String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+
+        String key = hash.toLowerCase();
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!JsonIndex.isUnchanged(entry.getPath(), entry.getSize(), entry.getLastModified())) {
+            // El archivo fue borrado o modificado: la entrada ya no es confiable
+            index.remove(key, entry);
+            store.changed();
+            return null;
+        }
+        return Paths.get(entry.getPath());
+    }
+
+    /**
+     * Coloca en el destino el contenido con el hash indicado, si está en el almacén
+     * @param hash Hash esperado
+     * @param target Ruta destino
+     * @return true si el contenido se materializó en el destino
+     */
+    public boolean materialize(String hash, Path target) throws IOException {
+        Path source = lookup(hash);
+        if (source == null) {
+            return false;
+        }
+
+        FileUtils.linkOrCopy(source, target);
+        return true;
+    }
+
+    /**
+     * Registra un archivo descargado bajo su hash
+     * @param hash Hash calculado del archivo
+     * @param filePath Ruta del archivo
+     */
+    public void register(String hash, String filePath) {
+        if (put(hash, filePath)) {
+            store.changed();
+        }
+    }
+
+    /**
+     * Registra varias descargas completadas de una vez
+     * @param items Descargas terminadas (las que no estén completadas se ignoran)
+     */
+    public void registerAll(List<DownloadItem> items) {
+        boolean changed = false;
+        for (DownloadItem item : items) {
+            if (item.getStatus() == DownloadItem.DownloadStatus.COMPLETED && item.hasLocalFile()) {
+                changed |= put(item.getHash(), item.getDestinationPath());
+            }
+        }
+        if (changed) {
+            store.changed();
+        }
+    }
+
+    /**
+     * Añade la entrada al índice en memoria
+     * @return true si el índice cambió
+     */
+    private boolean put(String hash, String filePath) {
+        if (hash == null || hash.isEmpty() || filePath == null) {
+            return false;
+        }
+
+        try {
+            Path path = Paths.get(filePath).toAbsolutePath().normalize();
+            Entry entry = new Entry();
+            entry.setPath(path.toString());
+            entry.setSize(Files.size(path));
+            entry.setLastModified(Files.getLastModifiedTime(path).toMillis());
+
+            index.put(hash.toLowerCase(), entry);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error registrando contenido: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Obtiene el número de entradas del índice
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Escribe ya en disco los cambios del índice que aún no se guardaron
+     */
+    public void flush() {
+        store.flush();
+    }
+
+    /**
+     * Entrada del índice: ubicación del archivo y datos para detectar cambios
+     */
+    public static class Entry {
+        private String path;
+        private long size;
+        private long lastModified;
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+        public long getLastModified() { return lastModified; }
+        public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    }
+}
@@ -1,25 +1,69 @@
 package stevedev.core;
 
-import okhttp3.OkHttpClient;
+import stevedev.metrics.MetricsRegistry;
+import stevedev.metrics.MetricsServer;
+import stevedev.metrics.TraceSummary;
+import stevedev.metrics.jfr.LogFlushEvent;
+import stevedev.metrics.jfr.QueueWaitEvent;
 import stevedev.model.DownloadItem;
+import stevedev.model.DownloadTrace;
 import stevedev.model.DownloadLog;
 import stevedev.util.FileUtils;
 import stevedev.util.ProgressListener;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Paths;
-import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 /**
  * Gestor principal que coordina todas las descargas
  */
 public class DownloadManager {
+    private static final long MIN_FREE_SPACE = 1024 * 1024;
+    private static final long ADMISSION_RECHECK_SECONDS = 2;
+    private static final long MAX_MEMORY_TARGET = Integer.MAX_VALUE - 8;
+    /** Conexiones por descarga grande cuando el servidor admite rangos */
+    static final int DEFAULT_SEGMENTS = 4;
+
+    private final int maxConcurrentDownloads;
     private final ExecutorService executorService;
-    private final OkHttpClient httpClient;
+    private final ScheduledExecutorService admissionTimer;
+    private final AtomicBoolean admissionRecheckScheduled = new AtomicBoolean(false);
+    private final List<DownloadItem> queue;
+    private final HttpTransport transport;
     private final Map<DownloadItem, DownloadTask> activeTasks;
+    private final Map<DownloadItem, DownloadTask> smallTasks;
+    private final SmallFileLane smallFileLane;
     private final Map<DownloadItem, CompletableFuture<DownloadItem>> futures;
+    private final ContentStore contentStore;
+    private final ValidatorStore validatorStore;
+    private final Map<String, SharedTransfer> inFlight;
+    private final DownloadProbe probe;
+    private final Set<DownloadItem> probing;
+    private final Map<DownloadItem, List<DownloadStream>> pendingStreams;
+    private final TraceSummary traceSummary = new TraceSummary();
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private final DownloadMetrics metrics = new DownloadMetrics(metricsRegistry);
+    private MetricsServer metricsServer;
+    private final Map<DownloadItem, QueueWaitEvent> queueWaits = new ConcurrentHashMap<>();
+    private volatile boolean probeEnabled = true;
+    private volatile SchedulingPolicy schedulingPolicy = SchedulingPolicy.fifo();
+    private volatile long smallFileThreshold = SmallFileLane.DEFAULT_THRESHOLD;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.defaults();
+    private volatile StallPolicy stallPolicy = StallPolicy.defaults();
+    private volatile int segmentsPerDownload = DEFAULT_SEGMENTS;
+    private volatile HedgePolicy hedgePolicy;
+    private volatile boolean asyncEngineEnabled;
+    private AsyncTransferEngine asyncEngine;
     private ProgressListener globalProgressListener;
 
     /**
@@ -27,18 +71,74 @@ public class DownloadManager {
      * @param maxConcurrentDownloads Número máximo de descargas simultáneas
      */
     public DownloadManager(int maxConcurrentDownloads) {
+        this(maxConcurrentDownloads, defaultTransport(maxConcurrentDownloads));
+    }
+
+    /**
+     * Constructor con la configuración de conexiones indicada (transporte OkHttp)
+     * @param maxConcurrentDownloads Número máximo de descargas simultáneas
+     * @param httpClientConfig Pool, keep-alive, límites de peticiones y protocolo
+     */
+    public DownloadManager(int maxConcurrentDownloads, HttpClientConfig httpClientConfig) {
+        this(maxConcurrentDownloads, new OkHttpTransport(httpClientConfig));
+    }
+
+    /**
+     * Constructor con un transporte HTTP propio
+     * @param maxConcurrentDownloads Número máximo de descargas simultáneas
+     * @param transport Transporte de descargas y sondeos (el gestor lo cierra en {@link #shutdown()})
+     */
+    public DownloadManager(int maxConcurrentDownloads, HttpTransport transport) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
         this.executorService = Executors.newFixedThreadPool(maxConcurrentDownloads);
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(Duration.ofSeconds(30))
-                .readTimeout(Duration.ofMinutes(5))
-                .writeTimeout(Duration.ofMinutes(5))
-                .build();
+        this.admissionTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.transport = transport;
         
         this.activeTasks = new ConcurrentHashMap<>();
+        this.smallTasks = new ConcurrentHashMap<>();
+        this.smallFileLane = new SmallFileLane(SmallFileLane.DEFAULT_PARALLELISM, this::onSmallFilesFinished);
         this.futures = new ConcurrentHashMap<>();
+        this.inFlight = new ConcurrentHashMap<>();
+        this.queue = new ArrayList<>();
+        this.probe = new DownloadProbe(transport, Math.max(2, maxConcurrentDownloads));
+        this.probing = ConcurrentHashMap.newKeySet();
+        this.pendingStreams = new ConcurrentHashMap<>();
         
         // Crear directorios necesarios
         FileUtils.createDirectories();
+        
+        this.contentStore = new ContentStore(FileUtils.getCacheDirectory());
+        this.validatorStore = new ValidatorStore(FileUtils.getCacheDirectory());
+        registerGauges();
+    }
+
+    /**
+     * Publica como medidores el estado que el gestor ya lleva: descargas activas y en cola
+     * y, si el transporte lo expone, su pool de conexiones
+     */
+    private void registerGauges() {
+        metricsRegistry.gauge("downloader_active_downloads", "Descargas en curso", this::getActiveDownloadsCount);
+        metricsRegistry.gauge("downloader_queued_downloads", "Descargas en cola esperando hueco o espacio en disco",
+                this::getQueuedDownloadsCount);
+        metricsRegistry.gauge("downloader_connections_active", "Conexiones HTTP con alguna petición en curso", () -> {
+            ConnectionStats stats = transport.getConnectionStats();
+            return stats != null ? stats.getActiveConnections() : Double.NaN;
+        });
+        metricsRegistry.gauge("downloader_connections_idle", "Conexiones HTTP abiertas sin petición en curso", () -> {
+            ConnectionStats stats = transport.getConnectionStats();
+            return stats != null ? stats.getIdleConnections() : Double.NaN;
+        });
+    }
+
+    /**
+     * Transporte por defecto: OkHttp con la configuración por defecto para el gestor
+     */
+    private static HttpTransport defaultTransport(int maxConcurrentDownloads) {
+        return new OkHttpTransport(HttpClientConfig.defaults(maxConcurrentDownloads));
     }
 
     /**
@@ -48,6 +148,84 @@ public class DownloadManager {
         this(4);
     }
 
+    /**
+     * Establece la política que elige qué descarga en cola arranca a continuación
+     * @param schedulingPolicy Política (por defecto, orden de llegada)
+     */
+    public void setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+    }
+
+    /**
+     * Establece el tamaño máximo de los archivos que van por el carril rápido de archivos
+     * pequeños. Sólo se aplica a descargas de tamaño conocido antes de empezar (normalmente
+     * por el sondeo, que añade un HEAD a cada archivo): el Content-Length del GET llega
+     * cuando la descarga ya ocupa un hueco normal.
+     * @param smallFileThreshold Tamaño en bytes; 0 desactiva el carril
+     */
+    public void setSmallFileThreshold(long smallFileThreshold) {
+        this.smallFileThreshold = smallFileThreshold;
+    }
+
+    /**
+     * Establece la política de reintentos de las descargas que arranquen a partir de ahora
+     * @param retryPolicy Política (por defecto {@link RetryPolicy#defaults()}; {@link RetryPolicy#none()} los desactiva)
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Establece los criterios para abortar conexiones estancadas de las descargas que
+     * arranquen a partir de ahora
+     * @param stallPolicy Criterios (por defecto {@link StallPolicy#defaults()}; null desactiva la detección)
+     */
+    public void setStallPolicy(StallPolicy stallPolicy) {
+        this.stallPolicy = stallPolicy;
+    }
+
+    /**
+     * Establece cuántas conexiones usa cada descarga grande de un servidor que admite rangos
+     * @param segmentsPerDownload Conexiones por descarga (1 desactiva la descarga por tramos)
+     */
+    public void setSegmentsPerDownload(int segmentsPerDownload) {
+        this.segmentsPerDownload = Math.max(1, segmentsPerDownload);
+    }
+
+    /**
+     * Activa la duplicación del final de los tramos lentos en las descargas por tramos
+     * @param hedgePolicy Criterios y presupuesto (por defecto null: desactivado)
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Activa el motor asíncrono para las descargas que arranquen a partir de ahora.
+     * Las descargas a disco de un solo cuerpo no ocupan un hilo cada una: las atienden unos
+     * pocos hilos de bucle, así que los huecos del gestor pueden ser muchos más que los
+     * hilos. Las descargas por tramos, a memoria o con extracción siguen en el motor
+     * bloqueante, igual que todas con un transporte distinto de {@link OkHttpTransport}.
+     * @param asyncEngineEnabled true para usar el motor asíncrono (por defecto, desactivado)
+     */
+    public void setAsyncEngineEnabled(boolean asyncEngineEnabled) {
+        this.asyncEngineEnabled = asyncEngineEnabled;
+    }
+
+    private synchronized AsyncTransferEngine asyncEngine() {
+        if (asyncEngine == null) {
+            asyncEngine = AsyncTransferEngine.forTransport((OkHttpTransport) transport);
+        }
+        return asyncEngine;
+    }
+
+    /**
+     * Activa o desactiva el sondeo previo (HEAD) de las descargas en cola
+     */
+    public void setProbeEnabled(boolean probeEnabled) {
+        this.probeEnabled = probeEnabled;
+    }
+
     /**
      * Establece el listener global para todas las descargas
      */
@@ -79,57 +257,460 @@ public class DownloadManager {
      * Inicia una descarga con un DownloadItem existente
      */
     public DownloadItem startDownload(DownloadItem item) {
-        DownloadTask task = new DownloadTask(item, this::onProgressUpdate, httpClient);
+        submit(item);
+        return item;
+    }
+
+    /**
+     * Inicia una descarga con un DownloadItem existente
+     * @return CompletableFuture que se completa con el item cuando la descarga termina,
+     *         con cualquier resultado (completada, fallida o cancelada)
+     */
+    public CompletableFuture<DownloadItem> startDownloadAsync(DownloadItem item) {
+        return submit(item);
+    }
+
+    /**
+     * Descarga un recurso a memoria sin escribir en el sistema de archivos.
+     *
+     * La respuesta se recibe en un buffer del heap y se hashea a medida que llega; el
+     * resultado queda en {@link DownloadItem#getContent()}. Si la respuesta supera el
+     * límite, la descarga continúa automáticamente hacia la carpeta de descargas y
+     * getContent() devuelve null.
+     * @param url URL del recurso
+     * @param expectedHash Hash esperado para verificación (opcional)
+     * @param maxBytes Tamaño máximo a mantener en memoria
+     * @return CompletableFuture que se completa con el item al terminar
+     */
+    public CompletableFuture<DownloadItem> downloadToMemory(String url, String expectedHash, long maxBytes) {
+        if (maxBytes <= 0 || maxBytes > MAX_MEMORY_TARGET) {
+            throw new IllegalArgumentException("Límite en memoria fuera de rango: " + maxBytes);
+        }
+        
+        String fileName = FileUtils.extractFileNameFromUrl(url);
+        String destinationPath = Paths.get(FileUtils.getDownloadsDirectory(), fileName).toString();
+        
+        DownloadItem item = new DownloadItem(url, fileName, destinationPath);
+        item.setExpectedHash(expectedHash);
+        item.setMemoryLimit(maxBytes);
+        
+        return submit(item);
+    }
+
+    /**
+     * Abre un flujo con los bytes de una descarga en orden, a medida que llegan y mientras
+     * se siguen escribiendo en disco.
+     *
+     * Puede abrirse antes de que la descarga arranque, durante la transferencia o cuando
+     * ya terminó. Un consumidor lento no frena la escritura: el flujo rellena lo que se
+     * pierda leyendo del archivo. Si la descarga no se completa, la lectura lanza
+     * IOException. El consumidor debe cerrar el flujo.
+     * @param item Descarga iniciada con este gestor
+     * @return InputStream con el contenido completo de la descarga
+     */
+    public InputStream openStream(DownloadItem item) {
+        DownloadStream stream = new DownloadStream(DownloadStream.DEFAULT_CAPACITY);
+        
+        // Una seguidora recibe los mismos bytes que su líder
+        DownloadItem source = item;
+        SharedTransfer transfer = inFlight.get(item.getUrl());
+        if (transfer != null && transfer.getFollowers().contains(item)) {
+            source = transfer.getLeader();
+        }
+        
+        synchronized (queue) {
+            if (queue.contains(source)) {
+                pendingStreams.computeIfAbsent(source, key -> new ArrayList<>()).add(stream);
+                return stream;
+            }
+            
+            DownloadTask task = activeTasks.get(source);
+            if (task == null) {
+                task = smallTasks.get(source);
+            }
+            if (task != null) {
+                task.addStream(stream);
+                return stream;
+            }
+        }
+        
+        // Ya terminó: servir directamente el resultado
+        stream.finish(item);
+        return stream;
+    }
+
+    /**
+     * Pasa a la tarea los flujos abiertos mientras la descarga esperaba en cola.
+     * Se llama con el monitor de la cola tomado.
+     */
+    private void attachPendingStreams(DownloadItem item, DownloadTask task) {
+        List<DownloadStream> waiting = pendingStreams.remove(item);
+        if (waiting != null) {
+            waiting.forEach(task::addStream);
+        }
+    }
+
+    /**
+     * Pone una descarga en cola o la adjunta a la transferencia en curso de la misma URL
+     * @return CompletableFuture del resultado de la descarga
+     */
+    private CompletableFuture<DownloadItem> submit(DownloadItem item) {
+        return submit(item, new CompletableFuture<>());
+    }
+
+    /**
+     * Como {@link #submit(DownloadItem)}, completando al terminar el futuro indicado: una
+     * descarga que se vuelve a poner en cola conserva el que ya tienen sus llamantes
+     */
+    private CompletableFuture<DownloadItem> submit(DownloadItem item, CompletableFuture<DownloadItem> future) {
+        // Las descargas a memoria o con extracción no comparten transferencia: el resultado
+        // no es sólo un archivo que se pueda enlazar
+        if (item.getMemoryLimit() <= 0 && item.getExtractTo() == null) {
+            synchronized (inFlight) {
+                // Si la misma URL ya se está descargando, adjuntarse a esa transferencia
+                SharedTransfer running = inFlight.get(item.getUrl());
+                if (running != null && running.attach(item)) {
+                    futures.put(item, future);
+                    mirrorProgress(running.getLeader(), item);
+                    return future;
+                }
+                inFlight.put(item.getUrl(), new SharedTransfer(item));
+            }
+        }
+
+        // Queda PENDING en la cola hasta que haya un hueco y espacio en disco
+        futures.put(item, future);
+        boolean needsProbe = probeEnabled && !item.isProbed();
+        if (needsProbe) {
+            probing.add(item);
+        }
+        synchronized (queue) {
+            beginQueueWait(item);
+            queue.add(item);
+        }
+        
+        if (needsProbe) {
+            // El sondeo aporta tamaño y tipo antes de admitir la descarga
+            probe.probe(item).whenComplete((probed, error) -> {
+                probing.remove(item);
+                dispatch();
+            });
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Arranca las descargas en cola mientras haya huecos libres y espacio en disco
+     */
+    private void dispatch() {
+        synchronized (queue) {
+            // Los archivos pequeños no esperan hueco: van directamente a su carril
+            routeSmallFiles();
+            
+            while (activeTasks.size() < maxConcurrentDownloads && !executorService.isShutdown()) {
+                List<DownloadItem> candidates = new ArrayList<>();
+                boolean heldForSpace = false;
+                for (DownloadItem queued : queue) {
+                    // Una pequeña cuyo sondeo acaba de terminar la recoge el siguiente reparto
+                    if (probing.contains(queued) || usesSmallFileLane(queued)) {
+                        continue;
+                    }
+                    if (hasDiskSpaceFor(queued)) {
+                        candidates.add(queued);
+                    } else {
+                        heldForSpace = true;
+                    }
+                }
+                
+                if (heldForSpace) {
+                    // Retener las que no caben y volver a comprobar más tarde
+                    scheduleAdmissionRecheck();
+                }
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                
+                DownloadItem next = schedulingPolicy.select(candidates);
+                queue.remove(next);
+                endQueueWait(next, false);
+                schedulingPolicy.onStarted(next);
+                launch(next);
+            }
+        }
+    }
+
+    /**
+     * Empieza a medir la espera en cola para JFR; sin grabación activa no guarda nada
+     */
+    private void beginQueueWait(DownloadItem item) {
+        QueueWaitEvent event = new QueueWaitEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            queueWaits.put(item, event);
+        }
+    }
+
+    /**
+     * Cierra la espera en cola de una descarga admitida. Debe llamarse con el monitor de la
+     * cola tomado.
+     */
+    private void endQueueWait(DownloadItem item, boolean smallFileLane) {
+        QueueWaitEvent event = queueWaits.remove(item);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.url = item.getUrl();
+            event.smallFileLane = smallFileLane;
+            event.queued = queue.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Pasa al carril rápido las descargas pequeñas admisibles de la cola.
+     * Debe llamarse con el monitor de la cola tomado.
+     */
+    private void routeSmallFiles() {
+        Iterator<DownloadItem> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            DownloadItem queued = iterator.next();
+            if (probing.contains(queued) || !usesSmallFileLane(queued)) {
+                continue;
+            }
+            if (hasDiskSpaceFor(queued)) {
+                iterator.remove();
+                endQueueWait(queued, true);
+                schedulingPolicy.onStarted(queued);
+                launchSmall(queued);
+            } else {
+                scheduleAdmissionRecheck();
+            }
+        }
+    }
+
+    private boolean usesSmallFileLane(DownloadItem item) {
+        return item.getTotalSize() > 0 && item.getTotalSize() <= smallFileThreshold
+                && !smallFileLane.isShutdown();
+    }
+
+    /**
+     * Comprueba si el disco puede alojar la descarga además de lo que falta por escribir
+     * de las descargas en curso
+     */
+    private boolean hasDiskSpaceFor(DownloadItem item) {
+        if (staysInMemory(item)) {
+            return true;
+        }
+        
+        long available = FileUtils.getUsableSpace(Paths.get(item.getDestinationPath()));
+        long needed = Math.max(item.getTotalSize(), MIN_FREE_SPACE);
+        return available - getReservedBytes() >= needed;
+    }
+
+    /**
+     * Indica si se sabe que la descarga cabe en su destino en memoria
+     */
+    private boolean staysInMemory(DownloadItem item) {
+        return item.getMemoryLimit() > 0 && item.getTotalSize() > 0 && item.getTotalSize() <= item.getMemoryLimit();
+    }
+
+    /**
+     * Bytes que las descargas en curso todavía van a escribir en disco
+     */
+    private long getReservedBytes() {
+        return Stream.concat(activeTasks.keySet().stream(), smallTasks.keySet().stream())
+                .filter(active -> active.getTotalSize() > 0 && !staysInMemory(active))
+                .mapToLong(active -> Math.max(0, active.getTotalSize() - active.getDownloadedSize()))
+                .sum();
+    }
+
+    private void scheduleAdmissionRecheck() {
+        if (admissionRecheckScheduled.compareAndSet(false, true)) {
+            admissionTimer.schedule(() -> {
+                admissionRecheckScheduled.set(false);
+                dispatch();
+            }, ADMISSION_RECHECK_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Ejecuta una descarga admitida en el pool de descargas o en el motor asíncrono
+     */
+    private void launch(DownloadItem item) {
+        DownloadTask task = new DownloadTask(item, this::onProgressUpdate, transport);
+        task.setContentStore(contentStore);
+        task.setValidatorStore(validatorStore);
+        task.setRetryPolicy(retryPolicy);
+        task.setStallPolicy(stallPolicy);
+        task.setSegments(segmentsPerDownload);
+        task.setHedgePolicy(hedgePolicy);
+        task.setProbe(probe);
+        task.setMetrics(metrics);
         activeTasks.put(item, task);
+        attachPendingStreams(item, task);
         
-        CompletableFuture<DownloadItem> future = task.executeAsync()
-                .thenApply(completedItem -> {
+        CompletableFuture<DownloadItem> running = asyncEngineEnabled && task.canRunAsync()
+                ? task.executeOn(asyncEngine())
+                : task.executeAsync(executorService);
+        running
+                .exceptionally(throwable -> {
+                    item.setStatus(DownloadItem.DownloadStatus.FAILED);
+                    item.setErrorMessage(throwable.getMessage());
+                    return item;
+                })
+                .thenAccept(completedItem -> {
                     // Remover de tareas activas
                     activeTasks.remove(completedItem);
-                    futures.remove(completedItem);
+                    schedulingPolicy.onFinished(completedItem);
+                    
+                    // Indexar el contenido para reutilizarlo en descargas futuras
+                    if (completedItem.getStatus() == DownloadItem.DownloadStatus.COMPLETED && completedItem.hasLocalFile()) {
+                        contentStore.register(completedItem.getHash(), completedItem.getDestinationPath());
+                    }
                     
                     // Guardar log
+                    long logStart = System.nanoTime();
                     saveDownloadLog(completedItem);
+                    recordTrace(completedItem, System.nanoTime() - logStart);
                     
-                    return completedItem;
-                })
-                .exceptionally(throwable -> {
-                    item.setStatus(DownloadItem.DownloadStatus.FAILED);
-                    item.setErrorMessage(throwable.getMessage());
-                    
-                    activeTasks.remove(item);
-                    futures.remove(item);
+                    completeFollowers(completedItem);
                     
-                    saveDownloadLog(item);
+                    CompletableFuture<DownloadItem> future = futures.remove(completedItem);
+                    if (future != null) {
+                        future.complete(completedItem);
+                    }
                     
-                    return item;
+                    // Liberar el hueco para la siguiente descarga en cola
+                    dispatch();
                 });
+    }
+
+    /**
+     * Ejecuta una descarga pequeña en el carril rápido. No notifica progreso por sí misma:
+     * el resultado se publica con el lote en {@link #onSmallFilesFinished}.
+     */
+    private void launchSmall(DownloadItem item) {
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setContentStore(contentStore);
+        task.setValidatorStore(validatorStore);
+        task.setRetryPolicy(retryPolicy);
+        task.setStallPolicy(stallPolicy);
+        task.setInMemoryLimit(smallFileThreshold);
+        task.setDeferredRecording(true);
+        task.setMetrics(metrics);
+        smallTasks.put(item, task);
+        attachPendingStreams(item, task);
         
-        futures.put(item, future);
-        return item;
+        item.setStatus(DownloadItem.DownloadStatus.DOWNLOADING);
+        smallFileLane.submit(task, item);
+    }
+
+    /**
+     * Cierra un lote de descargas pequeñas: índices, log e interfaz se actualizan una vez
+     * por lote en lugar de una vez por archivo
+     */
+    private void onSmallFilesFinished(List<DownloadItem> batch) {
+        List<DownloadLog> logs = new ArrayList<>();
+        for (DownloadItem item : batch) {
+            smallTasks.remove(item);
+            schedulingPolicy.onFinished(item);
+            logs.add(new DownloadLog(item));
+        }
+        
+        contentStore.registerAll(batch);
+        validatorStore.recordAll(batch);
+        long logStart = System.nanoTime();
+        saveDownloadLogs(logs);
+        // Una escritura para todo el lote: cada descarga se anota su parte
+        long logShare = (System.nanoTime() - logStart) / Math.max(1, batch.size());
+        batch.forEach(item -> recordTrace(item, logShare));
+        
+        if (globalProgressListener != null) {
+            globalProgressListener.onProgressBatch(batch);
+        }
+        
+        for (DownloadItem item : batch) {
+            completeFollowers(item);
+            
+            CompletableFuture<DownloadItem> future = futures.remove(item);
+            if (future != null) {
+                future.complete(item);
+            }
+        }
+        
+        dispatch();
     }
 
     /**
      * Cancela una descarga
      */
     public void cancelDownload(DownloadItem item) {
+        SharedTransfer transfer = inFlight.get(item.getUrl());
+        if (transfer != null && transfer.detach(item)) {
+            // Era una seguidora: la transferencia compartida continúa para las demás
+            item.setCancelled(true);
+            item.setEndTime(LocalDateTime.now());
+            onProgressUpdate(item);
+            
+            CompletableFuture<DownloadItem> future = futures.remove(item);
+            if (future != null) {
+                future.complete(item);
+            }
+            return;
+        }
+        
+        boolean wasQueued;
+        synchronized (queue) {
+            wasQueued = queue.remove(item);
+        }
+        if (wasQueued) {
+            // Todavía no había empezado: basta con sacarla de la cola
+            queueWaits.remove(item);
+            item.setCancelled(true);
+            item.setEndTime(LocalDateTime.now());
+            List<DownloadStream> waiting = pendingStreams.remove(item);
+            if (waiting != null) {
+                waiting.forEach(stream -> stream.finish(item));
+            }
+            onProgressUpdate(item);
+            saveDownloadLog(item);
+            completeFollowers(item);
+            
+            CompletableFuture<DownloadItem> future = futures.remove(item);
+            if (future != null) {
+                future.complete(item);
+            }
+            return;
+        }
+        
         DownloadTask task = activeTasks.get(item);
+        if (task == null) {
+            task = smallTasks.get(item);
+        }
         if (task != null) {
             task.cancel();
         }
-        
-        CompletableFuture<DownloadItem> future = futures.get(item);
-        if (future != null) {
-            future.cancel(true);
-        }
     }
 
     /**
      * Cancela todas las descargas activas
      */
     public void cancelAllDownloads() {
+        // Marcar primero las seguidoras para que no se relancen al cancelar a su líder
+        inFlight.values().forEach(transfer ->
+                transfer.getFollowers().forEach(follower -> follower.setCancelled(true)));
+        
+        List<DownloadItem> queued;
+        synchronized (queue) {
+            queued = new ArrayList<>(queue);
+        }
+        queued.forEach(this::cancelDownload);
+        
         activeTasks.values().forEach(DownloadTask::cancel);
-        futures.values().forEach(future -> future.cancel(true));
+        smallTasks.values().forEach(DownloadTask::cancel);
     }
 
     /**
@@ -142,18 +723,39 @@ public class DownloadManager {
         item.setStatus(DownloadItem.DownloadStatus.PAUSED);
     }
 
+    /**
+     * Obtiene el almacén de contenido local indexado por hash
+     */
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
     /**
      * Verifica si una descarga está activa
      */
     public boolean isDownloadActive(DownloadItem item) {
-        return activeTasks.containsKey(item);
+        if (activeTasks.containsKey(item) || smallTasks.containsKey(item)) {
+            return true;
+        }
+        
+        SharedTransfer transfer = inFlight.get(item.getUrl());
+        return transfer != null && transfer.getFollowers().contains(item);
     }
 
     /**
      * Obtiene el número de descargas activas
      */
     public int getActiveDownloadsCount() {
-        return activeTasks.size();
+        return activeTasks.size() + smallTasks.size();
+    }
+
+    /**
+     * Obtiene el número de descargas en cola esperando hueco o espacio en disco
+     */
+    public int getQueuedDownloadsCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
     }
 
     /**
@@ -161,7 +763,7 @@ public class DownloadManager {
      */
     public void waitForAllDownloads() {
         CompletableFuture<Void> allFutures = CompletableFuture.allOf(
-            futures.values().toArray(new CompletableFuture[0])
+            futures.values().toArray(new CompletableFuture<?>[0])
         );
         
         try {
@@ -171,12 +773,50 @@ public class DownloadManager {
         }
     }
 
+    /**
+     * Reparto del tiempo de las descargas terminadas entre fases (DNS, conexión, primer
+     * byte, transferencia, hash, reintentos, registro), acumulado desde que se creó el gestor
+     */
+    public TraceSummary getTraceSummary() {
+        return traceSummary;
+    }
+
+    /**
+     * Métricas del gestor (bytes, reintentos, resultados, tiempos); se pueden registrar
+     * métricas propias en el mismo registro para publicarlas juntas
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Publica las métricas en formato Prometheus en http://127.0.0.1:port/metrics hasta
+     * {@link #shutdown()}. Si ya estaban publicadas, devuelve el puerto existente.
+     * @param port Puerto de escucha, o 0 para que el sistema elija uno libre
+     * @return Puerto en el que escucha
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public synchronized int startMetricsServer(int port) throws IOException {
+        if (metricsServer == null) {
+            metricsServer = MetricsServer.start(metricsRegistry, port);
+        }
+        return metricsServer.getPort();
+    }
+
+    /**
+     * Estado de las conexiones del transporte: ociosas, en uso y tasa de reutilización
+     * @return Instantánea, o null si el transporte no expone su pool
+     */
+    public ConnectionStats getConnectionStats() {
+        return transport.getConnectionStats();
+    }
+
     /**
      * Obtiene estadísticas de descargas
      */
     public DownloadStats getStats() {
         return new DownloadStats(
-            activeTasks.size(),
+            getActiveDownloadsCount(),
             getCompletedDownloadsCount(),
             getFailedDownloadsCount(),
             getTotalDownloadedBytes()
@@ -188,6 +828,9 @@ public class DownloadManager {
      */
     public void shutdown() {
         cancelAllDownloads();
+        admissionTimer.shutdownNow();
+        probe.shutdown();
+        smallFileLane.shutdown();
         executorService.shutdown();
         
         try {
@@ -198,9 +841,22 @@ public class DownloadManager {
             executorService.shutdownNow();
         }
         
-        // Cerrar cliente HTTP
-        httpClient.dispatcher().executorService().shutdown();
-        httpClient.connectionPool().evictAll();
+        synchronized (this) {
+            if (asyncEngine != null) {
+                asyncEngine.shutdown();
+            }
+            if (metricsServer != null) {
+                metricsServer.stop();
+                metricsServer = null;
+            }
+        }
+        
+        // Guardar los índices que aún tengan cambios pendientes
+        contentStore.flush();
+        validatorStore.flush();
+        
+        // Cerrar transporte HTTP
+        transport.shutdown();
     }
 
     /**
@@ -210,12 +866,173 @@ public class DownloadManager {
         if (globalProgressListener != null) {
             globalProgressListener.onProgressUpdate(item);
         }
+        
+        // Reflejar el progreso del líder en las descargas adjuntas
+        SharedTransfer transfer = inFlight.get(item.getUrl());
+        if (transfer != null && transfer.getLeader() == item) {
+            for (DownloadItem follower : transfer.getFollowers()) {
+                mirrorProgress(item, follower);
+            }
+        }
+    }
+
+    /**
+     * Copia el estado de progreso del líder en una seguidora
+     */
+    private void mirrorProgress(DownloadItem leader, DownloadItem follower) {
+        if (follower.isCancelled()) {
+            return;
+        }
+        
+        if (follower.getStartTime() == null) {
+            follower.setStartTime(LocalDateTime.now());
+        }
+        if (leader.getStatus() == DownloadItem.DownloadStatus.DOWNLOADING ||
+            leader.getStatus() == DownloadItem.DownloadStatus.VERIFYING) {
+            follower.setStatus(leader.getStatus());
+        }
+        follower.setTotalSize(leader.getTotalSize());
+        follower.setDownloadedSize(leader.getDownloadedSize());
+        
+        if (globalProgressListener != null) {
+            globalProgressListener.onProgressUpdate(follower);
+        }
+    }
+
+    /**
+     * Cierra la transferencia compartida del líder y entrega el resultado a sus seguidoras
+     */
+    private void completeFollowers(DownloadItem leader) {
+        List<DownloadItem> followers;
+        synchronized (inFlight) {
+            SharedTransfer transfer = inFlight.get(leader.getUrl());
+            if (transfer == null || transfer.getLeader() != leader) {
+                return;
+            }
+            inFlight.remove(leader.getUrl());
+            followers = transfer.close();
+        }
+        
+        for (DownloadItem follower : followers) {
+            if (follower.isCancelled()) {
+                CompletableFuture<DownloadItem> future = futures.remove(follower);
+                if (future != null) {
+                    future.complete(follower);
+                }
+                continue;
+            }
+            
+            if (leader.getStatus() == DownloadItem.DownloadStatus.CANCELLED) {
+                // Sólo se canceló el líder: la seguidora continúa por su cuenta con su mismo futuro
+                CompletableFuture<DownloadItem> future = futures.remove(follower);
+                submit(follower, future != null ? future : new CompletableFuture<>());
+                continue;
+            }
+            
+            deliverToFollower(leader, follower);
+            
+            CompletableFuture<DownloadItem> future = futures.remove(follower);
+            if (future != null) {
+                future.complete(follower);
+            }
+        }
+    }
+
+    /**
+     * Coloca en el destino de la seguidora los bytes descargados por el líder
+     */
+    private void deliverToFollower(DownloadItem leader, DownloadItem follower) {
+        boolean bytesAvailable = leader.getStatus() == DownloadItem.DownloadStatus.COMPLETED ||
+                                 leader.getStatus() == DownloadItem.DownloadStatus.HASH_MISMATCH;
+        
+        if (!bytesAvailable) {
+            follower.setStatus(DownloadItem.DownloadStatus.FAILED);
+            follower.setErrorMessage(leader.getErrorMessage());
+        } else {
+            try {
+                FileUtils.linkOrCopy(Paths.get(leader.getDestinationPath()), Paths.get(follower.getDestinationPath()));
+                follower.setTotalSize(leader.getTotalSize());
+                follower.setDownloadedSize(leader.getDownloadedSize());
+                follower.setHash(leader.getHash());
+                follower.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+                
+                String expectedHash = follower.getExpectedHash();
+                if (expectedHash != null && !expectedHash.isEmpty()) {
+                    verifyFollowerHash(follower, expectedHash);
+                }
+                
+                if (follower.getStatus() == DownloadItem.DownloadStatus.COMPLETED) {
+                    contentStore.register(follower.getHash(), follower.getDestinationPath());
+                }
+            } catch (Exception e) {
+                follower.setStatus(DownloadItem.DownloadStatus.FAILED);
+                follower.setErrorMessage("Error copiando descarga compartida: " + e.getMessage());
+            }
+        }
+        
+        follower.setEndTime(LocalDateTime.now());
+        saveDownloadLog(follower);
+        
+        if (globalProgressListener != null) {
+            globalProgressListener.onProgressUpdate(follower);
+        }
+    }
+
+    /**
+     * Verifica el hash esperado de una seguidora reutilizando el del líder cuando es del mismo tipo
+     */
+    private void verifyFollowerHash(DownloadItem follower, String expectedHash) throws Exception {
+        HashVerifier.HashType hashType = HashVerifier.detectHashType(expectedHash);
+        if (hashType == null) {
+            hashType = HashVerifier.HashType.SHA256;
+        }
+        
+        String hash = follower.getHash();
+        if (hash == null || hashType != HashVerifier.detectHashType(hash)) {
+            hash = HashVerifier.calculateHash(follower.getDestinationPath(), hashType);
+            follower.setHash(hash);
+        }
+        
+        if (!hash.equalsIgnoreCase(expectedHash)) {
+            follower.setStatus(DownloadItem.DownloadStatus.HASH_MISMATCH);
+            follower.setErrorMessage("Hash mismatch. Esperado: " + expectedHash + ", Calculado: " + hash);
+        }
+    }
+
+    /**
+     * Anota en la traza de una descarga terminada el tiempo de su registro y la suma al
+     * resumen y a las métricas del gestor
+     */
+    private void recordTrace(DownloadItem item, long logNanos) {
+        DownloadTrace trace = item.getTrace();
+        trace.add(DownloadTrace.Phase.LOG, logNanos);
+        trace.markFinished();
+        traceSummary.record(trace);
+        metrics.recordFinished(item);
+    }
+
+    /**
+     * Guarda los logs de un lote de descargas con una escritura por formato
+     */
+    private void saveDownloadLogs(List<DownloadLog> logs) {
+        LogFlushEvent event = new LogFlushEvent();
+        event.begin();
+        try {
+            FileUtils.saveLogsAsJson(logs);
+            FileUtils.saveLogsAsCsv(logs);
+        } catch (Exception e) {
+            System.err.println("Error guardando log: " + e.getMessage());
+        } finally {
+            commitLogFlush(event, logs.size());
+        }
     }
 
     /**
      * Guarda el log de una descarga
      */
     private void saveDownloadLog(DownloadItem item) {
+        LogFlushEvent event = new LogFlushEvent();
+        event.begin();
         try {
             DownloadLog log = new DownloadLog(item);
             
@@ -225,21 +1042,30 @@ public class DownloadManager {
             
         } catch (Exception e) {
             System.err.println("Error guardando log: " + e.getMessage());
+        } finally {
+            commitLogFlush(event, 1);
+        }
+    }
+
+    private static void commitLogFlush(LogFlushEvent event, int entries) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.entries = entries;
+            event.commit();
         }
     }
 
     // Métodos auxiliares para estadísticas
     private int getCompletedDownloadsCount() {
-        // En una implementación real, mantendríamos contadores
-        return 0;
+        return (int) metrics.getCompleted();
     }
 
     private int getFailedDownloadsCount() {
-        return 0;
+        return (int) metrics.getFailed();
     }
 
     private long getTotalDownloadedBytes() {
-        return activeTasks.keySet().stream()
+        return Stream.concat(activeTasks.keySet().stream(), smallTasks.keySet().stream())
                 .mapToLong(DownloadItem::getDownloadedSize)
                 .sum();
     }
@@ -0,0 +1,115 @@
+package stevedev.core;
+
+import stevedev.metrics.Counter;
+import stevedev.metrics.Histogram;
+import stevedev.metrics.MetricsRegistry;
+import stevedev.model.DownloadItem;
+import stevedev.model.DownloadTrace;
+
+/**
+ * Métricas de descarga que comparten el gestor y sus tareas.
+ *
+ * Las tareas suman bytes, reintentos y el tiempo hasta la primera respuesta de cada intento
+ * mientras transfieren; el gestor anota el resultado, la duración, el hash y la velocidad
+ * de cada descarga al terminar. Los valores se publican en el {@link MetricsRegistry}.
+ */
+final class DownloadMetrics {
+    private static final double NANOS_TO_SECONDS = 1e-9;
+    private static final double[] SECONDS_BUCKETS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+    private static final double[] BYTES_PER_SECOND_BUCKETS = {
+            64 * 1024, 256 * 1024, 1 << 20, 4 << 20, 16 << 20, 64 << 20, 256 << 20, 1 << 30};
+    /** Ventana mínima de la velocidad instantánea */
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    final Counter bytesReceived;
+    final Counter retries;
+    final Histogram timeToFirstByte;
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter cancelled;
+    private final Histogram duration;
+    private final Histogram hashTime;
+    private final Histogram throughput;
+
+    private long rateBytes;
+    private long rateAt = System.nanoTime();
+    private double rate;
+
+    DownloadMetrics(MetricsRegistry registry) {
+        bytesReceived = registry.counter("downloader_received_bytes_total",
+                "Bytes recibidos por la red, reintentos incluidos");
+        retries = registry.counter("downloader_retries_total", "Reintentos tras un fallo de red o del servidor");
+        completed = registry.counter("downloader_completed_total", "Descargas completadas");
+        failed = registry.counter("downloader_failed_total", "Descargas fallidas o con hash incorrecto");
+        cancelled = registry.counter("downloader_cancelled_total", "Descargas canceladas");
+        timeToFirstByte = registry.histogram("downloader_time_to_first_byte_seconds",
+                "Desde la petición hasta las cabeceras de la respuesta, por intento", NANOS_TO_SECONDS, SECONDS_BUCKETS);
+        duration = registry.histogram("downloader_duration_seconds",
+                "Duración total de cada descarga terminada", NANOS_TO_SECONDS, SECONDS_BUCKETS);
+        hashTime = registry.histogram("downloader_hash_seconds",
+                "Relectura de archivos para calcular o verificar el hash, por descarga", NANOS_TO_SECONDS, SECONDS_BUCKETS);
+        throughput = registry.histogram("downloader_throughput_bytes_per_second",
+                "Velocidad media de transferencia de cada descarga completada", 1, BYTES_PER_SECOND_BUCKETS);
+        registry.gauge("downloader_receive_rate_bytes_per_second",
+                "Velocidad de recepción desde la lectura anterior (al menos un segundo)", this::getReceiveRate);
+    }
+
+    /**
+     * Anota el resultado y los tiempos de una descarga terminada
+     */
+    void recordFinished(DownloadItem item) {
+        switch (item.getStatus()) {
+            case COMPLETED:
+                completed.increment();
+                break;
+            case CANCELLED:
+                cancelled.increment();
+                break;
+            case FAILED:
+            case HASH_MISMATCH:
+                failed.increment();
+                break;
+            default:
+                return;
+        }
+
+        DownloadTrace trace = item.getTrace();
+        long elapsed = trace.getElapsedNanos();
+        if (elapsed > 0) {
+            duration.record(elapsed);
+        }
+        long hash = trace.getNanos(DownloadTrace.Phase.HASH);
+        if (hash > 0) {
+            hashTime.record(hash);
+        }
+        long transfer = trace.getNanos(DownloadTrace.Phase.TRANSFER);
+        if (item.getStatus() == DownloadItem.DownloadStatus.COMPLETED && transfer > 0 && item.getDownloadedSize() > 0) {
+            throughput.record((long) (item.getDownloadedSize() / (transfer * NANOS_TO_SECONDS)));
+        }
+    }
+
+    long getCompleted() {
+        return completed.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Bytes por segundo recibidos desde el cálculo anterior. Con lecturas más seguidas que
+     * la ventana mínima devuelve el último valor, para que dos consultas casi simultáneas
+     * no den picos.
+     */
+    synchronized double getReceiveRate() {
+        long now = System.nanoTime();
+        if (now - rateAt >= RATE_WINDOW_NANOS) {
+            long bytes = bytesReceived.get();
+            rate = (bytes - rateBytes) / ((now - rateAt) * NANOS_TO_SECONDS);
+            rateBytes = bytes;
+            rateAt = now;
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,173 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+import stevedev.util.FileUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sondeo previo (pre-flight) de descargas en cola.
+ *
+ * Antes de abrir el archivo se lanza una petición HEAD (o un GET de rango de un byte
+ * si el servidor no responde bien a HEAD) para conocer tamaño, soporte de rangos,
+ * validadores y tipo de contenido. Con esos datos el gestor puede ordenar la cola,
+ * reservar espacio y corregir el nombre del archivo antes de que empiece la descarga.
+ * Usa el mismo pool de conexiones que las descargas.
+ */
+public class DownloadProbe {
+    static final Duration PROBE_TIMEOUT = Duration.ofSeconds(10);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final HttpTransport transport;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     * @param transport Transporte de las descargas (se comparten sus conexiones)
+     * @param parallelism Número de sondeos simultáneos
+     */
+    public DownloadProbe(HttpTransport transport, int parallelism) {
+        this.transport = transport.withCallTimeout(PROBE_TIMEOUT);
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "download-probe-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sondea una descarga de forma asíncrona. Los errores no se propagan: el sondeo es
+     * sólo informativo y la descarga seguirá adelante aunque falle.
+     * @return CompletableFuture que se completa con el mismo item ya marcado como sondeado
+     */
+    public CompletableFuture<DownloadItem> probe(DownloadItem item) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                probeNow(item);
+            } catch (Exception e) {
+                System.err.println("Error sondeando " + item.getUrl() + ": " + e.getMessage());
+            }
+            item.setProbed(true);
+            return item;
+        }, executor);
+    }
+
+    /**
+     * Sondea un mirror de una descarga en marcha con los hilos de sondeo
+     * @return CompletableFuture con el mirror sondeado, o con null si el sondeo falla
+     */
+    CompletableFuture<DownloadItem> probeMirror(DownloadItem item, String mirrorUrl) {
+        return CompletableFuture.supplyAsync(() -> probeMirrorWith(transport, item, mirrorUrl), executor);
+    }
+
+    /**
+     * Sondea un mirror de una descarga en el hilo actual
+     * @return El mirror sondeado, o null si el sondeo falla
+     */
+    static DownloadItem probeMirrorWith(HttpTransport transport, DownloadItem item, String mirrorUrl) {
+        DownloadItem mirror = new DownloadItem(mirrorUrl, item.getFileName(), item.getDestinationPath());
+        try {
+            probeWith(transport, mirror);
+            return mirror;
+        } catch (IOException e) {
+            System.err.println("Error sondeando mirror " + mirrorUrl + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sondea una descarga en el hilo actual
+     */
+    void probeNow(DownloadItem item) throws IOException {
+        probeWith(transport, item);
+    }
+
+    /**
+     * Sondea una descarga con el transporte indicado (por ejemplo, los mirrors de una
+     * descarga que ya está en marcha)
+     */
+    static void probeWith(HttpTransport transport, DownloadItem item) throws IOException {
+        HttpTransport.Request head = HttpTransport.Request.head(item.getUrl());
+
+        try (HttpTransport.Response response = transport.newCall(head).execute()) {
+            if (response.isSuccessful() && parseContentLength(response.header("Content-Length")) > 0) {
+                applyResponse(item, response, parseContentLength(response.header("Content-Length")));
+                return;
+            }
+        }
+
+        // HEAD no soportado o sin tamaño: pedir sólo el primer byte
+        HttpTransport.Request range = HttpTransport.Request.get(item.getUrl())
+                .header("Range", "bytes=0-0");
+
+        try (HttpTransport.Response response = transport.newCall(range).execute()) {
+            if (response.code() == 206) {
+                item.setRangeSupported(true);
+                applyResponse(item, response, parseContentRangeTotal(response.header("Content-Range")));
+            } else if (response.isSuccessful()) {
+                applyResponse(item, response, parseContentLength(response.header("Content-Length")));
+            }
+        }
+    }
+
+    /**
+     * Detiene los hilos de sondeo
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void applyResponse(DownloadItem item, HttpTransport.Response response, long size) {
+        if (size > 0 && item.getTotalSize() == 0) {
+            item.setTotalSize(size);
+        }
+        if ("bytes".equalsIgnoreCase(response.header("Accept-Ranges"))) {
+            item.setRangeSupported(true);
+        }
+
+        item.setEtag(response.header("ETag"));
+        item.setLastModified(response.header("Last-Modified"));
+
+        String contentType = response.header("Content-Type");
+        if (contentType != null) {
+            item.setContentType(contentType);
+            FileUtils.applyContentTypeExtension(item, contentType);
+        }
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Extrae el tamaño total de una cabecera "bytes 0-0/12345"
+     */
+    static long parseContentRangeTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        return parseContentLength(contentRange.substring(slash + 1));
+    }
+}
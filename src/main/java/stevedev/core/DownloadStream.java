@@ -0,0 +1,277 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Lectura en streaming de una descarga mientras todavía se está escribiendo.
+ *
+ * El hilo de la descarga ofrece una copia de cada bloque recibido a una cola acotada.
+ * Si el consumidor va lento y la cola está llena, el productor espera como mucho
+ * {@value #OFFER_TIMEOUT_MS} ms y después descarta el bloque. Tras un descarte ya no
+ * espera: descarta sin más hasta que el consumidor vacía la cola, así que un consumidor
+ * que va siempre más lento que la red no frena la escritura a disco. Los huecos que dejan los bloques descartados se
+ * rellenan leyendo del archivo hasta donde el escritor ya ha confirmado los datos (o del
+ * contenido en memoria cuando la descarga no va a disco), de modo que el consumidor
+ * siempre recibe los bytes completos y en orden.
+ *
+ * En modo sin pérdidas el productor espera a que haya sitio en lugar de descartar; es
+ * el modo que se usa cuando no hay archivo de respaldo (por ejemplo, al extraer un
+ * archivo comprimido sin guardarlo).
+ */
+final class DownloadStream extends InputStream {
+    /** Bloques pendientes por defecto (con bloques de 64 KB, unos 4 MB) */
+    static final int DEFAULT_CAPACITY = 64;
+    private static final long OFFER_TIMEOUT_MS = 50;
+    private static final long POLL_TIMEOUT_MS = 50;
+
+    private final BlockingQueue<Chunk> chunks;
+    private final boolean lossless;
+    private Chunk pending;
+    private long position;
+    private FileChannel fileChannel;
+
+    // Estado publicado por el hilo de la descarga
+    private volatile Path filePath;
+    private volatile LongSupplier committedBytes;
+    private volatile ByteBuffer memoryContent;
+    private volatile long totalSize = -1;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile long droppedChunks;
+    /** El consumidor va por detrás: no esperar hasta que vacíe la cola (sólo el productor) */
+    private boolean lagging;
+
+    DownloadStream(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Constructor
+     * @param capacity Bloques pendientes como máximo
+     * @param lossless true para esperar a que haya sitio en lugar de descartar bloques
+     */
+    DownloadStream(int capacity, boolean lossless) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+        this.lossless = lossless;
+    }
+
+    /**
+     * Indica el archivo de destino y cuántos bytes de él ya están escritos
+     */
+    void attachFile(Path filePath, LongSupplier committedBytes) {
+        this.filePath = filePath;
+        this.committedBytes = committedBytes;
+    }
+
+    /**
+     * Ofrece un bloque recibido en la posición indicada. No consume el buffer.
+     */
+    void offer(long offset, ByteBuffer data) {
+        if (closed || !data.hasRemaining()) {
+            return;
+        }
+
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        Chunk chunk = new Chunk(offset, copy);
+        try {
+            if (lossless) {
+                chunks.put(chunk);
+                return;
+            }
+            if (lagging && chunks.isEmpty()) {
+                lagging = false;
+            }
+            boolean queued = lagging
+                    ? chunks.offer(chunk)
+                    : chunks.offer(chunk, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!queued) {
+                // El consumidor rellenará el hueco desde el archivo
+                droppedChunks++;
+                lagging = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedChunks++;
+        }
+    }
+
+    /**
+     * Indica que ya se ofrecieron todos los bytes, antes de conocer el resultado final.
+     * El consumidor llega al final del flujo en cuanto los haya leído.
+     */
+    void endOfData(long totalSize) {
+        this.totalSize = totalSize;
+    }
+
+    /**
+     * Cierra el lado productor con el resultado final de la descarga: si se completó, el
+     * resto de bytes se lee del archivo de destino o del contenido en memoria; en otro
+     * caso el consumidor recibe un error.
+     */
+    void finish(DownloadItem item) {
+        if (item.getStatus() != DownloadItem.DownloadStatus.COMPLETED) {
+            String reason = item.getErrorMessage() != null ? ": " + item.getErrorMessage() : "";
+            failure = new IOException("Descarga no completada (" + item.getStatus() + ")" + reason);
+            return;
+        }
+
+        long size = item.getTotalSize();
+        if (item.hasContent()) {
+            memoryContent = item.getContent();
+        } else {
+            filePath = Paths.get(item.getDestinationPath());
+            committedBytes = () -> size;
+        }
+        totalSize = size;
+    }
+
+    /**
+     * Bloques descartados por ir el consumidor más lento que la red
+     */
+    long getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (closed) {
+                throw new IOException("Stream cerrado");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            if (pending == null) {
+                if (totalSize >= 0 && position >= totalSize) {
+                    return -1;
+                }
+                pending = poll();
+            }
+
+            if (pending != null) {
+                long end = pending.offset + pending.data.length;
+                if (end <= position) {
+                    // Bloque ya leído (por ejemplo, repetido al pasar de memoria a disco)
+                    pending = null;
+                    continue;
+                }
+                if (pending.offset <= position) {
+                    int start = (int) (position - pending.offset);
+                    int count = Math.min(len, pending.data.length - start);
+                    System.arraycopy(pending.data, start, b, off, count);
+                    position += count;
+                    return count;
+                }
+                // Falta un tramo anterior a este bloque
+                len = (int) Math.min(len, pending.offset - position);
+            }
+
+            int count = readBacking(b, off, len);
+            if (count > 0) {
+                position += count;
+                return count;
+            }
+            if (pending != null) {
+                waitForProgress();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        chunks.clear();
+        synchronized (this) {
+            if (fileChannel != null) {
+                fileChannel.close();
+                fileChannel = null;
+            }
+        }
+    }
+
+    private Chunk poll() throws IOException {
+        try {
+            return chunks.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lectura interrumpida", e);
+        }
+    }
+
+    private void waitForProgress() throws IOException {
+        try {
+            Thread.sleep(POLL_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lectura interrumpida", e);
+        }
+    }
+
+    /**
+     * Lee desde la posición actual en el contenido en memoria o en la parte confirmada del archivo
+     * @return Bytes leídos (0 si todavía no hay datos disponibles)
+     */
+    private int readBacking(byte[] b, int off, int len) throws IOException {
+        ByteBuffer content = memoryContent;
+        if (content != null) {
+            if (position >= content.limit()) {
+                return 0;
+            }
+            ByteBuffer view = content.duplicate();
+            view.position((int) position);
+            int count = Math.min(len, view.remaining());
+            view.get(b, off, count);
+            return count;
+        }
+
+        Path path = filePath;
+        LongSupplier committed = committedBytes;
+        if (path == null || committed == null) {
+            return 0;
+        }
+
+        long available = committed.getAsLong() - position;
+        if (available <= 0) {
+            return 0;
+        }
+        if (fileChannel == null) {
+            fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        return Math.max(0, fileChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available)), position));
+    }
+
+    private static final class Chunk {
+        final long offset;
+        final byte[] data;
+
+        Chunk(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+}
@@ -1,31 +1,178 @@
 package stevedev.core;
 
-import okhttp3.*;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import stevedev.metrics.jfr.ChunkWriteEvent;
+import stevedev.metrics.jfr.DownloadEvent;
+import stevedev.metrics.jfr.DownloadStartEvent;
+import stevedev.metrics.jfr.HashEvent;
 import stevedev.model.DownloadItem;
+import stevedev.model.DownloadTrace;
+import stevedev.util.FileUtils;
 import stevedev.util.ProgressListener;
 
 import java.io.*;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * Tarea de descarga que maneja la descarga de un archivo individual
  */
 public class DownloadTask {
+    private static final long PROGRESS_INTERVAL_BYTES = 64 * 1024;
+    private static final int MEMORY_CHUNK_SIZE = 8 * 1024;
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    private static final int EXTRACTION_STREAM_CAPACITY = 32;
+    private static final long RETRY_POLL_MS = 100;
+    private static final long BUFFER_WAIT_MS = 5;
+    /** Tamaño mínimo para repartir una descarga en tramos */
+    private static final long SEGMENTED_MIN_SIZE = 8 * 1024 * 1024;
+    private static final AtomicInteger EXTRACTOR_COUNT = new AtomicInteger();
+    private static final ExecutorService EXTRACTORS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "archive-extractor-" + EXTRACTOR_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final DownloadItem item;
     private final ProgressListener progressListener;
-    private final OkHttpClient httpClient;
+    private final HttpTransport transport;
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
-    private Call currentCall;
+    private volatile HttpTransport.Call currentCall;
+    private ContentStore contentStore;
+    private ValidatorStore validatorStore;
+    private long inMemoryLimit;
+    private boolean deferredRecording;
+    private volatile boolean writesToDisk;
+    private final List<DownloadStream> streams = new CopyOnWriteArrayList<>();
+    private boolean streamsFinished;
+    private volatile Path streamFile;
+    private volatile LongSupplier streamCommitted;
+    private RetryPolicy retryPolicy;
+    private StallPolicy stallPolicy;
+    private int segments = 1;
+    private HedgePolicy hedgePolicy;
+    private DownloadProbe probe;
+    private volatile SegmentedDownload segmentedDownload;
+    private long lastSegmentNotified;
+    private CompletableFuture<Integer> extraction;
+    private boolean resumable;
+    private String resumeValidator;
+    private long resumeOffset;
+    private DownloadMetrics metrics;
+    private final AtomicLong reportedBytes = new AtomicLong();
+    private final DownloadEvent downloadEvent = new DownloadEvent();
 
-    public DownloadTask(DownloadItem item, ProgressListener progressListener, OkHttpClient httpClient) {
+    public DownloadTask(DownloadItem item, ProgressListener progressListener, HttpTransport transport) {
         this.item = item;
         this.progressListener = progressListener;
-        this.httpClient = httpClient;
+        this.transport = transport;
+        this.writesToDisk = item.getMemoryLimit() <= 0 && item.hasLocalFile();
+    }
+
+    /**
+     * Establece el almacén de contenido usado para evitar descargas repetidas
+     */
+    public void setContentStore(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * Establece el almacén de validadores usado para peticiones condicionales
+     */
+    public void setValidatorStore(ValidatorStore validatorStore) {
+        this.validatorStore = validatorStore;
+    }
+
+    /**
+     * Establece el tamaño máximo de cuerpo que se recibe en memoria en lugar de pasar por
+     * el escritor en segundo plano. Estos cuerpos se hashean sin releer el archivo y se
+     * escriben con una sola llamada. Por defecto 0 (desactivado).
+     */
+    public void setInMemoryLimit(long inMemoryLimit) {
+        this.inMemoryLimit = inMemoryLimit;
+    }
+
+    /**
+     * Si está activo, los validadores de la respuesta sólo se copian al item y quien
+     * ejecuta la tarea los registra después en lote con {@link ValidatorStore#recordAll}
+     */
+    public void setDeferredRecording(boolean deferredRecording) {
+        this.deferredRecording = deferredRecording;
+    }
+
+    /**
+     * Establece la política de reintentos ante errores transitorios. Sin política (por
+     * defecto) el primer error termina la descarga.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Establece los criterios para abortar una conexión estancada y pasarla a los
+     * reintentos. Sin criterios (por defecto) sólo aplican los timeouts del cliente.
+     */
+    public void setStallPolicy(StallPolicy stallPolicy) {
+        this.stallPolicy = stallPolicy;
+    }
+
+    /**
+     * Establece cuántas conexiones se usan para descargas grandes de servidores que
+     * admiten rangos. Por defecto 1 (una sola conexión).
+     */
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Establece los criterios para duplicar el final de los tramos lentos en las descargas
+     * por tramos. Sin criterios (por defecto) no se duplica nada.
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Establece el sondeo previo cuyos hilos sondean los mirrors de las descargas por
+     * tramos. Sin él (por defecto) los mirrors se sondean uno tras otro en el hilo de la tarea.
+     */
+    void setProbe(DownloadProbe probe) {
+        this.probe = probe;
+    }
+
+    /**
+     * Establece las métricas donde se suman los bytes recibidos, los reintentos y el
+     * tiempo hasta la primera respuesta
+     */
+    void setMetrics(DownloadMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
@@ -33,17 +180,155 @@ public class DownloadTask {
      * @return CompletableFuture que se completa cuando la descarga termina
      */
     public CompletableFuture<DownloadItem> executeAsync() {
+        return executeAsync(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Ejecuta la descarga de forma asíncrona en el executor indicado
+     * @param executor Executor que aporta el hilo de la descarga
+     * @return CompletableFuture que se completa cuando la descarga termina
+     */
+    public CompletableFuture<DownloadItem> executeAsync(Executor executor) {
         return CompletableFuture.supplyAsync(() -> {
             try {
                 return download();
             } catch (Exception e) {
-                item.setStatus(DownloadItem.DownloadStatus.FAILED);
-                item.setErrorMessage(e.getMessage());
+                if (!cancelled.get()) {
+                    item.setStatus(DownloadItem.DownloadStatus.FAILED);
+                    item.setErrorMessage(e.getMessage());
+                }
                 item.setEndTime(LocalDateTime.now());
                 notifyProgress();
                 return item;
+            } finally {
+                finishTask();
+            }
+        }, executor);
+    }
+
+    /**
+     * Indica si la descarga puede ir por el motor asíncrono: un único cuerpo hacia disco,
+     * sin tramos, extracción ni destino en memoria, sobre el transporte de OkHttp
+     */
+    boolean canRunAsync() {
+        return transport instanceof OkHttpTransport && writesToDisk && item.getExtractTo() == null && inMemoryLimit <= 0 && !canDownloadSegmented();
+    }
+
+    /**
+     * Ejecuta la descarga en el motor asíncrono: ningún hilo queda bloqueado esperando la
+     * conexión ni entre reintentos, y el cuerpo lo bombean los hilos de bucle del motor
+     * @return CompletableFuture que se completa cuando la descarga termina
+     * @see #canRunAsync()
+     */
+    CompletableFuture<DownloadItem> executeOn(AsyncTransferEngine engine) {
+        CompletableFuture<DownloadItem> result = new CompletableFuture<>();
+        if (cancelled.get()) {
+            finishTask();
+            result.complete(item);
+            return result;
+        }
+
+        item.setStartTime(LocalDateTime.now());
+        markStarted();
+        if (completeFromContentStore()) {
+            finishTask();
+            result.complete(item);
+            return result;
+        }
+
+        item.setStatus(DownloadItem.DownloadStatus.DOWNLOADING);
+        notifyProgress();
+        new PumpedTransfer(engine, result).start();
+        return result;
+    }
+
+    /**
+     * Añade un lector en streaming que recibirá los bytes a medida que lleguen.
+     * Si la descarga ya terminó, el lector se sirve directamente del resultado.
+     */
+    void addStream(DownloadStream stream) {
+        synchronized (streams) {
+            if (!streamsFinished) {
+                if (streamFile != null) {
+                    stream.attachFile(streamFile, streamCommitted);
+                }
+                streams.add(stream);
+                return;
+            }
+        }
+        stream.finish(item);
+    }
+
+    /**
+     * Indica a los lectores el archivo que se está escribiendo para rellenar huecos
+     */
+    private void attachStreams(Path file, LongSupplier committed) {
+        synchronized (streams) {
+            streamFile = file;
+            streamCommitted = committed;
+            streams.forEach(stream -> stream.attachFile(file, committed));
+        }
+    }
+
+    /**
+     * Entrega un bloque recibido a los lectores en streaming
+     */
+    private void publish(long offset, ByteBuffer data) {
+        for (DownloadStream stream : streams) {
+            stream.offer(offset, data);
+        }
+    }
+
+    /**
+     * Indica a los lectores que ya recibieron todos los bytes
+     */
+    private void endStreams(long totalSize) {
+        streams.forEach(stream -> stream.endOfData(totalSize));
+    }
+
+    /**
+     * Anota el inicio de la transferencia en la traza y en la grabación de JFR
+     */
+    private void markStarted() {
+        item.getTrace().markStarted();
+        DownloadStartEvent start = new DownloadStartEvent();
+        if (start.shouldCommit()) {
+            start.url = item.getUrl();
+            start.fileName = item.getFileName();
+            start.expectedBytes = item.getTotalSize() > 0 ? item.getTotalSize() : -1;
+            start.commit();
+        }
+        downloadEvent.begin();
+    }
+
+    /**
+     * Cierra la traza y los lectores al terminar la tarea
+     */
+    private void finishTask() {
+        item.getTrace().markFinished();
+        // Sin inicio anotado la tarea no llegó a transferir (cancelada antes de empezar)
+        if (item.getTrace().getElapsedNanos() > 0) {
+            downloadEvent.end();
+            if (downloadEvent.shouldCommit()) {
+                downloadEvent.url = item.getUrl();
+                downloadEvent.fileName = item.getFileName();
+                downloadEvent.bytes = item.getDownloadedSize();
+                downloadEvent.status = item.getStatus().name();
+                downloadEvent.retries = item.getRetries();
+                downloadEvent.commit();
             }
-        });
+        }
+        finishStreams();
+    }
+
+    private void finishStreams() {
+        List<DownloadStream> finishing;
+        synchronized (streams) {
+            streamsFinished = true;
+            finishing = new ArrayList<>(streams);
+            streams.clear();
+        }
+        finishing.forEach(stream -> stream.finish(item));
     }
 
     /**
@@ -57,12 +342,18 @@ public class DownloadTask {
         if (currentCall != null) {
             currentCall.cancel();
         }
+        SegmentedDownload segmented = segmentedDownload;
+        if (segmented != null) {
+            segmented.cancel();
+        }
         
-        // Eliminar archivo parcial si existe
-        try {
-            Files.deleteIfExists(Paths.get(item.getDestinationPath()));
-        } catch (IOException e) {
-            System.err.println("Error eliminando archivo parcial: " + e.getMessage());
+        // Eliminar archivo parcial si existe (una descarga en memoria no ha escrito nada)
+        if (writesToDisk) {
+            try {
+                Files.deleteIfExists(Paths.get(item.getDestinationPath()));
+            } catch (IOException e) {
+                System.err.println("Error eliminando archivo parcial: " + e.getMessage());
+            }
         }
         
         item.setEndTime(LocalDateTime.now());
@@ -77,7 +368,7 @@ public class DownloadTask {
     }
 
     /**
-     * Ejecuta la descarga
+     * Ejecuta la descarga, reintentando los errores transitorios según la política
      */
     private DownloadItem download() throws IOException {
         if (cancelled.get()) {
@@ -85,246 +376,1301 @@ public class DownloadTask {
         }
 
         item.setStartTime(LocalDateTime.now());
+        markStarted();
+
+        if (completeFromContentStore()) {
+            extractLocalArchive();
+            return item;
+        }
+
         item.setStatus(DownloadItem.DownloadStatus.DOWNLOADING);
         notifyProgress();
 
-        Request request = new Request.Builder()
-                .url(item.getUrl())
-                .build();
+        try {
+            if (canDownloadSegmented() && downloadSegmented()) {
+                return item;
+            }
+
+            int retries = 0;
+            while (true) {
+                try {
+                    transfer();
+                    break;
+                } catch (IOException e) {
+                    if (cancelled.get() || retryPolicy == null ||
+                        !retryPolicy.shouldRetry(e, retries, hostOf(item.getUrl()))) {
+                        throw e;
+                    }
+                    retries++;
+                    countRetry(retries);
+                    waitBeforeRetry(retries, e);
+                    prepareResume();
+                }
+            }
+        } catch (IOException e) {
+            if (cancelled.get()) {
+                item.setStatus(DownloadItem.DownloadStatus.CANCELLED);
+            } else {
+                item.setStatus(DownloadItem.DownloadStatus.FAILED);
+                item.setErrorMessage(e.getMessage());
+            }
+            throw e;
+        } finally {
+            item.setEndTime(LocalDateTime.now());
+            notifyProgress();
+        }
+
+        return item;
+    }
+
+    /**
+     * Un intento de descarga: petición (condicional o de rango al reanudar) y recepción del cuerpo
+     */
+    private void transfer() throws IOException {
+        if (cancelled.get()) {
+            throw new IOException("Descarga cancelada");
+        }
+
+        ValidatorStore.Entry validators = resumeOffset > 0 ? null : findValidators();
+        DownloadTrace trace = item.getTrace();
+        long setupBefore = trace.getConnectionSetupNanos();
+        long hashBefore = trace.getNanos(DownloadTrace.Phase.HASH);
+        long requestStart = System.nanoTime();
+        long headersAt = 0;
+        currentCall = transport.newCall(newRequest(validators).trace(trace));
+        StallDetector stallDetector = stallPolicy != null ? new StallDetector(stallPolicy, this::abortCall) : null;
+        if (stallDetector != null) {
+            stallDetector.start();
+        }
+
+        try (HttpTransport.Response response = currentCall.execute()) {
+            headersAt = System.nanoTime();
+            if (stallDetector != null) {
+                stallDetector.responseReceived();
+            }
+            if (response.code() == 304 && validators != null) {
+                completeNotModified(validators);
+                extractLocalArchive();
+                return;
+            }
 
-        currentCall = httpClient.newCall(request);
-        
-        try (Response response = currentCall.execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException("HTTP Error: " + response.code() + " - " + response.message());
+                throw new HttpStatusException(response.code(), response.message(),
+                        RetryPolicy.parseRetryAfter(response.header("Retry-After")));
             }
 
-            ResponseBody body = response.body();
-            if (body == null) {
-                throw new IOException("Response body es null");
+            BufferedSource source = stallDetector != null ? Okio.buffer(stallDetector.watch(response.body())) : response.body();
+
+            long resumeFrom = acceptResume(response);
+            if (resumeFrom == 0) {
+                resumeValidator = resumeValidatorOf(response);
             }
+            reportedBytes.accumulateAndGet(resumeFrom, Math::max);
 
             // Verificar Content-Type para detectar el tipo de archivo real
             String contentType = response.header("Content-Type", "");
-            detectAndUpdateFileExtension(contentType);
+            FileUtils.applyContentTypeExtension(item, contentType);
 
             // Obtener tamaño total del archivo
-            long contentLength = body.contentLength();
+            long contentLength = response.contentLength();
             if (contentLength > 0) {
-                item.setTotalSize(contentLength);
+                item.setTotalSize(resumeFrom + contentLength);
                 notifyProgress();
             }
 
-            // Descargar archivo
-            downloadWithProgress(body.byteStream(), item.getDestinationPath());
+            // La extracción consume los bytes en paralelo a medida que llegan; se mantiene entre intentos
+            if (extraction == null) {
+                extraction = startExtraction(contentType);
+            }
+
+            if (resumeFrom > 0) {
+                downloadToDisk(response, source, stallDetector, resumeFrom);
+            } else if (extraction != null && !item.isKeepArchive()) {
+                streamWithoutArchive(source);
+            } else if (item.getMemoryLimit() > 0 && contentLength <= item.getMemoryLimit()) {
+                // Destino en memoria (también con tamaño desconocido): sólo cae a disco si supera el límite
+                receiveInMemory(source);
+            } else if (inMemoryLimit > 0 && contentLength >= 0 && contentLength <= inMemoryLimit) {
+                // Archivo pequeño: recibir en memoria, hashear y escribir de una sola vez
+                downloadInMemory(source);
+            } else {
+                downloadToDisk(response, source, stallDetector, 0);
+            }
 
             if (cancelled.get()) {
-                return item;
+                return;
             }
 
-            // Verificar hash si está disponible
-            if (item.getExpectedHash() != null && !item.getExpectedHash().isEmpty()) {
-                verifyIntegrity();
-            } else {
-                // Calcular hash del archivo descargado para registro
-                calculateFileHash();
+            if (extraction != null) {
+                endStreams(item.getDownloadedSize());
+                awaitExtraction(extraction);
             }
 
-            if (!cancelled.get() && item.getStatus() != DownloadItem.DownloadStatus.HASH_MISMATCH) {
+            if (item.getStatus() != DownloadItem.DownloadStatus.HASH_MISMATCH) {
                 item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+                item.setErrorMessage(null);
+                recordValidators(response.header("ETag"), response.header("Last-Modified"));
+            } else {
+                // El contenido en memoria sólo se entrega si es correcto
+                item.setContent(null);
             }
-
         } catch (IOException e) {
-            if (cancelled.get()) {
-                item.setStatus(DownloadItem.DownloadStatus.CANCELLED);
-            } else {
-                item.setStatus(DownloadItem.DownloadStatus.FAILED);
-                item.setErrorMessage(e.getMessage());
+            if (stallDetector != null && stallDetector.isStalled() && !cancelled.get()) {
+                // El error es consecuencia de abortar la petición: se reintenta como transitorio
+                throw new StallException(stallDetector.getStallReason(), e);
             }
             throw e;
         } finally {
-            item.setEndTime(LocalDateTime.now());
-            notifyProgress();
+            if (stallDetector != null) {
+                stallDetector.stop();
+            }
+            traceAttempt(requestStart, headersAt, setupBefore, hashBefore);
         }
+    }
 
-        return item;
+    /**
+     * Reparte el tiempo de un intento entre la espera de la respuesta y la transferencia.
+     * Lo que el transporte ya anotó como DNS, TCP o TLS y las relecturas de hash no se
+     * cuentan dos veces.
+     * @param headersAt Instante en que llegaron las cabeceras, o 0 si no llegaron
+     * @param setupBefore Tiempo de conexión de la traza al empezar el intento
+     * @param hashBefore Tiempo de hash de la traza al empezar el intento
+     */
+    private void traceAttempt(long requestStart, long headersAt, long setupBefore, long hashBefore) {
+        DownloadTrace trace = item.getTrace();
+        long now = System.nanoTime();
+        long setup = trace.getConnectionSetupNanos() - setupBefore;
+        if (headersAt == 0) {
+            trace.add(DownloadTrace.Phase.FIRST_BYTE, now - requestStart - setup);
+            return;
+        }
+        if (metrics != null) {
+            metrics.timeToFirstByte.record(headersAt - requestStart);
+        }
+        trace.add(DownloadTrace.Phase.FIRST_BYTE, headersAt - requestStart - setup);
+        trace.add(DownloadTrace.Phase.TRANSFER, now - headersAt - (trace.getNanos(DownloadTrace.Phase.HASH) - hashBefore));
     }
 
     /**
-     * Descarga el archivo con reporte de progreso
+     * Relee lo ya escrito en disco para el hash, anotándolo como fase de hash
      */
-    private void downloadWithProgress(InputStream inputStream, String destinationPath) throws IOException {
-        try (BufferedInputStream bis = new BufferedInputStream(inputStream);
-             BufferedOutputStream bos = new BufferedOutputStream(
-                     Files.newOutputStream(Paths.get(destinationPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE))) {
+    private void digestExisting(Path file, MessageDigest digest) throws IOException {
+        HashEvent event = new HashEvent();
+        event.begin();
+        long start = System.nanoTime();
+        HashVerifier.digestFile(file, digest, null);
+        item.getTrace().add(DownloadTrace.Phase.HASH, System.nanoTime() - start);
+        commitHashEvent(event, file, false);
+    }
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytesRead = 0;
+    private static void commitHashEvent(HashEvent event, Path file, boolean verification) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = file.toString();
+            event.bytes = file.toFile().length();
+            event.verification = verification;
+            event.commit();
+        }
+    }
 
-            while ((bytesRead = bis.read(buffer)) != -1 && !cancelled.get()) {
-                bos.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
-                
-                item.setDownloadedSize(totalBytesRead);
-                
-                // Actualizar progreso cada cierta cantidad de bytes para evitar spam
-                if (totalBytesRead % (64 * 1024) == 0 || 
-                    (item.getTotalSize() > 0 && totalBytesRead == item.getTotalSize())) {
-                    notifyProgress();
-                }
+    /**
+     * Petición de un intento: de rango al reanudar, o condicional si hay validadores
+     * @param validators Validadores de la copia local (null si no hay o se reanuda)
+     */
+    private HttpTransport.Request newRequest(ValidatorStore.Entry validators) {
+        HttpTransport.Request request = HttpTransport.Request.get(item.getUrl());
+
+        if (resumeOffset > 0) {
+            // Pedir sólo lo que falta, siempre que el recurso no haya cambiado desde el primer intento
+            request = request.header("Range", "bytes=" + resumeOffset + "-")
+                    .header("If-Range", resumeValidator);
+        } else if (validators != null) {
+            // Petición condicional si ya tenemos una copia válida de esta URL en el destino
+            if (validators.getEtag() != null) {
+                request = request.header("If-None-Match", validators.getEtag());
             }
-            
-            bos.flush();
-            
-            // Si no teníamos el tamaño total, actualizarlo ahora
-            if (item.getTotalSize() == 0) {
-                item.setTotalSize(totalBytesRead);
+            if (validators.getLastModified() != null) {
+                request = request.header("If-Modified-Since", validators.getLastModified());
             }
-            
-            item.setDownloadedSize(totalBytesRead);
-            notifyProgress();
         }
+        return request;
     }
 
     /**
-     * Verifica la integridad del archivo descargado
+     * Aborta la petición en curso sin cancelar la descarga (conexión estancada)
      */
-    private void verifyIntegrity() {
-        if (cancelled.get()) return;
-        
-        item.setStatus(DownloadItem.DownloadStatus.VERIFYING);
-        notifyProgress();
-        
-        try {
-            HashVerifier.HashType hashType = HashVerifier.detectHashType(item.getExpectedHash());
-            if (hashType == null) {
-                hashType = HashVerifier.HashType.SHA256; // Por defecto
-            }
-            
-            String calculatedHash = HashVerifier.calculateHash(item.getDestinationPath(), hashType);
-            item.setHash(calculatedHash);
-            
-            if (!calculatedHash.equalsIgnoreCase(item.getExpectedHash())) {
-                item.setStatus(DownloadItem.DownloadStatus.HASH_MISMATCH);
-                item.setErrorMessage("Hash mismatch. Esperado: " + item.getExpectedHash() + 
-                                   ", Calculado: " + calculatedHash);
-            }
-            
-        } catch (Exception e) {
-            item.setErrorMessage("Error verificando hash: " + e.getMessage());
-            // Continuar sin verificación de hash
-            calculateFileHash();
+    private void abortCall() {
+        HttpTransport.Call call = currentCall;
+        if (call != null) {
+            call.cancel();
         }
     }
 
     /**
-     * Calcula el hash del archivo para registro
+     * Indica si la descarga puede repartirse en tramos: tamaño conocido y grande, varias
+     * conexiones o mirrors, y destino en disco sin copia local que validar
      */
-    private void calculateFileHash() {
-        try {
-            String hash = HashVerifier.calculateSHA256(item.getDestinationPath());
-            item.setHash(hash);
-        } catch (Exception e) {
-            System.err.println("Error calculando hash: " + e.getMessage());
+    private boolean canDownloadSegmented() {
+        return (segments > 1 || !item.getMirrors().isEmpty()) && writesToDisk &&
+               item.getTotalSize() >= SEGMENTED_MIN_SIZE && item.getMemoryLimit() <= 0 &&
+               (item.getExtractTo() == null || item.isKeepArchive()) && findValidators() == null;
+    }
+
+    /**
+     * Validador del sondeo para If-Range: un ETag fuerte o, en su defecto, Last-Modified
+     */
+    private static String segmentValidator(DownloadItem source) {
+        String etag = source.getEtag();
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
         }
+        return source.getLastModified();
     }
 
     /**
-     * Notifica cambios de progreso
+     * Orígenes para la descarga por tramos: la URL principal si admite rangos y los
+     * mirrors cuyo sondeo confirma que sirven el mismo contenido
+     * @return Orígenes, o null si no hay ninguno utilizable
      */
-    private void notifyProgress() {
-        if (progressListener != null) {
-            // Usar Platform.runLater para actualizaciones de UI si es necesario
-            try {
-                javafx.application.Platform.runLater(() -> progressListener.onProgressUpdate(item));
-            } catch (Exception e) {
-                // Si no estamos en contexto JavaFX, llamar directamente
-                progressListener.onProgressUpdate(item);
+    private MirrorSet segmentSources() {
+        List<MirrorSet.Mirror> sources = new ArrayList<>();
+        if (item.isRangeSupported() && segmentValidator(item) != null) {
+            sources.add(new MirrorSet.Mirror(item.getUrl(), segmentValidator(item)));
+        }
+
+        // Sondear los mirrors en paralelo con los hilos de sondeo, o uno tras otro sin ellos
+        HttpTransport probeTransport = transport.withCallTimeout(DownloadProbe.PROBE_TIMEOUT);
+        List<CompletableFuture<DownloadItem>> probes = new ArrayList<>();
+        for (String mirrorUrl : item.getMirrors()) {
+            probes.add(probe != null
+                    ? probe.probeMirror(item, mirrorUrl)
+                    : CompletableFuture.completedFuture(DownloadProbe.probeMirrorWith(probeTransport, item, mirrorUrl)));
+        }
+        for (CompletableFuture<DownloadItem> probe : probes) {
+            DownloadItem mirror = probe.join();
+            if (mirror != null && isSameContent(mirror)) {
+                sources.add(new MirrorSet.Mirror(mirror.getUrl(), segmentValidator(mirror)));
+            } else if (mirror != null) {
+                System.err.println("Mirror descartado (contenido distinto o sin rangos): " + mirror.getUrl());
             }
         }
+        return sources.isEmpty() ? null : new MirrorSet(sources);
     }
-    
+
     /**
-     * Detecta y actualiza la extensión del archivo basado en el Content-Type
+     * Un mirror sirve el mismo contenido si tiene el mismo tamaño, admite rangos y coincide
+     * en ETag o Last-Modified; con hash esperado basta el tamaño, porque el hash final
+     * verifica el contenido
      */
-    private void detectAndUpdateFileExtension(String contentType) {
-        if (contentType == null || contentType.isEmpty()) {
-            return;
+    private boolean isSameContent(DownloadItem mirror) {
+        if (mirror.getTotalSize() != item.getTotalSize() || !mirror.isRangeSupported() ||
+            segmentValidator(mirror) == null) {
+            return false;
         }
-        
-        String currentPath = item.getDestinationPath();
-        String fileName = item.getFileName();
-        
-        // Si el archivo ya tiene una extensión apropiada, no cambiar
-        if (fileName.contains(".") && !fileName.endsWith(".bin") && !fileName.endsWith(".tmp")) {
-            return;
+        String expectedHash = item.getExpectedHash();
+        return (expectedHash != null && !expectedHash.isEmpty()) ||
+               (item.getEtag() != null && item.getEtag().equals(mirror.getEtag())) ||
+               (item.getLastModified() != null && item.getLastModified().equals(mirror.getLastModified()));
+    }
+
+    /**
+     * Descarga por varias conexiones (y mirrors, si los hay) con reparto dinámico de tramos
+     * @return false si no hay orígenes que admitan rangos, o si el servidor no los respetó
+     *         antes de escribir nada, y hay que descargar con una sola conexión
+     */
+    private boolean downloadSegmented() throws IOException {
+        MirrorSet sources = segmentSources();
+        if (sources == null || (sources.size() == 1 && segments <= 1)) {
+            return false;
         }
-        
-        String extension = getExtensionFromContentType(contentType.toLowerCase());
-        if (extension != null) {
-            // Remover extensión actual si es genérica
-            String baseName = fileName;
-            if (baseName.endsWith(".bin") || baseName.endsWith(".tmp")) {
-                baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+
+        Path destination = Paths.get(item.getDestinationPath());
+        // Borrar antes de escribir: el destino puede ser un enlace duro a un archivo del almacén
+        Files.deleteIfExists(destination);
+
+        // Al menos una conexión por origen para sumar su velocidad
+        SegmentedDownload download = new SegmentedDownload(transport, sources, destination,
+                item.getTotalSize(), Math.max(segments, sources.size()));
+        download.setRetryPolicy(retryPolicy);
+        download.setStallPolicy(stallPolicy);
+        download.setHedgePolicy(hedgePolicy);
+        download.setCancelled(cancelled::get);
+        download.setProgressListener(this::segmentProgress);
+        attachStreams(destination, download::getContiguousBytes);
+        if (extraction == null) {
+            extraction = startExtraction(item.getContentType());
+        }
+
+        segmentedDownload = download;
+        long transferStart = System.nanoTime();
+        try {
+            download.run();
+        } catch (SegmentedDownload.RangeNotHonouredException e) {
+            if (download.getDownloadedBytes() > 0) {
+                throw e;
             }
-            
-            // Crear nuevo nombre y ruta
-            String newFileName = baseName + extension;
-            String newPath = currentPath.substring(0, currentPath.lastIndexOf('\\')) + "\\" + newFileName;
-            
-            // Actualizar el item
-            item.setFileName(newFileName);
-            item.setDestinationPath(newPath);
-        }
-    }
-    
-    /**
-     * Obtiene la extensión apropiada basada en el Content-Type
-     */
-    private String getExtensionFromContentType(String contentType) {
-        if (contentType.contains("image/jpeg") || contentType.contains("image/jpg")) {
-            return ".jpg";
-        } else if (contentType.contains("image/png")) {
-            return ".png";
-        } else if (contentType.contains("image/gif")) {
-            return ".gif";
-        } else if (contentType.contains("image/webp")) {
-            return ".webp";
-        } else if (contentType.contains("image/svg")) {
-            return ".svg";
-        } else if (contentType.contains("application/pdf")) {
-            return ".pdf";
-        } else if (contentType.contains("text/plain")) {
-            return ".txt";
-        } else if (contentType.contains("text/html")) {
-            return ".html";
-        } else if (contentType.contains("text/css")) {
-            return ".css";
-        } else if (contentType.contains("application/javascript") || contentType.contains("text/javascript")) {
-            return ".js";
-        } else if (contentType.contains("application/json")) {
-            return ".json";
-        } else if (contentType.contains("application/xml") || contentType.contains("text/xml")) {
-            return ".xml";
-        } else if (contentType.contains("video/mp4")) {
-            return ".mp4";
-        } else if (contentType.contains("video/webm")) {
-            return ".webm";
-        } else if (contentType.contains("video/quicktime")) {
-            return ".mov";
-        } else if (contentType.contains("audio/mpeg")) {
-            return ".mp3";
-        } else if (contentType.contains("audio/wav")) {
-            return ".wav";
-        } else if (contentType.contains("application/zip")) {
-            return ".zip";
-        } else if (contentType.contains("application/x-rar")) {
-            return ".rar";
-        } else if (contentType.contains("application/octet-stream")) {
-            return ".bin";
+            System.err.println("Descarga por tramos no disponible, se usa una conexión: " + e.getMessage());
+            Files.deleteIfExists(destination);
+            return false;
+        } finally {
+            segmentedDownload = null;
+            item.setRetries(download.getRetries());
+            if (metrics != null) {
+                metrics.retries.add(download.getRetries());
+            }
+            item.getTrace().add(DownloadTrace.Phase.TRANSFER, System.nanoTime() - transferStart);
+        }
+
+        if (cancelled.get()) {
+            return true;
+        }
+
+        item.setDownloadedSize(item.getTotalSize());
+        notifyProgress();
+
+        // Los tramos llegan desordenados: el hash se calcula al final releyendo el archivo
+        MessageDigest digest = newDigest();
+        digestExisting(destination, digest);
+        applyHash(HashVerifier.bytesToHex(digest.digest()));
+
+        if (extraction != null) {
+            endStreams(item.getTotalSize());
+            awaitExtraction(extraction);
+        }
+
+        if (item.getStatus() != DownloadItem.DownloadStatus.HASH_MISMATCH) {
+            item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+            item.setErrorMessage(null);
+            recordValidators(item.getEtag(), item.getLastModified());
+        }
+        return true;
+    }
+
+    /**
+     * Progreso de la descarga por tramos; lo notifican varios hilos a la vez
+     */
+    private synchronized void segmentProgress(long downloadedBytes) {
+        if (downloadedBytes <= item.getDownloadedSize()) {
+            return;
+        }
+        item.setDownloadedSize(downloadedBytes);
+        if (downloadedBytes - lastSegmentNotified >= PROGRESS_INTERVAL_BYTES) {
+            lastSegmentNotified = downloadedBytes;
+            notifyProgress();
+        }
+    }
+
+    /**
+     * Comprueba si la respuesta continúa la descarga interrumpida
+     * @return Byte desde el que continúa la respuesta, o 0 si trae el recurso completo
+     */
+    private long acceptResume(HttpTransport.Response response) throws IOException {
+        if (resumeOffset <= 0) {
+            return 0;
+        }
+
+        long offset = resumeOffset;
+        resumeOffset = 0;
+        if (response.code() != 206) {
+            // El recurso cambió o el servidor ignora los rangos: empezar de cero
+            resumable = false;
+            Files.deleteIfExists(Paths.get(item.getDestinationPath()));
+            return 0;
+        }
+
+        String contentRange = response.header("Content-Range", "");
+        if (!contentRange.startsWith("bytes " + offset + "-")) {
+            resumable = false;
+            throw new ProtocolException("Content-Range inesperado al reanudar: " + contentRange);
+        }
+        return offset;
+    }
+
+    /**
+     * Validador para If-Range: un ETag fuerte o, en su defecto, Last-Modified
+     */
+    private static String resumeValidatorOf(HttpTransport.Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * Espera antes de reintentar, atento a una cancelación
+     */
+    private void waitBeforeRetry(int retry, IOException error) throws IOException {
+        long delay = retryPolicy.delayMillis(retry, error);
+        item.setErrorMessage("Reintento " + retry + " de " + retryPolicy.getMaxRetries() + ": " + error.getMessage());
+        notifyProgress();
+
+        long start = System.nanoTime();
+        long deadline = start + delay * 1_000_000;
+        try {
+            while (!cancelled.get() && System.nanoTime() < deadline) {
+                Thread.sleep(Math.min(RETRY_POLL_MS, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reintento interrumpido");
+        } finally {
+            item.getTrace().add(DownloadTrace.Phase.RETRY_WAIT, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decide desde dónde sigue el próximo intento: tras lo ya escrito en disco si la
+     * respuesta anterior dejó un validador para If-Range, o desde el principio
+     */
+    private void prepareResume() {
+        resumeOffset = 0;
+        if (!resumable || resumeValidator == null) {
+            return;
+        }
+
+        try {
+            // Al cerrarse, el canal recorta el archivo a los bytes confirmados
+            resumeOffset = Files.size(Paths.get(item.getDestinationPath()));
+        } catch (IOException e) {
+            resumeOffset = 0;
+        }
+    }
+
+    private static String hostOf(String url) {
+        return FileUtils.extractHostFromUrl(url);
+    }
+
+    /**
+     * Completa la descarga sin usar la red si el hash esperado ya está en el almacén local
+     * @return true si el archivo se obtuvo del almacén
+     */
+    private boolean completeFromContentStore() {
+        String expectedHash = item.getExpectedHash();
+        if (contentStore == null || expectedHash == null || expectedHash.isEmpty() || !writesToDisk) {
+            return false;
+        }
+
+        try {
+            Path destination = Paths.get(item.getDestinationPath());
+            if (!contentStore.materialize(expectedHash, destination)) {
+                return false;
+            }
+
+            long size = Files.size(destination);
+            item.setTotalSize(size);
+            item.setDownloadedSize(size);
+            reportedBytes.set(size);
+            item.setHash(expectedHash.toLowerCase());
+            item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+            item.setEndTime(LocalDateTime.now());
+            notifyProgress();
+            return true;
+
+        } catch (IOException e) {
+            System.err.println("Error reutilizando contenido local: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Busca validadores de una descarga anterior de la misma URL hacia el mismo destino
+     */
+    private ValidatorStore.Entry findValidators() {
+        if (validatorStore == null || !writesToDisk) {
+            return null;
+        }
+
+        ValidatorStore.Entry entry = validatorStore.lookup(item.getUrl());
+        if (entry == null) {
+            return null;
+        }
+
+        Path destination = Paths.get(item.getDestinationPath()).toAbsolutePath().normalize();
+        return destination.toString().equals(entry.getPath()) ? entry : null;
+    }
+
+    /**
+     * Completa la descarga tras un 304 Not Modified conservando el archivo existente
+     */
+    private void completeNotModified(ValidatorStore.Entry validators) {
+        item.setEtag(validators.getEtag());
+        item.setLastModified(validators.getLastModified());
+        item.setTotalSize(validators.getSize());
+        item.setDownloadedSize(validators.getSize());
+        reportedBytes.set(validators.getSize());
+        item.setHash(validators.getHash());
+
+        String expectedHash = item.getExpectedHash();
+        if (expectedHash != null && !expectedHash.isEmpty() && !expectedHash.equalsIgnoreCase(validators.getHash())) {
+            // El hash guardado es de otro algoritmo o no coincide: verificar el archivo local
+            verifyIntegrity();
+        }
+
+        if (item.getStatus() != DownloadItem.DownloadStatus.HASH_MISMATCH) {
+            item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+        }
+    }
+
+    /**
+     * Guarda los validadores de la respuesta para la próxima descarga de la URL
+     */
+    private void recordValidators(String etag, String lastModified) {
+        item.setEtag(etag);
+        item.setLastModified(lastModified);
+
+        if (validatorStore != null && !deferredRecording && item.hasLocalFile()) {
+            validatorStore.record(item.getUrl(), item.getEtag(), item.getLastModified(),
+                    item.getDestinationPath(), item.getHash());
+        }
+    }
+
+    /**
+     * Descarga el archivo con reporte de progreso.
+     * Este hilo sólo lee de la red; la escritura a disco la hace el escritor del disco.
+     */
+    private void downloadWithProgress(BufferedSource source, String destinationPath, MessageDigest digest,
+            long resumeFrom) throws IOException {
+        writesToDisk = true;
+        resumable = true;
+        if (resumeFrom == 0) {
+            // Borrar antes de escribir: el destino puede ser un enlace duro a un archivo del almacén
+            Files.deleteIfExists(Paths.get(destinationPath));
+        }
+        
+        try (WriteBehindChannel output = new WriteBehindChannel(Paths.get(destinationPath), resumeFrom)) {
+            attachStreams(Paths.get(destinationPath), output::getCommittedBytes);
+            if (item.getTotalSize() > 0) {
+                output.preallocate(item.getTotalSize());
+            }
+            
+            long totalBytesRead = resumeFrom;
+            long lastNotified = 0;
+
+            while (!cancelled.get()) {
+                ByteBuffer buffer = output.acquireBuffer();
+                int bytesRead;
+                try {
+                    bytesRead = fillBuffer(source, buffer);
+                } catch (IOException e) {
+                    output.recycle(buffer);
+                    throw e;
+                }
+                if (bytesRead == -1) {
+                    output.recycle(buffer);
+                    break;
+                }
+
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                publish(totalBytesRead, buffer);
+                output.submit(buffer);
+                totalBytesRead += bytesRead;
+                
+                item.setDownloadedSize(totalBytesRead);
+                
+                // Actualizar progreso cada cierta cantidad de bytes para evitar spam
+                if (totalBytesRead - lastNotified >= PROGRESS_INTERVAL_BYTES ||
+                    (item.getTotalSize() > 0 && totalBytesRead == item.getTotalSize())) {
+                    lastNotified = totalBytesRead;
+                    notifyProgress();
+                }
+            }
+            
+            if (cancelled.get()) {
+                return;
+            }
+            output.finish();
+            
+            // Si no teníamos el tamaño total, actualizarlo ahora
+            if (item.getTotalSize() == 0) {
+                item.setTotalSize(totalBytesRead);
+            }
+            
+            item.setDownloadedSize(totalBytesRead);
+            notifyProgress();
+        }
+    }
+
+    /**
+     * Recibe un cuerpo pequeño completo en memoria, calcula su hash y lo escribe de una vez
+     */
+    private void downloadInMemory(BufferedSource source) throws IOException {
+        byte[] data = source.readByteArray();
+        if (cancelled.get()) {
+            return;
+        }
+
+        item.setTotalSize(data.length);
+        item.setDownloadedSize(data.length);
+        publish(0, ByteBuffer.wrap(data));
+        hashInMemory(data);
+
+        // Borrar antes de escribir: el destino puede ser un enlace duro a un archivo del almacén
+        writesToDisk = true;
+        Path destination = Paths.get(item.getDestinationPath());
+        Files.deleteIfExists(destination);
+        Files.write(destination, data);
+    }
+
+    /**
+     * Calcula el hash del contenido en memoria y lo compara con el esperado si lo hay
+     */
+    private void hashInMemory(byte[] data) {
+        try {
+            applyHash(HashVerifier.calculateHash(data, hashTypeForExpected()));
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("Error calculando hash: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Descarga a disco la respuesta: directamente desde los buffers del transporte si los
+     * ofrece, o leyendo el cuerpo a través del escritor del disco
+     */
+    private void downloadToDisk(HttpTransport.Response response, BufferedSource source, StallDetector stallDetector,
+            long resumeFrom) throws IOException {
+        if (response.supportsDirectTransfer()) {
+            downloadDirect(response, stallDetector, resumeFrom);
+        } else {
+            downloadToDisk(source, resumeFrom);
+        }
+    }
+
+    /**
+     * Escribe cada buffer del transporte en su posición del archivo según llega, sin copiarlo
+     * a un buffer intermedio; el hash y los lectores lo ven antes de escribirlo
+     * @param resumeFrom Bytes ya presentes en el destino que se conservan (0 para empezar de cero)
+     */
+    private void downloadDirect(HttpTransport.Response response, StallDetector stallDetector, long resumeFrom)
+            throws IOException {
+        writesToDisk = true;
+        resumable = true;
+        Path destination = Paths.get(item.getDestinationPath());
+        MessageDigest digest = newDigest();
+        if (resumeFrom > 0) {
+            // El hash del tramo ya escrito se recalcula desde el disco antes de seguir
+            digestExisting(destination, digest);
+        } else {
+            // Borrar antes de escribir: el destino puede ser un enlace duro a un archivo del almacén
+            Files.deleteIfExists(destination);
+        }
+        if (item.getTotalSize() > resumeFrom) {
+            WriteBehindChannel.checkUsableSpace(destination, item.getTotalSize() - resumeFrom);
+        }
+
+        AtomicLong written = new AtomicLong(resumeFrom);
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(resumeFrom);
+            attachStreams(destination, written::get);
+
+            long[] lastNotified = {0};
+            HttpTransport.BodySink sink = data -> {
+                if (cancelled.get()) {
+                    throw new IOException("Descarga cancelada");
+                }
+                long position = written.get();
+                digest.update(data.duplicate());
+                publish(position, data);
+                ChunkWriteEvent writeEvent = new ChunkWriteEvent();
+                writeEvent.begin();
+                long chunkStart = position;
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+                writeEvent.end();
+                if (writeEvent.shouldCommit()) {
+                    writeEvent.path = destination.toString();
+                    writeEvent.bytes = position - chunkStart;
+                    writeEvent.commit();
+                }
+                written.set(position);
+                item.setDownloadedSize(position);
+
+                if (position - lastNotified[0] >= PROGRESS_INTERVAL_BYTES) {
+                    lastNotified[0] = position;
+                    notifyProgress();
+                }
+            };
+            response.transferTo(stallDetector != null ? stallDetector.watch(sink) : sink);
+        }
+
+        if (cancelled.get()) {
+            return;
+        }
+        if (item.getTotalSize() == 0) {
+            item.setTotalSize(written.get());
+        }
+        item.setDownloadedSize(written.get());
+        notifyProgress();
+        applyHash(HashVerifier.bytesToHex(digest.digest()));
+    }
+
+    /**
+     * Descarga a disco calculando el hash al vuelo
+     * @param resumeFrom Bytes ya presentes en el destino que se conservan (0 para empezar de cero)
+     */
+    private void downloadToDisk(BufferedSource source, long resumeFrom) throws IOException {
+        MessageDigest digest = newDigest();
+        if (resumeFrom > 0) {
+            // El hash del tramo ya escrito se recalcula desde el disco antes de seguir
+            digestExisting(Paths.get(item.getDestinationPath()), digest);
+        }
+        downloadWithProgress(source, item.getDestinationPath(), digest, resumeFrom);
+
+        if (cancelled.get()) {
+            return;
+        }
+
+        // Hash calculado al vuelo: no hace falta releer el archivo para verificarlo
+        applyHash(HashVerifier.bytesToHex(digest.digest()));
+    }
+
+    /**
+     * Recibe la respuesta sin guardarla: los bytes sólo pasan por el hash y por los lectores
+     * (la extracción del archivo comprimido)
+     */
+    private void streamWithoutArchive(BufferedSource source) throws IOException {
+        MessageDigest digest = newDigest();
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer chunk = pool.acquire(STREAM_CHUNK_SIZE);
+        long totalBytesRead = 0;
+        long lastNotified = 0;
+        int bytesRead;
+
+        try {
+            while (!cancelled.get() && (bytesRead = source.read(chunk)) != -1) {
+                chunk.flip();
+                publish(totalBytesRead, chunk);
+                digest.update(chunk);
+                chunk.clear();
+                totalBytesRead += bytesRead;
+
+                item.setDownloadedSize(totalBytesRead);
+                if (totalBytesRead - lastNotified >= PROGRESS_INTERVAL_BYTES) {
+                    lastNotified = totalBytesRead;
+                    notifyProgress();
+                }
+            }
+        } finally {
+            pool.release(chunk);
+        }
+
+        if (cancelled.get()) {
+            return;
+        }
+
+        item.setTotalSize(totalBytesRead);
+        applyHash(HashVerifier.bytesToHex(digest.digest()));
+    }
+
+    /**
+     * Arranca la extracción del archivo comprimido si el item la pide
+     * @return Futuro con el número de entradas extraídas, o null si no hay extracción
+     */
+    private CompletableFuture<Integer> startExtraction(String contentType) throws IOException {
+        if (item.getExtractTo() == null || item.getMemoryLimit() > 0) {
+            return null;
+        }
+
+        ArchiveExtractor extractor = newExtractor(contentType);
+        // Sin archivo en disco no hay de dónde recuperar bloques perdidos: el lector marca el ritmo
+        DownloadStream stream = new DownloadStream(EXTRACTION_STREAM_CAPACITY, !item.isKeepArchive());
+        addStream(stream);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try (stream) {
+                return extractor.extract(stream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, EXTRACTORS);
+    }
+
+    /**
+     * Espera a que la extracción consuma el resto del archivo comprimido
+     */
+    private void awaitExtraction(CompletableFuture<Integer> extraction) throws IOException {
+        try {
+            item.setExtractedEntries(extraction.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw new IOException("Error extrayendo " + item.getFileName() + ": " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Extracción interrumpida", e);
+        }
+    }
+
+    /**
+     * Extrae un archivo comprimido que ya estaba en disco (almacén local o 304)
+     */
+    private void extractLocalArchive() throws IOException {
+        if (item.getExtractTo() == null || item.getStatus() != DownloadItem.DownloadStatus.COMPLETED) {
+            return;
+        }
+
+        ArchiveExtractor extractor = newExtractor(item.getContentType());
+        try (InputStream input = Files.newInputStream(Paths.get(item.getDestinationPath()))) {
+            item.setExtractedEntries(extractor.extract(input));
+        }
+    }
+
+    private ArchiveExtractor newExtractor(String contentType) throws IOException {
+        ArchiveExtractor.Format format = ArchiveExtractor.Format.detect(item.getFileName(), contentType);
+        if (format == null) {
+            throw new IOException("Formato de archivo comprimido no soportado: " + item.getFileName());
+        }
+        return new ArchiveExtractor(format, Paths.get(item.getExtractTo()));
+    }
+
+    /**
+     * Recibe la respuesta en un buffer en memoria calculando el hash a medida que llega.
+     * Si supera el límite del item, continúa en disco con lo ya recibido por delante.
+     */
+    private void receiveInMemory(BufferedSource source) throws IOException {
+        MessageDigest digest = newDigest();
+        Buffer data = new Buffer();
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer chunk = pool.acquire(MEMORY_CHUNK_SIZE);
+        long lastNotified = 0;
+        boolean overLimit = false;
+        int bytesRead;
+
+        try {
+            while (!cancelled.get() && (bytesRead = source.read(chunk)) != -1) {
+                chunk.flip();
+                data.write(chunk.duplicate());
+                if (data.size() > item.getMemoryLimit()) {
+                    overLimit = true;
+                    break;
+                }
+
+                publish(data.size() - bytesRead, chunk);
+                digest.update(chunk);
+                chunk.clear();
+                item.setDownloadedSize(data.size());
+                if (data.size() - lastNotified >= PROGRESS_INTERVAL_BYTES) {
+                    lastNotified = data.size();
+                    notifyProgress();
+                }
+            }
+        } finally {
+            pool.release(chunk);
+        }
+
+        if (overLimit) {
+            spillToDisk(data, source);
+            return;
+        }
+        if (cancelled.get()) {
+            return;
+        }
+
+        item.setTotalSize(data.size());
+        item.setDownloadedSize(data.size());
+        item.setContent(ByteBuffer.wrap(data.readByteArray()));
+        applyHash(HashVerifier.bytesToHex(digest.digest()));
+    }
+
+    /**
+     * Pasa a disco una descarga en memoria que superó su límite
+     */
+    private void spillToDisk(Buffer received, BufferedSource rest) throws IOException {
+        Source remaining = new ForwardingSource(rest) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                // Primero lo que ya estaba en memoria, después el resto de la respuesta
+                if (received.size() > 0) {
+                    return received.read(sink, byteCount);
+                }
+                return super.read(sink, byteCount);
+            }
+        };
+
+        downloadToDisk(Okio.buffer(remaining), 0);
+    }
+
+    /**
+     * Digest del algoritmo del hash esperado (SHA-256 por defecto)
+     */
+    private MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(hashTypeForExpected().getAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Algoritmo de hash no disponible", e);
+        }
+    }
+
+    /**
+     * Tipo de hash del hash esperado, o SHA-256 si no hay uno reconocible
+     */
+    private HashVerifier.HashType hashTypeForExpected() {
+        HashVerifier.HashType hashType = HashVerifier.detectHashType(item.getExpectedHash());
+        return hashType != null ? hashType : HashVerifier.HashType.SHA256;
+    }
+
+    /**
+     * Guarda el hash calculado y lo compara con el esperado si lo hay
+     */
+    private void applyHash(String calculatedHash) {
+        item.setHash(calculatedHash);
+
+        String expectedHash = item.getExpectedHash();
+        if (expectedHash != null && !expectedHash.isEmpty() && !calculatedHash.equalsIgnoreCase(expectedHash)) {
+            item.setStatus(DownloadItem.DownloadStatus.HASH_MISMATCH);
+            item.setErrorMessage("Hash mismatch. Esperado: " + expectedHash +
+                               ", Calculado: " + calculatedHash);
+        }
+    }
+
+    /**
+     * Llena el buffer con lo que haya disponible sin esperar más datos que los de la primera lectura
+     * @return Bytes leídos o -1 al final del flujo
+     */
+    private int fillBuffer(BufferedSource source, ByteBuffer buffer) throws IOException {
+        int bytesRead = source.read(buffer);
+        if (bytesRead == -1) {
+            return -1;
+        }
+
+        while (buffer.hasRemaining() && source.getBuffer().size() > 0) {
+            bytesRead += source.read(buffer);
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Verifica la integridad del archivo descargado
+     */
+    private void verifyIntegrity() {
+        if (cancelled.get()) return;
+        
+        item.setStatus(DownloadItem.DownloadStatus.VERIFYING);
+        notifyProgress();
+        
+        HashEvent event = new HashEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            HashVerifier.HashType hashType = HashVerifier.detectHashType(item.getExpectedHash());
+            if (hashType == null) {
+                hashType = HashVerifier.HashType.SHA256; // Por defecto
+            }
+            
+            String calculatedHash = HashVerifier.calculateHash(item.getDestinationPath(), hashType);
+            item.setHash(calculatedHash);
+            
+            if (!calculatedHash.equalsIgnoreCase(item.getExpectedHash())) {
+                item.setStatus(DownloadItem.DownloadStatus.HASH_MISMATCH);
+                item.setErrorMessage("Hash mismatch. Esperado: " + item.getExpectedHash() + 
+                                   ", Calculado: " + calculatedHash);
+            }
+            
+        } catch (Exception e) {
+            item.setErrorMessage("Error verificando hash: " + e.getMessage());
+            // Continuar sin verificación de hash
+            calculateFileHash();
+        } finally {
+            item.getTrace().add(DownloadTrace.Phase.HASH, System.nanoTime() - start);
+            commitHashEvent(event, Paths.get(item.getDestinationPath()), true);
+        }
+    }
+
+    /**
+     * Calcula el hash del archivo para registro
+     */
+    private void calculateFileHash() {
+        try {
+            String hash = HashVerifier.calculateSHA256(item.getDestinationPath());
+            item.setHash(hash);
+        } catch (Exception e) {
+            System.err.println("Error calculando hash: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Notifica cambios de progreso en el hilo de la descarga. Pasar al hilo de la interfaz,
+     * si lo hay, es cosa del oyente: el motor no depende de JavaFX.
+     */
+    private void notifyProgress() {
+        countReceivedBytes();
+        if (progressListener != null) {
+            progressListener.onProgressUpdate(item);
+        }
+    }
+
+    /**
+     * Suma a las métricas los bytes recibidos desde el aviso anterior. Si un intento volvió
+     * a empezar de cero, cuenta desde ahí: los bytes repetidos también llegaron por la red.
+     */
+    private void countReceivedBytes() {
+        if (metrics != null) {
+            long size = item.getDownloadedSize();
+            metrics.bytesReceived.add(size - reportedBytes.getAndSet(size));
+        }
+    }
+
+    private void countRetry(int retry) {
+        item.setRetries(retry);
+        if (metrics != null) {
+            metrics.retries.increment();
+        }
+    }
+
+    /**
+     * Descarga por el motor asíncrono. Cada intento se encola con {@link Call#enqueue}; la
+     * respuesta pasa a los hilos de bucle, que leen un buffer por paso y vuelven a encolar la
+     * descarga. Los pasos de una misma descarga nunca se solapan: cada uno encola el siguiente
+     * al terminar.
+     */
+    private final class PumpedTransfer implements Callback {
+        private final AsyncTransferEngine engine;
+        private final CompletableFuture<DownloadItem> result;
+        private int retries;
+        private ValidatorStore.Entry validators;
+        private StallDetector stallDetector;
+        private HttpTransport.Response response;
+        private BufferedSource source;
+        private WriteBehindChannel output;
+        private MessageDigest digest;
+        private long totalBytesRead;
+        private long lastNotified;
+        private long requestStart;
+        private long headersAt;
+        private long setupBefore;
+        private long hashBefore;
+        private long retryScheduledAt;
+
+        PumpedTransfer(AsyncTransferEngine engine, CompletableFuture<DownloadItem> result) {
+            this.engine = engine;
+            this.result = result;
+        }
+
+        /**
+         * Lanza un intento
+         */
+        void start() {
+            DownloadTrace trace = item.getTrace();
+            if (retryScheduledAt != 0) {
+                trace.add(DownloadTrace.Phase.RETRY_WAIT, System.nanoTime() - retryScheduledAt);
+                retryScheduledAt = 0;
+            }
+            if (cancelled.get()) {
+                finish();
+                return;
+            }
+
+            validators = resumeOffset > 0 ? null : findValidators();
+            stallDetector = stallPolicy != null ? new StallDetector(stallPolicy, DownloadTask.this::abortCall) : null;
+            if (stallDetector != null) {
+                stallDetector.start();
+            }
+            setupBefore = trace.getConnectionSetupNanos();
+            hashBefore = trace.getNanos(DownloadTrace.Phase.HASH);
+            requestStart = System.nanoTime();
+            headersAt = 0;
+            currentCall = OkHttpTransport.wrap(engine.enqueue(
+                    OkHttpTransport.toOkHttp(newRequest(validators).trace(trace)), this));
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            failed(e);
+        }
+
+        @Override
+        public void onResponse(Call call, okhttp3.Response response) {
+            headersAt = System.nanoTime();
+            this.response = OkHttpTransport.wrap(response);
+            if (stallDetector != null) {
+                stallDetector.responseReceived();
+            }
+            // Liberar el hilo de conexión: el cuerpo se lee en los hilos de bucle
+            engine.execute(this::pump);
+        }
+
+        /**
+         * Un paso: abre el destino si hace falta y lee un buffer del cuerpo
+         */
+        private void pump() {
+            try {
+                if (source == null && !open()) {
+                    return;
+                }
+                if (cancelled.get()) {
+                    throw new IOException("Descarga cancelada");
+                }
+
+                ByteBuffer buffer = output.tryAcquireBuffer();
+                if (buffer == null) {
+                    // Disco o memoria de buffers al límite: ceder el hilo a las demás descargas
+                    engine.schedule(this::pump, BUFFER_WAIT_MS);
+                    return;
+                }
+                int bytesRead;
+                try {
+                    bytesRead = fillBuffer(source, buffer);
+                } catch (IOException e) {
+                    output.recycle(buffer);
+                    throw e;
+                }
+                if (bytesRead == -1) {
+                    output.recycle(buffer);
+                    complete();
+                    return;
+                }
+
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                publish(totalBytesRead, buffer);
+                output.submit(buffer);
+                totalBytesRead += bytesRead;
+                item.setDownloadedSize(totalBytesRead);
+
+                if (totalBytesRead - lastNotified >= PROGRESS_INTERVAL_BYTES) {
+                    lastNotified = totalBytesRead;
+                    notifyProgress();
+                }
+                engine.execute(this::pump);
+            } catch (IOException e) {
+                failed(e);
+            } catch (RuntimeException e) {
+                // Sin hilo propio que lo recoja: el error debe acabar en el resultado
+                failed(new IOException(e.getMessage(), e));
+            }
+        }
+
+        /**
+         * Comprueba la respuesta y prepara el destino, como {@link #transfer()}
+         * @return false si la descarga terminó sin cuerpo que leer (304)
+         */
+        private boolean open() throws IOException {
+            if (response.code() == 304 && validators != null) {
+                release();
+                completeNotModified(validators);
+                finish();
+                return false;
+            }
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code(), response.message(),
+                        RetryPolicy.parseRetryAfter(response.header("Retry-After")));
+            }
+
+            long resumeFrom = acceptResume(response);
+            if (resumeFrom == 0) {
+                resumeValidator = resumeValidatorOf(response);
+            }
+            reportedBytes.accumulateAndGet(resumeFrom, Math::max);
+            FileUtils.applyContentTypeExtension(item, response.header("Content-Type", ""));
+            long contentLength = response.contentLength();
+            if (contentLength > 0) {
+                item.setTotalSize(resumeFrom + contentLength);
+                notifyProgress();
+            }
+
+            Path destination = Paths.get(item.getDestinationPath());
+            resumable = true;
+            digest = newDigest();
+            if (resumeFrom > 0) {
+                digestExisting(destination, digest);
+            } else {
+                // Borrar antes de escribir: el destino puede ser un enlace duro a un archivo del almacén
+                Files.deleteIfExists(destination);
+            }
+            output = new WriteBehindChannel(destination, resumeFrom);
+            attachStreams(destination, output::getCommittedBytes);
+            if (item.getTotalSize() > 0) {
+                output.preallocate(item.getTotalSize());
+            }
+
+            totalBytesRead = resumeFrom;
+            source = stallDetector != null ? Okio.buffer(stallDetector.watch(response.body())) : response.body();
+            return true;
+        }
+
+        private void complete() throws IOException {
+            output.finish();
+            if (item.getTotalSize() == 0) {
+                item.setTotalSize(totalBytesRead);
+            }
+            item.setDownloadedSize(totalBytesRead);
+            applyHash(HashVerifier.bytesToHex(digest.digest()));
+            String etag = response.header("ETag");
+            String lastModified = response.header("Last-Modified");
+            release();
+
+            if (item.getStatus() != DownloadItem.DownloadStatus.HASH_MISMATCH) {
+                item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+                item.setErrorMessage(null);
+                recordValidators(etag, lastModified);
+            }
+            finish();
+        }
+
+        /**
+         * Reintenta el error si la política lo permite o cierra la descarga como fallida
+         */
+        private void failed(IOException error) {
+            boolean stalled = stallDetector != null && stallDetector.isStalled();
+            release();
+            if (stalled && !cancelled.get()) {
+                // El error es consecuencia de abortar la petición: se reintenta como transitorio
+                error = new StallException(stallDetector.getStallReason(), error);
+            }
+
+            if (!cancelled.get() && retryPolicy != null &&
+                retryPolicy.shouldRetry(error, retries, hostOf(item.getUrl()))) {
+                retries++;
+                countRetry(retries);
+                item.setErrorMessage("Reintento " + retries + " de " + retryPolicy.getMaxRetries() + ": " + error.getMessage());
+                notifyProgress();
+                prepareResume();
+                retryScheduledAt = System.nanoTime();
+                engine.schedule(this::start, retryPolicy.delayMillis(retries, error));
+                return;
+            }
+
+            if (cancelled.get()) {
+                item.setStatus(DownloadItem.DownloadStatus.CANCELLED);
+            } else {
+                item.setStatus(DownloadItem.DownloadStatus.FAILED);
+                item.setErrorMessage(error.getMessage());
+            }
+            finish();
+        }
+
+        /**
+         * Cierra la respuesta y el destino del intento (el canal recorta a lo confirmado)
+         */
+        private void release() {
+            if (stallDetector != null) {
+                stallDetector.stop();
+            }
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    System.err.println("Error cerrando archivo: " + e.getMessage());
+                }
+                output = null;
+            }
+            if (response != null) {
+                response.close();
+                response = null;
+            }
+            source = null;
+            if (requestStart != 0) {
+                traceAttempt(requestStart, headersAt, setupBefore, hashBefore);
+                requestStart = 0;
+            }
+        }
+
+        private void finish() {
+            item.setEndTime(LocalDateTime.now());
+            notifyProgress();
+            finishTask();
+            engine.complete(result, item);
         }
-        
-        return null; // No se pudo determinar
     }
 }
\ No newline at end of file
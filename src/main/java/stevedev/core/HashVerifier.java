@@ -1,8 +1,11 @@
 package stevedev.core;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -10,6 +13,7 @@ import java.security.NoSuchAlgorithmException;
  * Utilidad para verificar la integridad de archivos mediante hashes
  */
 public class HashVerifier {
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
     
     public enum HashType {
         MD5("MD5"),
@@ -40,21 +44,21 @@ public class HashVerifier {
             throws IOException, NoSuchAlgorithmException {
         
         MessageDigest digest = MessageDigest.getInstance(hashType.getAlgorithm());
-        
-        try (InputStream fis = Files.newInputStream(Paths.get(filePath));
-             BufferedInputStream bis = new BufferedInputStream(fis)) {
-            
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-            }
-        }
-        
+        digestFile(Paths.get(filePath), digest, null);
         return bytesToHex(digest.digest());
     }
 
+    /**
+     * Calcula el hash de un contenido que ya está en memoria
+     * @param data Contenido completo
+     * @param hashType Tipo de hash a calcular
+     * @return Hash en formato hexadecimal
+     */
+    public static String calculateHash(byte[] data, HashType hashType) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(hashType.getAlgorithm());
+        return bytesToHex(digest.digest(data));
+    }
+
     /**
      * Calcula el hash SHA-256 de un archivo (método por defecto)
      */
@@ -125,33 +129,44 @@ public class HashVerifier {
             throws IOException, NoSuchAlgorithmException {
         
         MessageDigest digest = MessageDigest.getInstance(hashType.getAlgorithm());
-        long fileSize = Files.size(Paths.get(filePath));
-        long bytesProcessed = 0;
+        digestFile(Paths.get(filePath), digest, progressCallback);
+        return bytesToHex(digest.digest());
+    }
+
+    /**
+     * Lee el archivo con un buffer del pool compartido y lo acumula en el digest
+     */
+    static void digestFile(Path path, MessageDigest digest,
+            java.util.function.Consumer<Double> progressCallback) throws IOException {
         
-        try (InputStream fis = Files.newInputStream(Paths.get(filePath));
-             BufferedInputStream bis = new BufferedInputStream(fis)) {
-            
-            byte[] buffer = new byte[8192];
-            int bytesRead;
+        BufferPool pool = BufferPool.shared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long bytesProcessed = 0;
+            ByteBuffer buffer = pool.acquire(HASH_BUFFER_SIZE);
             
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-                bytesProcessed += bytesRead;
-                
-                if (progressCallback != null && fileSize > 0) {
-                    double progress = (double) bytesProcessed / fileSize;
-                    progressCallback.accept(progress);
+            try {
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    bytesProcessed += buffer.remaining();
+                    digest.update(buffer);
+                    buffer.clear();
+                    
+                    if (progressCallback != null && fileSize > 0) {
+                        double progress = (double) bytesProcessed / fileSize;
+                        progressCallback.accept(progress);
+                    }
                 }
+            } finally {
+                pool.release(buffer);
             }
         }
-        
-        return bytesToHex(digest.digest());
     }
 
     /**
      * Convierte bytes a representación hexadecimal
      */
-    private static String bytesToHex(byte[] bytes) {
+    static String bytesToHex(byte[] bytes) {
         StringBuilder result = new StringBuilder();
         for (byte b : bytes) {
             result.append(String.format("%02x", b));
@@ -0,0 +1,59 @@
+package stevedev.core;
+
+import java.time.Duration;
+
+/**
+ * Criterios para duplicar (hedge) el final de un tramo lento en una descarga por tramos.
+ *
+ * Cuando una conexión se queda sin trabajo y a otro tramo le quedan pocos bytes pero va
+ * mucho más lento que la mediana de la descarga, se pide ese resto otra vez por una
+ * conexión nueva. Gana la petición que termine antes y la otra se cancela. El
+ * presupuesto limita los bytes que pueden pedirse por duplicado.
+ */
+public class HedgePolicy {
+    private final long maxRemainingBytes;
+    private final double slowFactor;
+    private final double budgetFraction;
+    private final Duration minObservation;
+
+    /**
+     * Constructor
+     * @param maxRemainingBytes Sólo se duplican tramos a los que les falte como mucho esto
+     * @param slowFactor Un tramo es lento si va más de este factor por debajo de la mediana
+     * @param budgetFraction Bytes duplicados como máximo, en fracción del tamaño del archivo
+     * @param minObservation Tiempo mínimo midiendo un tramo antes de juzgar su velocidad
+     */
+    public HedgePolicy(long maxRemainingBytes, double slowFactor, double budgetFraction, Duration minObservation) {
+        this.maxRemainingBytes = maxRemainingBytes;
+        this.slowFactor = slowFactor;
+        this.budgetFraction = budgetFraction;
+        this.minObservation = minObservation;
+    }
+
+    /**
+     * Criterios por defecto: restos de hasta 8 MB, 4 veces más lentos que la mediana, con
+     * un 10% del archivo como máximo de bytes duplicados
+     */
+    public static HedgePolicy defaults() {
+        return new HedgePolicy(8 * 1024 * 1024, 4.0, 0.1, Duration.ofSeconds(1));
+    }
+
+    public long getMaxRemainingBytes() {
+        return maxRemainingBytes;
+    }
+
+    public double getSlowFactor() {
+        return slowFactor;
+    }
+
+    /**
+     * Bytes que pueden pedirse por duplicado en una descarga del tamaño indicado
+     */
+    public long budgetFor(long totalSize) {
+        return (long) (totalSize * budgetFraction);
+    }
+
+    public Duration getMinObservation() {
+        return minObservation;
+    }
+}
@@ -0,0 +1,92 @@
+package stevedev.core;
+
+import java.time.Duration;
+
+/**
+ * Configuración de conexiones del transporte HTTP.
+ *
+ * El pool conserva conexiones ociosas para reutilizarlas: con muchos archivos pequeños
+ * del mismo servidor, abrir una conexión (y negociar TLS) por archivo cuesta más que la
+ * transferencia. Los límites de peticiones se aplican a las que se encolan, es decir, al
+ * motor asíncrono; con los de OkHttp por defecto (5 por servidor) un lote de un único
+ * servidor avanzaría de cinco en cinco aunque el gestor admita más descargas.
+ */
+public class HttpClientConfig {
+    /** Timeout de conexión TCP (y TLS) */
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    /** Peticiones simultáneas por defecto como mínimo */
+    private static final int MIN_MAX_REQUESTS = 64;
+
+    /**
+     * Protocolo preferido
+     */
+    public enum Protocol {
+        /** HTTP/2 cuando el servidor lo admite, HTTP/1.1 si no */
+        HTTP_2,
+        /** Sólo HTTP/1.1: una conexión por petición en curso */
+        HTTP_1_1
+    }
+
+    private final int maxIdleConnections;
+    private final Duration keepAlive;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final Protocol protocol;
+
+    /**
+     * Constructor
+     * @param maxIdleConnections Conexiones ociosas que conserva el pool
+     * @param keepAlive Tiempo que una conexión ociosa sigue disponible
+     * @param maxRequests Peticiones encoladas en curso a la vez en total
+     * @param maxRequestsPerHost Peticiones encoladas en curso a la vez por servidor
+     * @param protocol Protocolo preferido
+     */
+    public HttpClientConfig(int maxIdleConnections, Duration keepAlive, int maxRequests,
+            int maxRequestsPerHost, Protocol protocol) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAlive = keepAlive;
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Configuración por defecto para un gestor: una conexión ociosa por hueco y por hilo del
+     * carril de archivos pequeños, 5 minutos de keep-alive, HTTP/2 preferido y límites de
+     * peticiones que no quedan por debajo de las conexiones que el gestor puede abrir (una
+     * por tramo de cada descarga), ni siquiera contra un único servidor
+     * @param maxConcurrentDownloads Descargas simultáneas del gestor
+     */
+    public static HttpClientConfig defaults(int maxConcurrentDownloads) {
+        int connections = maxConcurrentDownloads * DownloadManager.DEFAULT_SEGMENTS + SmallFileLane.DEFAULT_PARALLELISM;
+        int maxRequests = Math.max(MIN_MAX_REQUESTS, connections);
+        return new HttpClientConfig(maxConcurrentDownloads + SmallFileLane.DEFAULT_PARALLELISM,
+                Duration.ofMinutes(5), maxRequests, maxRequests, Protocol.HTTP_2);
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HttpClientConfig{idle=%d, keepAlive=%ds, maxRequests=%d, perHost=%d, protocol=%s}",
+                maxIdleConnections, keepAlive.getSeconds(), maxRequests, maxRequestsPerHost, protocol);
+    }
+}
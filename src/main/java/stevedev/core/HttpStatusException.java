@@ -0,0 +1,33 @@
+package stevedev.core;
+
+import java.io.IOException;
+
+/**
+ * Respuesta HTTP no satisfactoria. Conserva el código y, si el servidor lo indicó con
+ * Retry-After, cuánto pide esperar antes de reintentar.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    /**
+     * Constructor
+     * @param statusCode Código de estado HTTP
+     * @param message Mensaje de estado
+     * @param retryAfterMillis Espera pedida por el servidor o -1 si no la indicó
+     */
+    public HttpStatusException(int statusCode, String message, long retryAfterMillis) {
+        super("HTTP Error: " + statusCode + " - " + message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,205 @@
+package stevedev.core;
+
+import okio.BufferedSource;
+import stevedev.model.DownloadTrace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transporte HTTP de las descargas.
+ *
+ * Aísla el motor de la biblioteca HTTP: las tareas, los tramos y el sondeo sólo hablan con
+ * esta interfaz, y cada gestor elige la implementación. {@link OkHttpTransport} es la de
+ * por defecto; {@link JdkHttpTransport} usa {@code java.net.http.HttpClient} con HTTP/2 y
+ * vuelca el cuerpo directamente al archivo. Los cuerpos se leen como {@link BufferedSource}
+ * de okio, la abstracción de E/S del resto del motor (buffers, detector de estancamiento).
+ */
+public interface HttpTransport {
+
+    /**
+     * Prepara una petición sin enviarla
+     */
+    Call newCall(Request request);
+
+    /**
+     * Transporte equivalente con un tiempo máximo para cada petición completa
+     */
+    HttpTransport withCallTimeout(Duration timeout);
+
+    /**
+     * Transporte equivalente que no comparte conexiones con este (peticiones duplicadas
+     * que no deben esperar detrás de las originales)
+     */
+    HttpTransport withSeparateConnections();
+
+    /**
+     * Nombre corto del transporte para registros y benchmarks
+     */
+    String getName();
+
+    /**
+     * Estado actual de las conexiones del transporte
+     * @return Instantánea, o null si la biblioteca no expone su pool
+     */
+    default ConnectionStats getConnectionStats() {
+        return null;
+    }
+
+    /**
+     * Libera hilos y conexiones del transporte
+     */
+    void shutdown();
+
+    /**
+     * Petición GET o HEAD con sus cabeceras. Inmutable: {@link #header} y {@link #trace}
+     * devuelven una copia.
+     */
+    final class Request {
+        private final String method;
+        private final String url;
+        private final Map<String, String> headers;
+        private final DownloadTrace trace;
+
+        private Request(String method, String url, Map<String, String> headers, DownloadTrace trace) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.trace = trace;
+        }
+
+        public static Request get(String url) {
+            return new Request("GET", url, Collections.emptyMap(), null);
+        }
+
+        public static Request head(String url) {
+            return new Request("HEAD", url, Collections.emptyMap(), null);
+        }
+
+        /**
+         * Copia de la petición con la cabecera indicada (sustituye la anterior del mismo nombre)
+         */
+        public Request header(String name, String value) {
+            Map<String, String> copy = new LinkedHashMap<>(headers);
+            copy.put(name, value);
+            return new Request(method, url, Collections.unmodifiableMap(copy), trace);
+        }
+
+        /**
+         * Copia de la petición cuyas fases de red (DNS, TCP, TLS) anota el transporte en la
+         * traza indicada, si sabe medirlas
+         */
+        public Request trace(DownloadTrace trace) {
+            return new Request(method, url, headers, trace);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public DownloadTrace getTrace() {
+            return trace;
+        }
+    }
+
+    /**
+     * Una petición preparada; se puede cancelar desde otro hilo en cualquier momento
+     */
+    interface Call {
+        /**
+         * Envía la petición y espera a las cabeceras de la respuesta
+         */
+        Response execute() throws IOException;
+
+        /**
+         * Aborta la petición: la espera o la lectura en curso terminan con IOException
+         */
+        void cancel();
+    }
+
+    /**
+     * Respuesta con el cuerpo todavía sin leer. Hay que cerrarla para liberar la conexión.
+     */
+    interface Response extends Closeable {
+        int code();
+
+        String message();
+
+        /**
+         * Primer valor de la cabecera, o null si no viene
+         */
+        String header(String name);
+
+        default String header(String name, String defaultValue) {
+            String value = header(name);
+            return value != null ? value : defaultValue;
+        }
+
+        default boolean isSuccessful() {
+            return code() >= 200 && code() < 300;
+        }
+
+        /**
+         * Tamaño del cuerpo según Content-Length, o -1 si no se conoce
+         */
+        long contentLength();
+
+        /**
+         * Protocolo negociado ("http/1.1", "h2"...)
+         */
+        String protocol();
+
+        /**
+         * Cuerpo para leerlo a demanda
+         */
+        BufferedSource body() throws IOException;
+
+        /**
+         * Indica si {@link #transferTo} entrega los buffers del propio transporte sin copiarlos
+         */
+        default boolean supportsDirectTransfer() {
+            return false;
+        }
+
+        /**
+         * Entrega el cuerpo completo al destino, bloque a bloque
+         * @return Bytes entregados
+         */
+        default long transferTo(BodySink sink) throws IOException {
+            BufferedSource source = body();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                total += buffer.remaining();
+                sink.write(buffer);
+                buffer.clear();
+            }
+            return total;
+        }
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Destino de {@link Response#transferTo}. Debe consumir el buffer antes de volver: el
+     * transporte puede reutilizarlo.
+     */
+    interface BodySink {
+        void write(ByteBuffer data) throws IOException;
+    }
+}
@@ -0,0 +1,375 @@
+package stevedev.core;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transporte sobre {@code java.net.http.HttpClient} del JDK.
+ *
+ * Negocia HTTP/2 cuando el servidor lo admite (ALPN en https, h2c en http) y cae a HTTP/1.1
+ * si no. El cuerpo llega como la lista de {@link ByteBuffer} que publica el cliente: con
+ * {@link Response#transferTo} esos buffers se entregan al destino (el canal del archivo)
+ * sin copiarlos a un buffer propio, como haría {@code BodyHandlers.ofFileChannel} pero
+ * escribiendo en la posición que la tarea necesita para reanudar. No es una transferencia
+ * sin copias: el cliente entrega buffers del heap, que ya copió desde el socket, y el canal
+ * los vuelve a copiar a un buffer directo al escribirlos. {@link Response#body()} ofrece
+ * el mismo flujo como fuente de okio para el resto del motor. El tiempo de
+ * {@link #withCallTimeout} cubre hasta las cabeceras, que es lo que permite
+ * {@link HttpRequest#timeout}; el cuerpo lo vigila {@link StallDetector}.
+ */
+public final class JdkHttpTransport implements HttpTransport {
+    private static final Duration CONNECT_TIMEOUT = HttpClientConfig.CONNECT_TIMEOUT;
+
+    private final HttpClient httpClient;
+    private final Duration callTimeout;
+    /** Cliente de {@link #withSeparateConnections}, compartido con los transportes derivados */
+    private final AtomicReference<HttpClient> separateClient;
+
+    public JdkHttpTransport() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build());
+    }
+
+    /**
+     * Transporte con el protocolo de la configuración. El tamaño del pool y el keep-alive
+     * del cliente del JDK son globales de la JVM (propiedades
+     * {@code jdk.httpclient.connectionPoolSize} y {@code jdk.httpclient.keepalive.timeout}),
+     * así que aquí no se aplican.
+     */
+    public JdkHttpTransport(HttpClientConfig config) {
+        this(HttpClient.newBuilder()
+                .version(config.getProtocol() == HttpClientConfig.Protocol.HTTP_2
+                        ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build());
+    }
+
+    public JdkHttpTransport(HttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    private JdkHttpTransport(HttpClient httpClient, Duration callTimeout) {
+        this(httpClient, callTimeout, new AtomicReference<>());
+    }
+
+    private JdkHttpTransport(HttpClient httpClient, Duration callTimeout, AtomicReference<HttpClient> separateClient) {
+        this.httpClient = httpClient;
+        this.callTimeout = callTimeout;
+        this.separateClient = separateClient;
+    }
+
+    @Override
+    public HttpTransport.Call newCall(HttpTransport.Request request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl()))
+                .method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        if (callTimeout != null) {
+            builder.timeout(callTimeout);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return new JdkCall(builder.build());
+    }
+
+    @Override
+    public HttpTransport withCallTimeout(Duration timeout) {
+        return new JdkHttpTransport(httpClient, timeout, separateClient);
+    }
+
+    @Override
+    public HttpTransport withSeparateConnections() {
+        // Un cliente del JDK no comparte conexiones con otro. Se crea uno solo por transporte:
+        // cada cliente tiene su propio hilo selector y sus conexiones sólo caducan solas
+        HttpClient separate;
+        synchronized (separateClient) {
+            separate = separateClient.get();
+            if (separate == null) {
+                HttpClient.Builder builder = HttpClient.newBuilder()
+                        .version(httpClient.version())
+                        .followRedirects(httpClient.followRedirects())
+                        .connectTimeout(httpClient.connectTimeout().orElse(CONNECT_TIMEOUT));
+                httpClient.executor().ifPresent(builder::executor);
+                separate = builder.build();
+                separateClient.set(separate);
+            }
+        }
+        return new JdkHttpTransport(separate, callTimeout);
+    }
+
+    @Override
+    public String getName() {
+        return "jdk";
+    }
+
+    @Override
+    public void shutdown() {
+        // HttpClient no se puede cerrar en Java 17: sus hilos y conexiones caducan solos
+    }
+
+    private final class JdkCall implements HttpTransport.Call {
+        private final HttpRequest request;
+        private volatile CompletableFuture<HttpResponse<BodyQueue>> pending;
+        private volatile BodyQueue body;
+        private volatile boolean canceled;
+
+        JdkCall(HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public HttpTransport.Response execute() throws IOException {
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+            pending = httpClient.sendAsync(request, info -> {
+                BodyQueue queue = new BodyQueue();
+                body = queue;
+                if (canceled) {
+                    queue.cancel();
+                }
+                return queue;
+            });
+            try {
+                return new JdkResponse(pending.get());
+            } catch (InterruptedException e) {
+                pending.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Petición interrumpida");
+            } catch (CancellationException e) {
+                throw new IOException("Canceled");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            CompletableFuture<HttpResponse<BodyQueue>> future = pending;
+            if (future != null) {
+                future.cancel(true);
+            }
+            BodyQueue queue = body;
+            if (queue != null) {
+                queue.cancel();
+            }
+        }
+    }
+
+    private static final class JdkResponse implements HttpTransport.Response {
+        private final HttpResponse<BodyQueue> response;
+
+        JdkResponse(HttpResponse<BodyQueue> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int code() {
+            return response.statusCode();
+        }
+
+        /**
+         * El cliente del JDK no expone la frase de estado (HTTP/2 ni la transmite)
+         */
+        @Override
+        public String message() {
+            return "HTTP " + response.statusCode();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public long contentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public String protocol() {
+            return response.version() == HttpClient.Version.HTTP_2 ? "h2" : "http/1.1";
+        }
+
+        @Override
+        public BufferedSource body() {
+            return Okio.buffer(Okio.source(response.body().asInputStream()));
+        }
+
+        @Override
+        public boolean supportsDirectTransfer() {
+            return true;
+        }
+
+        @Override
+        public long transferTo(BodySink sink) throws IOException {
+            BodyQueue queue = response.body();
+            long total = 0;
+            List<ByteBuffer> buffers;
+            while ((buffers = queue.next()) != null) {
+                for (ByteBuffer buffer : buffers) {
+                    total += buffer.remaining();
+                    sink.write(buffer);
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public void close() {
+            response.body().close();
+        }
+    }
+
+    /**
+     * Suscriptor del cuerpo que guarda los bloques hasta que alguien los pide. Pide al
+     * cliente un bloque por delante del que se está consumiendo.
+     */
+    private static final class BodyQueue implements HttpResponse.BodySubscriber<BodyQueue> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> items = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean finished;
+
+        @Override
+        public CompletionStage<BodyQueue> getBody() {
+            // Disponible con las cabeceras: el cuerpo se lee después, a demanda
+            return CompletableFuture.completedStage(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            items.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            items.add(END);
+        }
+
+        /**
+         * Siguiente bloque del cuerpo, o null al terminar
+         */
+        @SuppressWarnings("unchecked")
+        List<ByteBuffer> next() throws IOException {
+            if (finished) {
+                return null;
+            }
+            Object item;
+            try {
+                item = items.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Lectura interrumpida");
+            }
+            if (item == END) {
+                finished = true;
+                return null;
+            }
+            if (item instanceof Throwable) {
+                finished = true;
+                Throwable error = (Throwable) item;
+                throw error instanceof IOException ? (IOException) error : new IOException(error);
+            }
+            subscription.request(1);
+            return (List<ByteBuffer>) item;
+        }
+
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+            items.add(new IOException("Canceled"));
+        }
+
+        void close() {
+            if (!finished) {
+                cancel();
+                finished = true;
+            }
+        }
+
+        InputStream asInputStream() {
+            return new InputStream() {
+                private ByteBuffer current;
+                private List<ByteBuffer> pending = List.of();
+                private int index;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    int read = read(single, 0, 1);
+                    return read == -1 ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] target, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    while (current == null || !current.hasRemaining()) {
+                        if (index < pending.size()) {
+                            current = pending.get(index++);
+                            continue;
+                        }
+                        List<ByteBuffer> buffers = next();
+                        if (buffers == null) {
+                            return -1;
+                        }
+                        pending = buffers;
+                        index = 0;
+                    }
+                    int count = Math.min(length, current.remaining());
+                    current.get(target, offset, count);
+                    return count;
+                }
+
+                @Override
+                public void close() {
+                    BodyQueue.this.close();
+                }
+            };
+        }
+    }
+}
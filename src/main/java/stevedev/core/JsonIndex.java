@@ -0,0 +1,133 @@
+package stevedev.core;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Índice persistido en un archivo JSON, común a {@link ContentStore} y {@link ValidatorStore}.
+ *
+ * Las entradas viven en un mapa concurrente. Cambiarlas sólo marca el índice como
+ * pendiente: un hilo en segundo plano lo reescribe entero {@link #SAVE_DELAY_MILLIS}
+ * después, de modo que una ráfaga de descargas terminadas produce una sola escritura en
+ * lugar de una por descarga. {@link #flush()} escribe lo pendiente en el momento.
+ *
+ * @param <E> Tipo de las entradas (bean serializable con Jackson)
+ */
+final class JsonIndex<E> {
+    /** Espera entre el primer cambio y la escritura del índice */
+    static final long SAVE_DELAY_MILLIS = 500;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "json-index-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final String description;
+    private final Map<String, E> entries = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JavaType mapType;
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+
+    /**
+     * Crea el índice y carga el archivo si existe
+     * @param path Archivo JSON del índice
+     * @param entryType Clase de las entradas
+     * @param description Qué guarda el índice, para los mensajes de error
+     */
+    JsonIndex(Path path, Class<E> entryType, String description) {
+        this.path = path;
+        this.description = description;
+        this.mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, entryType);
+        load();
+    }
+
+    /**
+     * Entradas en memoria. Quien las cambie debe llamar después a {@link #changed()}.
+     */
+    Map<String, E> entries() {
+        return entries;
+    }
+
+    /**
+     * Programa la escritura del índice si no hay ya una pendiente
+     */
+    void changed() {
+        if (savePending.compareAndSet(false, true)) {
+            WRITER.schedule(this::flush, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Escribe el índice ahora si tiene cambios sin guardar
+     */
+    void flush() {
+        if (savePending.getAndSet(false)) {
+            save();
+        }
+    }
+
+    /**
+     * Indica si un archivo sigue siendo el que se registró
+     * @param filePath Ruta registrada
+     * @param size Tamaño registrado
+     * @param modifiedMillis Fecha de modificación registrada
+     */
+    static boolean isUnchanged(String filePath, long size, long modifiedMillis) {
+        try {
+            Path file = Paths.get(filePath);
+            return Files.isRegularFile(file)
+                    && Files.size(file) == size
+                    && Files.getLastModifiedTime(file).toMillis() == modifiedMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Map<String, E> stored = objectMapper.readValue(path.toFile(), mapType);
+            entries.putAll(stored);
+        } catch (IOException e) {
+            System.err.println("Error cargando " + description + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe el índice en un temporal y lo renombra, para que quien lo lea a la vez
+     * nunca vea un JSON a medias
+     */
+    private synchronized void save() {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), new HashMap<>(entries));
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Error guardando " + description + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package stevedev.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orígenes verificados de una descarga por tramos, ordenados por su velocidad medida.
+ *
+ * Cada petición de tramo elige origen al azar con probabilidad proporcional a su
+ * velocidad media (EWMA), de modo que los mirrors rápidos reciben más tramos y la
+ * velocidad total puede superar la de cualquiera de ellos. Un origen sin medir se prueba
+ * antes que los demás; mientras llega su primera muestra pesa lo que lleva recibido desde
+ * que empezó a usarse, para no mandar tramos robados a un mirror lento. Los errores y la
+ * lentitud degradan un origen: se aparta durante un tiempo que crece con cada fallo y su
+ * velocidad estimada se reduce a la mitad.
+ */
+final class MirrorSet {
+    private static final double EWMA_ALPHA = 0.3;
+    private static final long BASE_DEMOTION_MS = 2000;
+    private static final long MAX_DEMOTION_MS = 60_000;
+
+    /**
+     * Un origen: URL y validador propio para If-Range
+     */
+    static final class Mirror {
+        private final String url;
+        private final String validator;
+        private volatile double bytesPerSecond = -1;
+        private int failures;
+        private long demotedUntil;
+        private int active;
+        private long firstUseNanos = -1;
+        private final AtomicLong unmeasuredBytes = new AtomicLong();
+
+        Mirror(String url, String validator) {
+            this.url = url;
+            this.validator = validator;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        String getValidator() {
+            return validator;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+    private final List<Mirror> mirrors;
+
+    MirrorSet(List<Mirror> mirrors) {
+        this.mirrors = new ArrayList<>(mirrors);
+    }
+
+    /**
+     * Conjunto con un único origen
+     */
+    static MirrorSet single(String url, String validator) {
+        return new MirrorSet(List.of(new Mirror(url, validator)));
+    }
+
+    synchronized int size() {
+        return mirrors.size();
+    }
+
+    /**
+     * Elige el origen de la siguiente petición y lo marca como en uso hasta {@link #release}
+     * @param avoid Origen que se evita si hay otro disponible (o null)
+     */
+    synchronized Mirror acquire(Mirror avoid) {
+        long now = System.currentTimeMillis();
+        List<Mirror> candidates = new ArrayList<>();
+        for (Mirror mirror : mirrors) {
+            if (mirror != avoid && mirror.demotedUntil <= now) {
+                candidates.add(mirror);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // Todos apartados: el que antes vuelva
+            for (Mirror mirror : mirrors) {
+                if (mirror != avoid && (candidates.isEmpty() || mirror.demotedUntil < candidates.get(0).demotedUntil)) {
+                    candidates.clear();
+                    candidates.add(mirror);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(mirrors);
+        }
+
+        Mirror chosen = chooseWeighted(candidates);
+        chosen.active++;
+        if (chosen.firstUseNanos < 0) {
+            chosen.firstUseNanos = System.nanoTime();
+        }
+        return chosen;
+    }
+
+    private Mirror chooseWeighted(List<Mirror> candidates) {
+        double best = 0;
+        for (Mirror mirror : candidates) {
+            if (mirror.bytesPerSecond < 0 && mirror.active == 0) {
+                // Probar primero los orígenes sin medir
+                return mirror;
+            }
+            best = Math.max(best, mirror.bytesPerSecond);
+        }
+
+        long now = System.nanoTime();
+        double total = 0;
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < weights.length; i++) {
+            Mirror mirror = candidates.get(i);
+            double rate = mirror.bytesPerSecond;
+            if (rate < 0) {
+                // Sin muestra todavía: lo recibido desde que empezó a usarse
+                long elapsed = now - mirror.firstUseNanos;
+                rate = mirror.firstUseNanos >= 0 && elapsed > 0
+                        ? mirror.unmeasuredBytes.get() * 1e9 / elapsed
+                        : best;
+            }
+            weights[i] = Math.max(rate, 1);
+            total += weights[i];
+        }
+
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (point < 0) {
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+    /**
+     * Deja de contar una petición como en curso
+     */
+    synchronized void release(Mirror mirror) {
+        mirror.active = Math.max(0, mirror.active - 1);
+    }
+
+    /**
+     * Cuenta bytes recibidos de un origen que aún no tiene muestra de velocidad
+     */
+    void received(Mirror mirror, long bytes) {
+        if (mirror.bytesPerSecond < 0) {
+            mirror.unmeasuredBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Anota bytes recibidos de un origen en el tiempo indicado
+     */
+    synchronized void record(Mirror mirror, long bytes, long nanos) {
+        if (bytes <= 0 || nanos <= 0) {
+            return;
+        }
+        double sample = bytes * 1e9 / nanos;
+        mirror.bytesPerSecond = mirror.bytesPerSecond < 0 ? sample
+                : mirror.bytesPerSecond + EWMA_ALPHA * (sample - mirror.bytesPerSecond);
+        mirror.failures = 0;
+    }
+
+    /**
+     * Aparta un origen tras un error o por lento
+     */
+    synchronized void demote(Mirror mirror) {
+        mirror.failures++;
+        long delay = Math.min(MAX_DEMOTION_MS, BASE_DEMOTION_MS << Math.min(mirror.failures - 1, 16));
+        mirror.demotedUntil = System.currentTimeMillis() + delay;
+        if (mirror.bytesPerSecond > 0) {
+            mirror.bytesPerSecond /= 2;
+        }
+    }
+
+    /**
+     * Descarta un origen que no sirve (no respeta rangos o sirve otra versión)
+     * @return false si era el último origen y no se descartó
+     */
+    synchronized boolean remove(Mirror mirror) {
+        if (!mirrors.contains(mirror)) {
+            // Ya lo descartó otra conexión
+            return !mirrors.isEmpty();
+        }
+        if (mirrors.size() <= 1) {
+            return false;
+        }
+        return mirrors.remove(mirror);
+    }
+
+    /**
+     * Velocidad media medida de un origen (bytes por segundo, -1 sin medir)
+     */
+    synchronized double getBytesPerSecond(Mirror mirror) {
+        return mirror.bytesPerSecond;
+    }
+
+    synchronized List<Mirror> getMirrors() {
+        return new ArrayList<>(mirrors);
+    }
+}
@@ -0,0 +1,220 @@
+package stevedev.core;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import stevedev.model.DownloadTrace;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transporte sobre OkHttp. Es el de por defecto y el único que admite el motor asíncrono
+ * ({@link AsyncTransferEngine}), que usa directamente {@code Call.enqueue}.
+ */
+public final class OkHttpTransport implements HttpTransport {
+    private final OkHttpClient httpClient;
+    private final ConnectionReuseListener reuseListener;
+    /** Pool de {@link #withSeparateConnections}, compartido con los transportes derivados */
+    private final AtomicReference<ConnectionPool> separatePool;
+
+    /**
+     * Transporte sobre un cliente ya configurado. El cliente conserva su propio
+     * EventListener, así que las estadísticas de conexiones sólo incluyen el estado del pool
+     * y las trazas no separan DNS, TCP y TLS del tiempo hasta el primer byte.
+     */
+    public OkHttpTransport(OkHttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    /**
+     * Transporte con la configuración de conexiones indicada y estadísticas completas
+     */
+    public OkHttpTransport(HttpClientConfig config) {
+        this(config, new ConnectionReuseListener());
+    }
+
+    private OkHttpTransport(HttpClientConfig config, ConnectionReuseListener reuseListener) {
+        this(newClient(config, reuseListener), reuseListener);
+    }
+
+    /**
+     * Transporte derivado: comparte el contador de reutilización del original
+     */
+    private OkHttpTransport(OkHttpClient httpClient, ConnectionReuseListener reuseListener) {
+        this(httpClient, reuseListener, new AtomicReference<>());
+    }
+
+    private OkHttpTransport(OkHttpClient httpClient, ConnectionReuseListener reuseListener,
+                            AtomicReference<ConnectionPool> separatePool) {
+        this.httpClient = httpClient;
+        this.reuseListener = reuseListener;
+        this.separatePool = separatePool;
+    }
+
+    private static OkHttpClient newClient(HttpClientConfig config, ConnectionReuseListener reuseListener) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+        return new OkHttpClient.Builder()
+                .connectTimeout(HttpClientConfig.CONNECT_TIMEOUT)
+                // Sólo de respaldo: las conexiones estancadas las aborta antes StallDetector
+                .readTimeout(Duration.ofMinutes(5))
+                .writeTimeout(Duration.ofMinutes(5))
+                .connectionPool(new ConnectionPool(config.getMaxIdleConnections(),
+                        config.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(config.getProtocol() == HttpClientConfig.Protocol.HTTP_2
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .eventListenerFactory(call -> new TracingEventListener(
+                        call.request().tag(DownloadTrace.class), reuseListener))
+                .build();
+    }
+
+    /**
+     * Cliente subyacente, para lo que depende de OkHttp (motor asíncrono, configuración)
+     */
+    public OkHttpClient getClient() {
+        return httpClient;
+    }
+
+    @Override
+    public HttpTransport.Call newCall(HttpTransport.Request request) {
+        return wrap(httpClient.newCall(toOkHttp(request)));
+    }
+
+    @Override
+    public HttpTransport withCallTimeout(Duration timeout) {
+        // Mismo pool y mismo contador de reutilización
+        return new OkHttpTransport(httpClient.newBuilder().callTimeout(timeout).build(), reuseListener, separatePool);
+    }
+
+    @Override
+    public HttpTransport withSeparateConnections() {
+        // Un único pool aparte por transporte: los duplicados no comparten conexión (ni, con
+        // HTTP/2, multiplexación) con las peticiones originales, y no se crea un pool por descarga
+        ConnectionPool pool;
+        synchronized (separatePool) {
+            pool = separatePool.get();
+            if (pool == null) {
+                pool = new ConnectionPool(5, 1, TimeUnit.MINUTES);
+                separatePool.set(pool);
+            }
+        }
+        return new OkHttpTransport(httpClient.newBuilder().connectionPool(pool).build(), reuseListener);
+    }
+
+    @Override
+    public ConnectionStats getConnectionStats() {
+        ConnectionPool pool = httpClient.connectionPool();
+        int idle = pool.idleConnectionCount();
+        return new ConnectionStats(idle, Math.max(0, pool.connectionCount() - idle),
+                reuseListener != null ? reuseListener.getOpened() : 0,
+                reuseListener != null ? reuseListener.getAcquired() : 0);
+    }
+
+    @Override
+    public String getName() {
+        return "okhttp";
+    }
+
+    @Override
+    public void shutdown() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        ConnectionPool pool = separatePool.get();
+        if (pool != null) {
+            pool.evictAll();
+        }
+    }
+
+    /**
+     * Petición de OkHttp equivalente
+     */
+    static okhttp3.Request toOkHttp(HttpTransport.Request request) {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+                .url(request.getUrl());
+        if ("HEAD".equals(request.getMethod())) {
+            builder.head();
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        if (request.getTrace() != null) {
+            builder.tag(DownloadTrace.class, request.getTrace());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adapta una llamada de OkHttp (por ejemplo, una encolada en el motor asíncrono)
+     */
+    static HttpTransport.Call wrap(okhttp3.Call call) {
+        return new HttpTransport.Call() {
+            @Override
+            public HttpTransport.Response execute() throws IOException {
+                return wrap(call.execute());
+            }
+
+            @Override
+            public void cancel() {
+                call.cancel();
+            }
+        };
+    }
+
+    /**
+     * Adapta una respuesta de OkHttp (por ejemplo, la recibida por callback en el motor asíncrono)
+     */
+    static HttpTransport.Response wrap(okhttp3.Response response) {
+        return new HttpTransport.Response() {
+            @Override
+            public int code() {
+                return response.code();
+            }
+
+            @Override
+            public String message() {
+                return response.message();
+            }
+
+            @Override
+            public String header(String name) {
+                return response.header(name);
+            }
+
+            @Override
+            public long contentLength() {
+                ResponseBody body = response.body();
+                return body != null ? body.contentLength() : -1;
+            }
+
+            @Override
+            public String protocol() {
+                return response.protocol().toString();
+            }
+
+            @Override
+            public BufferedSource body() throws IOException {
+                ResponseBody body = response.body();
+                if (body == null) {
+                    throw new IOException("Response body es null");
+                }
+                return body.source();
+            }
+
+            @Override
+            public void close() {
+                response.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package stevedev.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Política de reintentos de las descargas.
+ *
+ * Distingue errores transitorios (conexión cortada, timeouts, 408, 429 y 5xx de
+ * pasarela) de los permanentes (otros 4xx, disco lleno, errores de escritura), espera
+ * con backoff exponencial y jitter entre intentos y respeta Retry-After. Cada host tiene
+ * además un presupuesto de reintentos que se recarga con el tiempo, para que un servidor
+ * caído no acapare los hilos con reintentos de todas sus descargas.
+ */
+public class RetryPolicy {
+    private static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_MAX_RETRY_AFTER = Duration.ofMinutes(2);
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final int DEFAULT_HOST_BUDGET = 20;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Map<String, HostBudget> budgets = new ConcurrentHashMap<>();
+    private volatile long maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER.toMillis();
+    private volatile int hostBudget = DEFAULT_HOST_BUDGET;
+    private volatile long budgetRefillMillis = Duration.ofMinutes(1).toMillis();
+
+    /**
+     * Constructor
+     * @param maxRetries Reintentos por descarga (0 desactiva los reintentos)
+     * @param baseDelay Espera antes del primer reintento
+     * @param maxDelay Espera máxima entre reintentos
+     */
+    public RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+    }
+
+    /**
+     * Política por defecto: 5 reintentos, de 0,5 s a 30 s, 20 reintentos por host y minuto
+     */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Política sin reintentos
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(0, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Establece el presupuesto de reintentos de cada host
+     * @param retries Reintentos disponibles como máximo
+     * @param refillPeriod Tiempo en que el presupuesto se recarga por completo
+     */
+    public void setHostBudget(int retries, Duration refillPeriod) {
+        this.hostBudget = retries;
+        this.budgetRefillMillis = refillPeriod.toMillis();
+        budgets.clear();
+    }
+
+    /**
+     * Establece la espera máxima pedida con Retry-After que se acepta; si el servidor
+     * pide más, la descarga falla en lugar de esperar
+     */
+    public void setMaxRetryAfter(Duration maxRetryAfter) {
+        this.maxRetryAfterMillis = maxRetryAfter.toMillis();
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Decide si se reintenta tras un error y consume presupuesto del host si es así
+     * @param error Error del intento fallido
+     * @param retriesSoFar Reintentos ya hechos para esta descarga
+     * @param host Host de la descarga
+     */
+    public boolean shouldRetry(IOException error, int retriesSoFar, String host) {
+        if (retriesSoFar >= maxRetries || !isRetryable(error)) {
+            return false;
+        }
+        if (error instanceof HttpStatusException &&
+            ((HttpStatusException) error).getRetryAfterMillis() > maxRetryAfterMillis) {
+            return false;
+        }
+        return budgets.computeIfAbsent(host, key -> new HostBudget()).tryAcquire();
+    }
+
+    /**
+     * Indica si un error es transitorio
+     */
+    public boolean isRetryable(IOException error) {
+        if (error instanceof HttpStatusException) {
+            int code = ((HttpStatusException) error).getStatusCode();
+            return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+        }
+        // Errores de red; los de disco y los de configuración no mejoran reintentando
+        return error instanceof SocketException
+                || error instanceof InterruptedIOException
+                || error instanceof EOFException
+                || error instanceof ProtocolException
+                || isStreamReset(error);
+    }
+
+    /**
+     * El servidor cerró el flujo HTTP/2 de la descarga (RST_STREAM). Los clientes no lo
+     * exponen con un tipo público, así que se reconoce por el mensaje.
+     */
+    private static boolean isStreamReset(IOException error) {
+        String message = error.getMessage();
+        return message != null && (message.startsWith("stream was reset") || message.contains("RST_STREAM"));
+    }
+
+    /**
+     * Espera antes de un reintento: backoff exponencial con la mitad aleatoria (equal
+     * jitter), nunca menor que lo pedido con Retry-After
+     * @param retry Número de reintento, empezando en 1
+     * @param error Error del intento fallido
+     * @return Milisegundos a esperar
+     */
+    public long delayMillis(int retry, IOException error) {
+        long exponential = baseDelayMillis << Math.min(retry - 1, 30);
+        long capped = Math.min(maxDelayMillis, Math.max(0, exponential));
+        long delay = capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+
+        if (error instanceof HttpStatusException) {
+            delay = Math.max(delay, ((HttpStatusException) error).getRetryAfterMillis());
+        }
+        return delay;
+    }
+
+    /**
+     * Interpreta una cabecera Retry-After en segundos o como fecha HTTP
+     * @return Milisegundos de espera o -1 si no hay cabecera válida
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // No son segundos: probar como fecha
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Cubo de fichas por host: se gasta una ficha por reintento y se recargan de forma continua
+     */
+    private final class HostBudget {
+        private double tokens = hostBudget;
+        private long lastRefill = System.nanoTime();
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            double refill = (now - lastRefill) / 1e6 / budgetRefillMillis * hostBudget;
+            tokens = Math.min(hostBudget, tokens + refill);
+            lastRefill = now;
+
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+import stevedev.util.FileUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Política que decide qué descarga en cola arranca cuando se libera un hueco.
+ *
+ * El gestor pasa las candidatas admisibles (ya sondeadas y con espacio en disco) en
+ * orden de llegada; la política elige una. Las políticas basadas en tamaño usan
+ * {@link DownloadItem#getTotalSize()}, conocido normalmente gracias al sondeo previo.
+ */
+public interface SchedulingPolicy {
+
+    /**
+     * Elige la siguiente descarga
+     * @param candidates Candidatas en orden de llegada (nunca vacía)
+     * @return Descarga elegida, que debe pertenecer a la lista
+     */
+    DownloadItem select(List<DownloadItem> candidates);
+
+    /**
+     * Se llama cuando la descarga elegida arranca
+     */
+    default void onStarted(DownloadItem item) {
+    }
+
+    /**
+     * Se llama cuando una descarga arrancada termina, con cualquier resultado
+     */
+    default void onFinished(DownloadItem item) {
+    }
+
+    /**
+     * Orden de llegada (comportamiento por defecto)
+     */
+    static SchedulingPolicy fifo() {
+        return candidates -> candidates.get(0);
+    }
+
+    /**
+     * La más corta primero: minimiza el tiempo medio de finalización cuando hay muchos
+     * archivos pequeños detrás de uno grande. Las de tamaño desconocido van al final.
+     */
+    static SchedulingPolicy shortestFirst() {
+        return candidates -> candidates.stream()
+                .min(Comparator.comparingLong(item -> item.getTotalSize() > 0 ? item.getTotalSize() : Long.MAX_VALUE))
+                .orElseThrow();
+    }
+
+    /**
+     * La más grande primero: mantiene ocupada una conexión larga mientras los huecos
+     * restantes despachan lo pequeño. Las de tamaño desconocido van al final.
+     */
+    static SchedulingPolicy largestFirst() {
+        return candidates -> candidates.stream()
+                .max(Comparator.comparingLong(DownloadItem::getTotalSize))
+                .orElseThrow();
+    }
+
+    /**
+     * Reparto justo por bytes entre grupos: arranca la siguiente descarga del grupo que
+     * menos bytes ha recibido hasta ahora. El grupo es {@link DownloadItem#getGroup()} o,
+     * si no se indicó, el host de la URL.
+     */
+    static SchedulingPolicy fairShare() {
+        return new FairShare();
+    }
+
+    /**
+     * Implementación del reparto justo por bytes
+     */
+    final class FairShare implements SchedulingPolicy {
+        /** Bytes que se cargan a una descarga de tamaño desconocido hasta que termine */
+        private static final long UNKNOWN_SIZE_CHARGE = 1024 * 1024;
+
+        private final Map<String, Long> bytesByGroup = new ConcurrentHashMap<>();
+        private final Map<DownloadItem, Long> charged = new ConcurrentHashMap<>();
+
+        @Override
+        public DownloadItem select(List<DownloadItem> candidates) {
+            return candidates.stream()
+                    .min(Comparator.comparingLong(item -> bytesByGroup.getOrDefault(groupOf(item), 0L)))
+                    .orElseThrow();
+        }
+
+        @Override
+        public void onStarted(DownloadItem item) {
+            long charge = item.getTotalSize() > 0 ? item.getTotalSize() : UNKNOWN_SIZE_CHARGE;
+            charged.put(item, charge);
+            bytesByGroup.merge(groupOf(item), charge, Long::sum);
+        }
+
+        @Override
+        public void onFinished(DownloadItem item) {
+            // Sustituir lo cargado al arrancar por los bytes realmente recibidos
+            Long charge = charged.remove(item);
+            if (charge != null) {
+                bytesByGroup.merge(groupOf(item), item.getDownloadedSize() - charge, Long::sum);
+            }
+        }
+
+        /**
+         * Bytes contabilizados para un grupo
+         */
+        public long getGroupBytes(String group) {
+            return bytesByGroup.getOrDefault(group, 0L);
+        }
+
+        static String groupOf(DownloadItem item) {
+            if (item.getGroup() != null) {
+                return item.getGroup();
+            }
+            return FileUtils.extractHostFromUrl(item.getUrl());
+        }
+    }
+}
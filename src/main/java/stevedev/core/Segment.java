@@ -0,0 +1,187 @@
+package stevedev.core;
+
+/**
+ * Tramo [start, end) de una descarga por rangos.
+ *
+ * Sólo el hilo que tiene asignado el tramo avanza {@code next}; otro hilo puede acortar
+ * el final al robarle la segunda mitad. Reservar bytes y acortar el final van bajo el
+ * mismo cerrojo, así que un bloque recibido más allá del nuevo final se descarta entero
+ * y nunca se escribe ni se cuenta dos veces.
+ *
+ * Un tramo duplicado (hedge) no se divide: la petición duplicada cubre hasta su final y,
+ * si termina antes, lo completa de golpe.
+ */
+final class Segment {
+    private final long start;
+    private long next;
+    private long end;
+    private volatile long written;
+    private boolean assigned;
+    private boolean hedged;
+    private long fetchStartNanos;
+    private long fetchStartByte;
+    private volatile HttpTransport.Call call;
+    private volatile HttpTransport.Call hedgeCall;
+    private volatile MirrorSet.Mirror mirror;
+
+    Segment(long start, long end) {
+        this.start = start;
+        this.next = start;
+        this.end = end;
+        this.written = start;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Siguiente byte a recibir (sólo lo avanza el hilo asignado)
+     */
+    synchronized long getNext() {
+        return next;
+    }
+
+    synchronized long getEnd() {
+        return end;
+    }
+
+    /**
+     * Bytes que faltan por reservar
+     */
+    synchronized long remaining() {
+        return end - next;
+    }
+
+    /**
+     * Reserva los siguientes bytes recibidos, como mucho hasta el final actual del tramo
+     * @param count Bytes recibidos
+     * @return Bytes aceptados (menos que count si el final se acortó)
+     */
+    synchronized int claim(int count) {
+        int accepted = (int) Math.min(count, end - next);
+        next += accepted;
+        return accepted;
+    }
+
+    /**
+     * Confirma que los bytes reservados ya están escritos en el archivo
+     */
+    synchronized void written(int count) {
+        // Si un duplicado ya completó el tramo, los bytes eran los mismos
+        written = Math.min(end, written + count);
+    }
+
+    /**
+     * Primer byte del tramo que todavía no está escrito
+     */
+    long getWritten() {
+        return written;
+    }
+
+    /**
+     * Divide el tramo por la mitad de lo que le falta
+     * @param minSize Tamaño mínimo de cada mitad
+     * @return Tramo con la segunda mitad, o null si el resto es demasiado pequeño
+     */
+    synchronized Segment split(long minSize) {
+        long remaining = end - next;
+        if (hedged || remaining < 2 * minSize) {
+            return null;
+        }
+
+        long middle = next + remaining / 2;
+        Segment tail = new Segment(middle, end);
+        end = middle;
+        return tail;
+    }
+
+    synchronized boolean isComplete() {
+        return next >= end && written >= end;
+    }
+
+    synchronized boolean isAssigned() {
+        return assigned;
+    }
+
+    synchronized void setAssigned(boolean assigned) {
+        this.assigned = assigned;
+    }
+
+    /**
+     * Marca el tramo como duplicado si todavía no lo está
+     * @return true si este hilo se encarga del duplicado
+     */
+    synchronized boolean tryHedge() {
+        if (hedged || next >= end) {
+            return false;
+        }
+        hedged = true;
+        return true;
+    }
+
+    synchronized boolean isHedged() {
+        return hedged;
+    }
+
+    /**
+     * Completa el tramo con los bytes que escribió el duplicado
+     * @return Bytes que el tramo no había reservado todavía, o -1 si ya estaba completo
+     */
+    synchronized long completeByHedge() {
+        if (next >= end) {
+            return -1;
+        }
+        long gained = end - next;
+        next = end;
+        written = end;
+        return gained;
+    }
+
+    /**
+     * Anota el comienzo de una petición para medir su velocidad
+     */
+    synchronized void startFetch(long now) {
+        fetchStartNanos = now;
+        fetchStartByte = next;
+    }
+
+    /**
+     * Velocidad de la petición en curso
+     * @return Bytes por segundo, o -1 si lleva menos del tiempo mínimo de observación
+     */
+    synchronized double rate(long now, long minObservationNanos) {
+        long elapsed = now - fetchStartNanos;
+        if (fetchStartNanos == 0 || elapsed < minObservationNanos) {
+            return -1;
+        }
+        return (next - fetchStartByte) * 1e9 / elapsed;
+    }
+
+    HttpTransport.Call getCall() {
+        return call;
+    }
+
+    void setCall(HttpTransport.Call call) {
+        this.call = call;
+    }
+
+    HttpTransport.Call getHedgeCall() {
+        return hedgeCall;
+    }
+
+    void setHedgeCall(HttpTransport.Call hedgeCall) {
+        this.hedgeCall = hedgeCall;
+    }
+
+    /**
+     * Origen de la última petición del tramo
+     */
+    MirrorSet.Mirror getMirror() {
+        return mirror;
+    }
+
+    void setMirror(MirrorSet.Mirror mirror) {
+        this.mirror = mirror;
+    }
+}
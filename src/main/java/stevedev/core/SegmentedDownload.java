@@ -0,0 +1,672 @@
+package stevedev.core;
+
+import okio.BufferedSource;
+import okio.Okio;
+import stevedev.metrics.jfr.ChunkWriteEvent;
+import stevedev.util.FileUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Descarga de un archivo por varias conexiones con peticiones de rango.
+ *
+ * El archivo se reparte en tantos tramos como conexiones y cada conexión escribe su tramo
+ * con escrituras posicionales. Cuando una conexión termina el suyo no se queda parada:
+ * toma un tramo abandonado por un error o roba la segunda mitad del tramo con más bytes
+ * pendientes, que se acorta en el acto. Así el final de la descarga no depende de la
+ * conexión más lenta. Cada petición lleva If-Range para que todos los tramos sean de la
+ * misma versión del recurso.
+ *
+ * Con varios mirrors, cada petición elige origen según su velocidad medida (ver
+ * {@link MirrorSet}); un mirror que falla o va lento se aparta durante un tiempo.
+ *
+ * Con una {@link HedgePolicy}, las conexiones que ya no tienen nada que robar duplican
+ * el resto de los tramos que van mucho más lentos que la mediana.
+ */
+final class SegmentedDownload {
+    /** Tamaño mínimo de un tramo robado */
+    static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long RETRY_POLL_MS = 100;
+    private static final long HEDGE_POLL_MS = 100;
+    /** Una muestra de velocidad del origen cada megabyte o cada 100 ms, lo que llegue antes */
+    private static final long MIRROR_SAMPLE_BYTES = 1024 * 1024;
+    private static final long MIRROR_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "segment-worker-" + WORKER_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * El servidor no respetó un rango (respondió con el recurso completo o con otro rango):
+     * la descarga debe hacerse con una sola conexión
+     */
+    static final class RangeNotHonouredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeNotHonouredException(String message) {
+            super(message);
+        }
+    }
+
+    private final HttpTransport transport;
+    private final MirrorSet mirrors;
+    private final Path path;
+    private final long totalSize;
+    private final int connections;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Set<HttpTransport.Call> calls = ConcurrentHashMap.newKeySet();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicInteger hedges = new AtomicInteger();
+    private final AtomicInteger hedgeWins = new AtomicInteger();
+    private final AtomicLong hedgedBytes = new AtomicLong();
+    private final List<Double> finishedRates = new ArrayList<>();
+    private RetryPolicy retryPolicy;
+    private StallPolicy stallPolicy;
+    private HedgePolicy hedgePolicy;
+    private HttpTransport hedgeTransport;
+    private BooleanSupplier cancelled = () -> false;
+    private LongConsumer progress = bytes -> { };
+    private FileChannel channel;
+    private volatile IOException failure;
+
+    /**
+     * Constructor
+     * @param transport Transporte HTTP
+     * @param mirrors Orígenes verificados del recurso
+     * @param path Archivo de destino
+     * @param totalSize Tamaño del recurso
+     * @param connections Conexiones simultáneas
+     */
+    SegmentedDownload(HttpTransport transport, MirrorSet mirrors, Path path, long totalSize, int connections) {
+        this.transport = transport;
+        this.mirrors = mirrors;
+        this.path = path;
+        this.totalSize = totalSize;
+        this.connections = connections;
+    }
+
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    void setStallPolicy(StallPolicy stallPolicy) {
+        this.stallPolicy = stallPolicy;
+    }
+
+    void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    void setCancelled(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Recibe el total de bytes escritos cada vez que crece
+     */
+    void setProgressListener(LongConsumer progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Descarga todos los tramos. Una conexión trabaja en el hilo actual y el resto en el
+     * pool de tramos.
+     */
+    void run() throws IOException {
+        try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = output;
+            boolean complete = false;
+            try {
+                // Reservar el tamaño final para escribir los tramos en cualquier orden
+                WriteBehindChannel.reserveSpace(output, path, totalSize);
+                complete = transfer();
+            } finally {
+                if (!complete) {
+                    discardPadding(output);
+                }
+            }
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Reparte los tramos y espera a que terminen
+     * @return true si el archivo quedó completo, false si se canceló
+     * @throws IOException Si algún tramo falla sin remedio o la descarga queda incompleta
+     */
+    private boolean transfer() throws IOException {
+        List<Segment> initial = new ArrayList<>();
+        long size = totalSize / connections;
+        synchronized (this) {
+            for (int i = 0; i < connections; i++) {
+                long start = i * size;
+                Segment segment = new Segment(start, i == connections - 1 ? totalSize : start + size);
+                segment.setAssigned(true);
+                segments.add(segment);
+                initial.add(segment);
+            }
+        }
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 1; i < initial.size(); i++) {
+            Segment first = initial.get(i);
+            workers.add(CompletableFuture.runAsync(() -> work(first), WORKERS));
+        }
+        work(initial.get(0));
+        awaitWorkers(workers);
+
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (getContiguousBytes() != totalSize) {
+            throw new IOException("Descarga por tramos incompleta: " + getContiguousBytes() + " de " + totalSize);
+        }
+        return true;
+    }
+
+    /**
+     * Tras un fallo o una cancelación recorta el archivo reservado a los bytes contiguos
+     * escritos, para no dejar en disco el relleno disperso del resto
+     */
+    private void discardPadding(FileChannel output) {
+        try {
+            output.truncate(getContiguousBytes());
+        } catch (IOException e) {
+            System.err.println("Error recortando descarga por tramos " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aborta todas las conexiones
+     */
+    void cancel() {
+        calls.forEach(HttpTransport.Call::cancel);
+    }
+
+    /**
+     * Bytes escritos en total
+     */
+    long getDownloadedBytes() {
+        return downloaded.get();
+    }
+
+    /**
+     * Reintentos hechos por errores transitorios de algún tramo
+     */
+    int getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Peticiones duplicadas lanzadas
+     */
+    int getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Peticiones duplicadas que terminaron antes que la original
+     */
+    int getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Bytes escritos sin huecos desde el principio del archivo
+     */
+    synchronized long getContiguousBytes() {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        long contiguous = totalSize;
+        for (Segment segment : segments) {
+            if (!segment.isComplete()) {
+                contiguous = Math.min(contiguous, segment.getWritten());
+            }
+        }
+        return contiguous;
+    }
+
+    /**
+     * Bucle de una conexión: descarga su tramo y después los que vaya tomando o robando.
+     * Sin tramos que repartir, si hay política de duplicados, vigila los tramos lentos.
+     */
+    private void work(Segment first) {
+        Segment segment = first;
+        while (failure == null && !cancelled.getAsBoolean()) {
+            if (segment == null) {
+                segment = nextSegment();
+            }
+            if (segment != null) {
+                try {
+                    fetch(segment);
+                } catch (IOException e) {
+                    segment.setAssigned(false);
+                    // Un tramo completado por su duplicado no es un error
+                    if (!segment.isComplete() && !cancelled.getAsBoolean() && !recover(segment.getMirror(), e)) {
+                        fail(e);
+                        return;
+                    }
+                }
+                segment = null;
+                continue;
+            }
+
+            if (hedgePolicy == null || isComplete()) {
+                return;
+            }
+            Segment slow = hedgeCandidate();
+            if (slow != null) {
+                hedge(slow);
+            } else if (!pause(HEDGE_POLL_MS)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized boolean isComplete() {
+        for (Segment segment : segments) {
+            if (!segment.isComplete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registra el primer error definitivo y aborta el resto de conexiones
+     */
+    private synchronized void fail(IOException error) {
+        if (failure == null) {
+            failure = error;
+        }
+        cancel();
+    }
+
+    /**
+     * Tramo siguiente para una conexión libre: uno abandonado por un error o la segunda
+     * mitad del que tenga más bytes pendientes
+     * @return Tramo ya asignado, o null si no queda trabajo que repartir
+     */
+    private synchronized Segment nextSegment() {
+        Segment largest = null;
+        for (Segment segment : segments) {
+            if (segment.remaining() <= 0) {
+                continue;
+            }
+            if (!segment.isAssigned()) {
+                segment.setAssigned(true);
+                return segment;
+            }
+            if (!segment.isHedged() && (largest == null || segment.remaining() > largest.remaining())) {
+                largest = segment;
+            }
+        }
+
+        Segment stolen = largest != null ? largest.split(MIN_SEGMENT_SIZE) : null;
+        if (stolen != null) {
+            stolen.setAssigned(true);
+            segments.add(stolen);
+        }
+        return stolen;
+    }
+
+    /**
+     * Pide el resto de un tramo y lo escribe hasta completarlo o hasta que otra conexión
+     * le robe el final
+     */
+    private void fetch(Segment segment) throws IOException {
+        long from = segment.getNext();
+        long to = segment.getEnd();
+        if (from >= to) {
+            return;
+        }
+
+        MirrorSet.Mirror mirror = mirrors.acquire(null);
+        segment.setMirror(mirror);
+        HttpTransport.Request request = HttpTransport.Request.get(mirror.getUrl())
+                .header("Range", "bytes=" + from + "-" + (to - 1))
+                .header("If-Range", mirror.getValidator());
+        HttpTransport.Call call = transport.newCall(request);
+        calls.add(call);
+        segment.setCall(call);
+        segment.startFetch(System.nanoTime());
+        StallDetector stallDetector = stallPolicy != null ? new StallDetector(stallPolicy, call::cancel) : null;
+        if (stallDetector != null) {
+            stallDetector.start();
+        }
+
+        try (HttpTransport.Response response = call.execute()) {
+            if (stallDetector != null) {
+                stallDetector.responseReceived();
+            }
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code(), response.message(),
+                        RetryPolicy.parseRetryAfter(response.header("Retry-After")));
+            }
+
+            String contentRange = response.header("Content-Range", "");
+            if (response.code() != 206 || !contentRange.startsWith("bytes " + from + "-")) {
+                throw new RangeNotHonouredException(mirror + " no respetó el rango " + from + "-" + (to - 1) +
+                        " (" + response.code() + " " + contentRange + ")");
+            }
+
+            BufferedSource source = stallDetector != null ? Okio.buffer(stallDetector.watch(response.body())) : response.body();
+            receive(segment, source, mirror);
+            recordRate(segment);
+
+            // Este tramo ganó: cancelar su duplicado si lo hay
+            HttpTransport.Call hedge = segment.getHedgeCall();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        } catch (IOException e) {
+            if (stallDetector != null && stallDetector.isStalled() && !cancelled.getAsBoolean()) {
+                throw new StallException(stallDetector.getStallReason(), e);
+            }
+            throw e;
+        } finally {
+            calls.remove(call);
+            segment.setCall(null);
+            mirrors.release(mirror);
+            if (stallDetector != null) {
+                stallDetector.stop();
+            }
+        }
+    }
+
+    /**
+     * Guarda la velocidad de una petición terminada para la mediana de la descarga
+     */
+    private void recordRate(Segment segment) {
+        double rate = segment.rate(System.nanoTime(), 0);
+        if (rate > 0) {
+            synchronized (finishedRates) {
+                finishedRates.add(rate);
+            }
+        }
+    }
+
+    /**
+     * Tramo lento que conviene duplicar: con pocos bytes pendientes, mucho más lento que
+     * la mediana de la descarga y dentro del presupuesto de bytes duplicados
+     * @return Tramo ya marcado como duplicado, o null si no hay ninguno
+     */
+    private Segment hedgeCandidate() {
+        long now = System.nanoTime();
+        long minObservation = hedgePolicy.getMinObservation().toNanos();
+        List<Double> rates;
+        synchronized (finishedRates) {
+            rates = new ArrayList<>(finishedRates);
+        }
+
+        List<Segment> active = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segment.isAssigned() && !segment.isComplete() && !segment.isHedged()) {
+                    active.add(segment);
+                    double rate = segment.rate(now, minObservation);
+                    if (rate >= 0) {
+                        rates.add(rate);
+                    }
+                }
+            }
+        }
+        if (rates.size() < 2) {
+            return null;
+        }
+        Collections.sort(rates);
+        double median = rates.get(rates.size() / 2);
+
+        Segment slowest = null;
+        double slowestRate = median / hedgePolicy.getSlowFactor();
+        for (Segment segment : active) {
+            double rate = segment.rate(now, minObservation);
+            long pending = segment.getEnd() - segment.getWritten();
+            if (rate >= 0 && rate < slowestRate && pending <= hedgePolicy.getMaxRemainingBytes()) {
+                slowest = segment;
+                slowestRate = rate;
+            }
+        }
+        if (slowest == null) {
+            return null;
+        }
+
+        long pending = slowest.getEnd() - slowest.getWritten();
+        if (hedgedBytes.addAndGet(pending) > hedgePolicy.budgetFor(totalSize)) {
+            hedgedBytes.addAndGet(-pending);
+            return null;
+        }
+        if (!slowest.tryHedge()) {
+            hedgedBytes.addAndGet(-pending);
+            return null;
+        }
+        if (slowest.getMirror() != null && mirrors.size() > 1) {
+            mirrors.demote(slowest.getMirror());
+        }
+        return slowest;
+    }
+
+    /**
+     * Pide otra vez el resto de un tramo lento por una conexión nueva. Si termina antes que
+     * la petición original, completa el tramo y la cancela; si no, se cancela él.
+     */
+    private void hedge(Segment segment) {
+        // Desde lo ya escrito: lo reservado pero aún no escrito también lo cubre el duplicado
+        long from = segment.getWritten();
+        long to = segment.getEnd();
+        hedges.incrementAndGet();
+
+        // Otro mirror si lo hay; si no, el mismo origen por una conexión nueva
+        MirrorSet.Mirror mirror = mirrors.acquire(segment.getMirror());
+        HttpTransport.Request request = HttpTransport.Request.get(mirror.getUrl())
+                .header("Range", "bytes=" + from + "-" + (to - 1))
+                .header("If-Range", mirror.getValidator());
+        HttpTransport.Call call = hedgeTransport().newCall(request);
+        calls.add(call);
+        segment.setHedgeCall(call);
+
+        try (HttpTransport.Response response = call.execute()) {
+            if (response.code() != 206 ||
+                !response.header("Content-Range", "").startsWith("bytes " + from + "-")) {
+                return;
+            }
+
+            BufferedSource source = response.body();
+            BufferPool pool = BufferPool.shared();
+            ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+            long started = System.nanoTime();
+            long position = from;
+            try {
+                while (position < to && !segment.isComplete() && !cancelled.getAsBoolean()) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(BUFFER_SIZE, to - position));
+                    if (source.read(buffer) == -1) {
+                        return;
+                    }
+                    buffer.flip();
+                    // Mismos bytes que la petición original: escribir encima es inofensivo
+                    position = writeAt(buffer, position);
+                }
+            } finally {
+                pool.release(buffer);
+            }
+
+            mirrors.record(mirror, position - from, System.nanoTime() - started);
+            if (position >= to) {
+                long gained = segment.completeByHedge();
+                if (gained >= 0) {
+                    hedgeWins.incrementAndGet();
+                    progress.accept(downloaded.addAndGet(gained));
+                    HttpTransport.Call original = segment.getCall();
+                    if (original != null) {
+                        original.cancel();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // El duplicado perdió o falló: la petición original sigue su curso
+        } finally {
+            calls.remove(call);
+            segment.setHedgeCall(null);
+            mirrors.release(mirror);
+        }
+    }
+
+    /**
+     * Transporte con sus propias conexiones para que el duplicado no comparta conexión (ni,
+     * con HTTP/2, multiplexación) con la petición lenta
+     */
+    private synchronized HttpTransport hedgeTransport() {
+        if (hedgeTransport == null) {
+            hedgeTransport = transport.withSeparateConnections();
+        }
+        return hedgeTransport;
+    }
+
+    /**
+     * Recibe el tramo con un buffer directo del pool compartido: cuenta para el techo de
+     * memoria y el canal lo escribe sin copiarlo antes a un buffer directo propio
+     */
+    private void receive(Segment segment, BufferedSource source, MirrorSet.Mirror mirror) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        long sampleStart = System.nanoTime();
+        long sampleBytes = 0;
+        try {
+            while (segment.remaining() > 0 && !cancelled.getAsBoolean()) {
+                buffer.clear();
+                int read = source.read(buffer);
+                if (read == -1) {
+                    throw new EOFException("Tramo incompleto: faltan " + segment.remaining() + " bytes");
+                }
+
+                long position = segment.getNext();
+                int accepted = segment.claim(read);
+                buffer.flip();
+                buffer.limit(accepted);
+                writeAt(buffer, position);
+                segment.written(accepted);
+                progress.accept(downloaded.addAndGet(accepted));
+
+                // Medir el origen durante la petición, no sólo al final, para repartir los tramos
+                mirrors.received(mirror, read);
+                sampleBytes += read;
+                long now = System.nanoTime();
+                if (sampleBytes >= MIRROR_SAMPLE_BYTES || now - sampleStart >= MIRROR_SAMPLE_NANOS) {
+                    mirrors.record(mirror, sampleBytes, now - sampleStart);
+                    sampleStart = now;
+                    sampleBytes = 0;
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        mirrors.record(mirror, sampleBytes, System.nanoTime() - sampleStart);
+    }
+
+    /**
+     * Escribe el buffer entero en la posición indicada
+     * @return Posición tras lo escrito
+     */
+    private long writeAt(ByteBuffer buffer, long position) throws IOException {
+        ChunkWriteEvent event = new ChunkWriteEvent();
+        event.begin();
+        long start = position;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.bytes = position - start;
+            event.commit();
+        }
+        return position;
+    }
+
+    /**
+     * Decide si se reintenta un tramo tras un error: un mirror que no respeta rangos se
+     * descarta, otros errores lo degradan y el tramo se reintenta según la política
+     * @return false si el error es definitivo
+     */
+    private boolean recover(MirrorSet.Mirror mirror, IOException error) {
+        if (failure != null) {
+            return false;
+        }
+        if (error instanceof RangeNotHonouredException) {
+            // Con otros orígenes disponibles, el tramo sigue por ellos sin gastar reintentos
+            return mirror != null && mirrors.remove(mirror);
+        }
+        if (mirror != null && mirrors.size() > 1) {
+            mirrors.demote(mirror);
+        }
+        if (retryPolicy == null) {
+            return false;
+        }
+
+        String url = mirror != null ? mirror.getUrl() : "";
+        if (!retryPolicy.shouldRetry(error, retries.get(), FileUtils.extractHostFromUrl(url))) {
+            return false;
+        }
+        return pause(retryPolicy.delayMillis(retries.incrementAndGet(), error));
+    }
+
+    /**
+     * Espera atenta a una cancelación o a un error de otra conexión
+     * @return false si la espera se interrumpió
+     */
+    private boolean pause(long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        try {
+            while (!cancelled.getAsBoolean() && failure == null && System.nanoTime() < deadline) {
+                Thread.sleep(Math.min(RETRY_POLL_MS, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private void awaitWorkers(List<CompletableFuture<Void>> workers) throws IOException {
+        try {
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error en la descarga por tramos: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Descarga por tramos interrumpida");
+        }
+    }
+}
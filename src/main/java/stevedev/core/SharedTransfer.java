@@ -0,0 +1,62 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transferencia en curso compartida por varias descargas de la misma URL.
+ *
+ * La primera descarga (líder) es la única que abre conexión; las siguientes se
+ * adjuntan como seguidoras, reflejan su progreso y reciben una copia o enlace del
+ * archivo cuando termina.
+ */
+class SharedTransfer {
+    private final DownloadItem leader;
+    private final List<DownloadItem> followers;
+    private boolean closed;
+
+    SharedTransfer(DownloadItem leader) {
+        this.leader = leader;
+        this.followers = new ArrayList<>();
+    }
+
+    DownloadItem getLeader() {
+        return leader;
+    }
+
+    /**
+     * Adjunta una descarga a la transferencia
+     * @return false si la transferencia ya terminó y no acepta más seguidoras
+     */
+    synchronized boolean attach(DownloadItem follower) {
+        if (closed) {
+            return false;
+        }
+        followers.add(follower);
+        return true;
+    }
+
+    /**
+     * Separa una seguidora (por ejemplo, al cancelarla)
+     * @return true si la descarga era seguidora de esta transferencia
+     */
+    synchronized boolean detach(DownloadItem follower) {
+        return followers.remove(follower);
+    }
+
+    synchronized List<DownloadItem> getFollowers() {
+        return new ArrayList<>(followers);
+    }
+
+    /**
+     * Cierra la transferencia y entrega las seguidoras pendientes
+     */
+    synchronized List<DownloadItem> close() {
+        closed = true;
+        List<DownloadItem> pending = new ArrayList<>(followers);
+        followers.clear();
+        return pending;
+    }
+}
@@ -0,0 +1,121 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Carril rápido para archivos pequeños.
+ *
+ * Con miles de archivos diminutos (iconos, miniaturas, JSON) domina el coste fijo de cada
+ * descarga y no los bytes. Este carril ejecuta las descargas de tamaño conocido por debajo
+ * del umbral en un pool propio que no ocupa los huecos del gestor; las tareas reciben el
+ * cuerpo en memoria, lo hashean y lo escriben de una vez, sin avisos de progreso
+ * intermedios. Las terminadas se entregan por lotes cada {@value #FLUSH_INTERVAL_MS} ms
+ * para que el registro, los índices y la interfaz se actualicen una vez por lote.
+ *
+ * Las peticiones usan el cliente del gestor: si el servidor negocia HTTP/2, OkHttp
+ * multiplexa las peticiones simultáneas como streams de una misma conexión; con HTTP/1.1
+ * se reutilizan las conexiones keep-alive del pool.
+ *
+ * Límite: el gestor decide antes de pedir el cuerpo, así que sólo entran los archivos cuyo
+ * tamaño ya se conoce, casi siempre por el sondeo previo. Cada archivo pequeño cuesta por
+ * tanto un HEAD y un GET; con el sondeo desactivado y sin tamaño indicado en el item, los
+ * archivos pequeños van por los huecos normales.
+ */
+class SmallFileLane {
+    /** Tamaño máximo por defecto de un archivo pequeño */
+    static final long DEFAULT_THRESHOLD = 256 * 1024;
+    /** Descargas pequeñas simultáneas */
+    static final int DEFAULT_PARALLELISM = 16;
+    private static final long FLUSH_INTERVAL_MS = 100;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService flusher;
+    private final Queue<DownloadItem> finished = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<DownloadItem>> batchHandler;
+
+    /**
+     * Constructor
+     * @param parallelism Número de descargas pequeñas simultáneas
+     * @param batchHandler Recibe cada lote de descargas terminadas
+     */
+    SmallFileLane(int parallelism, Consumer<List<DownloadItem>> batchHandler) {
+        this.batchHandler = batchHandler;
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "small-file-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "small-file-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ejecuta una descarga pequeña; su item se entregará en el siguiente lote
+     */
+    void submit(DownloadTask task, DownloadItem item) {
+        task.executeAsync(executor)
+                .exceptionally(throwable -> {
+                    item.setStatus(DownloadItem.DownloadStatus.FAILED);
+                    item.setErrorMessage(throwable.getMessage());
+                    return item;
+                })
+                .thenAccept(finished::add);
+    }
+
+    /**
+     * Entrega las descargas terminadas desde el último lote
+     */
+    void flush() {
+        List<DownloadItem> batch = new ArrayList<>();
+        DownloadItem item;
+        while ((item = finished.poll()) != null) {
+            batch.add(item);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            batchHandler.accept(batch);
+        } catch (Exception e) {
+            System.err.println("Error procesando lote de descargas pequeñas: " + e.getMessage());
+        }
+    }
+
+    boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Espera a las descargas en curso, entrega el último lote y detiene los hilos
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdownNow();
+        flush();
+    }
+}
@@ -0,0 +1,206 @@
+package stevedev.core;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+import stevedev.util.FileUtils;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigilancia de una transferencia para detectar que se ha estancado.
+ *
+ * El hilo de la descarga sólo anota cuándo empieza a esperar datos y cuántos llegan; un
+ * único hilo vigilante compartido revisa cada {@value #CHECK_INTERVAL_MS} ms todas las
+ * transferencias activas, calcula su velocidad media móvil (EWMA) y aplica la
+ * {@link StallPolicy}. Al detectar un estancamiento llama a la acción de aborto (que
+ * cancela la petición) una sola vez.
+ *
+ * El tiempo que la descarga pasa esperando al disco o a un lector no cuenta: sólo se
+ * vigila mientras hay una lectura de red en curso.
+ */
+final class StallDetector {
+    private static final long CHECK_INTERVAL_MS = 500;
+    private static final double EWMA_ALPHA = 0.2;
+    private static final Set<StallDetector> ACTIVE = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stall-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        WATCHDOG.scheduleWithFixedDelay(StallDetector::checkAll, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private final StallPolicy policy;
+    private final Runnable abort;
+
+    // Escrito por el hilo de la descarga
+    private volatile long bytesReceived;
+    private volatile long readStartedAt;
+    private volatile boolean reading;
+    private volatile String stallReason;
+
+    // Sólo lo usa el vigilante
+    private long lastBytes;
+    private long lastCheck;
+    private double bytesPerSecond = -1;
+    private long slowSince;
+
+    /**
+     * Constructor
+     * @param policy Criterios de estancamiento
+     * @param abort Acción que aborta la transferencia
+     */
+    StallDetector(StallPolicy policy, Runnable abort) {
+        this.policy = policy;
+        this.abort = abort;
+    }
+
+    /**
+     * Empieza a vigilar; hasta {@link #responseReceived()} se espera la respuesta
+     */
+    void start() {
+        long now = System.nanoTime();
+        lastCheck = now;
+        readStarted(now);
+        ACTIVE.add(this);
+    }
+
+    /**
+     * Indica que llegaron las cabeceras de la respuesta
+     */
+    void responseReceived() {
+        readFinished(0);
+    }
+
+    /**
+     * Deja de vigilar
+     */
+    void stop() {
+        ACTIVE.remove(this);
+    }
+
+    /**
+     * Envuelve el cuerpo de la respuesta para anotar cada lectura
+     */
+    Source watch(Source source) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                readStarted(System.nanoTime());
+                long read = 0;
+                try {
+                    read = super.read(sink, byteCount);
+                    return read;
+                } finally {
+                    readFinished(read);
+                }
+            }
+        };
+    }
+
+    /**
+     * Envuelve el destino de un cuerpo que entrega el transporte: cada bloque cierra una
+     * espera y su escritura abre la siguiente. La primera espera empieza al envolverlo.
+     */
+    HttpTransport.BodySink watch(HttpTransport.BodySink sink) {
+        readStarted(System.nanoTime());
+        return data -> {
+            readFinished(data.remaining());
+            sink.write(data);
+            readStarted(System.nanoTime());
+        };
+    }
+
+    /**
+     * Anota que la descarga empieza a esperar datos de la red
+     */
+    void readStarted(long now) {
+        readStartedAt = now;
+        reading = true;
+    }
+
+    /**
+     * Anota el fin de una espera de datos y los bytes recibidos en ella
+     */
+    void readFinished(long bytes) {
+        if (bytes > 0) {
+            bytesReceived += bytes;
+        }
+        reading = false;
+    }
+
+    boolean isStalled() {
+        return stallReason != null;
+    }
+
+    String getStallReason() {
+        return stallReason;
+    }
+
+    private static void checkAll() {
+        long now = System.nanoTime();
+        for (StallDetector detector : ACTIVE) {
+            try {
+                detector.check(now);
+            } catch (RuntimeException e) {
+                System.err.println("Error vigilando descarga: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Actualiza la velocidad media y aborta la transferencia si está estancada
+     * @param now Instante de la revisión (System.nanoTime)
+     */
+    void check(long now) {
+        if (stallReason != null) {
+            return;
+        }
+
+        long total = bytesReceived;
+        long elapsed = now - lastCheck;
+        if (elapsed > 0 && total > 0) {
+            double sample = (total - lastBytes) * 1e9 / elapsed;
+            bytesPerSecond = bytesPerSecond < 0 ? sample : bytesPerSecond + EWMA_ALPHA * (sample - bytesPerSecond);
+        }
+        lastBytes = total;
+        lastCheck = now;
+
+        if (!reading) {
+            // Esperando al disco o a un lector: no es culpa de la conexión
+            return;
+        }
+
+        long idleTimeout = policy.idleTimeout(bytesPerSecond).toNanos();
+        if (now - readStartedAt > idleTimeout) {
+            stall("Conexión estancada: sin datos durante " + idleTimeout / 1_000_000_000.0 + " s");
+            return;
+        }
+
+        if (bytesPerSecond >= 0 && bytesPerSecond < policy.getMinBytesPerSecond()) {
+            if (slowSince == 0) {
+                slowSince = now;
+            } else if (now - slowSince > policy.getLowRateWindow().toNanos()) {
+                stall("Conexión estancada: " + FileUtils.formatBytes((long) bytesPerSecond) + "/s durante "
+                        + policy.getLowRateWindow().toSeconds() + " s");
+            }
+        } else {
+            slowSince = 0;
+        }
+    }
+
+    private void stall(String reason) {
+        stallReason = reason;
+        ACTIVE.remove(this);
+        abort.run();
+    }
+}
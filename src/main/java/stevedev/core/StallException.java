@@ -0,0 +1,16 @@
+package stevedev.core;
+
+import java.io.InterruptedIOException;
+
+/**
+ * La conexión se abortó por estar estancada: no llegaban datos o llegaban por debajo
+ * de la velocidad mínima. Es un error transitorio y la descarga se reintenta.
+ */
+public class StallException extends InterruptedIOException {
+    private static final long serialVersionUID = 1L;
+
+    public StallException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+    }
+}
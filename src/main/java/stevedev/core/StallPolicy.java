@@ -0,0 +1,75 @@
+package stevedev.core;
+
+import java.time.Duration;
+
+/**
+ * Criterios para dar por estancada una conexión.
+ *
+ * Una conexión está estancada si una lectura espera datos más que el timeout de
+ * inactividad, o si su velocidad media se mantiene por debajo del mínimo durante toda
+ * la ventana. El timeout de inactividad se adapta a la velocidad observada: con una
+ * conexión rápida un silencio de pocos segundos ya es sospechoso, con una lenta se le da
+ * más margen. Antes del primer byte (conexión y cabeceras) se aplica un timeout fijo.
+ */
+public class StallPolicy {
+    /** Bloques de referencia para el timeout adaptativo: los que caben en el anillo de escritura */
+    private static final long REFERENCE_BYTES = 16L * 64 * 1024;
+
+    private final long minBytesPerSecond;
+    private final Duration lowRateWindow;
+    private final Duration firstByteTimeout;
+    private final Duration minIdleTimeout;
+    private final Duration maxIdleTimeout;
+
+    /**
+     * Constructor
+     * @param minBytesPerSecond Velocidad mínima aceptable (0 desactiva la comprobación de velocidad)
+     * @param lowRateWindow Tiempo seguido por debajo de la velocidad mínima que se tolera
+     * @param firstByteTimeout Espera máxima hasta recibir la respuesta y los primeros datos
+     * @param minIdleTimeout Timeout de inactividad mínimo, para conexiones rápidas
+     * @param maxIdleTimeout Timeout de inactividad máximo, para conexiones lentas
+     */
+    public StallPolicy(long minBytesPerSecond, Duration lowRateWindow, Duration firstByteTimeout,
+            Duration minIdleTimeout, Duration maxIdleTimeout) {
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.lowRateWindow = lowRateWindow;
+        this.firstByteTimeout = firstByteTimeout;
+        this.minIdleTimeout = minIdleTimeout;
+        this.maxIdleTimeout = maxIdleTimeout;
+    }
+
+    /**
+     * Criterios por defecto: menos de 1 KB/s durante 30 s, 30 s hasta el primer byte y
+     * entre 5 s y 60 s de inactividad según la velocidad
+     */
+    public static StallPolicy defaults() {
+        return new StallPolicy(1024, Duration.ofSeconds(30), Duration.ofSeconds(30),
+                Duration.ofSeconds(5), Duration.ofSeconds(60));
+    }
+
+    public long getMinBytesPerSecond() {
+        return minBytesPerSecond;
+    }
+
+    public Duration getLowRateWindow() {
+        return lowRateWindow;
+    }
+
+    /**
+     * Timeout de inactividad para la velocidad observada: el tiempo que se tardaría en
+     * recibir un anillo de escritura completo a esa velocidad, acotado entre el mínimo y el
+     * máximo
+     * @param bytesPerSecond Velocidad media observada, o un valor negativo si aún no hay datos
+     */
+    public Duration idleTimeout(double bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            return firstByteTimeout;
+        }
+        if (bytesPerSecond == 0) {
+            return maxIdleTimeout;
+        }
+
+        long millis = (long) (REFERENCE_BYTES * 1000 / bytesPerSecond);
+        return Duration.ofMillis(Math.max(minIdleTimeout.toMillis(), Math.min(maxIdleTimeout.toMillis(), millis)));
+    }
+}
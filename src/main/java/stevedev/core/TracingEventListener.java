@@ -0,0 +1,91 @@
+package stevedev.core;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import stevedev.model.DownloadTrace;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * EventListener de una llamada: anota en la traza de la descarga el tiempo de DNS, TCP y
+ * TLS de las conexiones nuevas, y avisa al contador de reutilización del transporte.
+ *
+ * OkHttp anida la negociación TLS dentro de la conexión, así que a la fase de conexión se
+ * le descuenta la parte de TLS. Cada llamada tiene su instancia y sus eventos llegan en
+ * orden, por lo que los instantes de inicio no necesitan sincronización.
+ */
+final class TracingEventListener extends EventListener {
+    private final DownloadTrace trace;
+    private final ConnectionReuseListener reuseListener;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long tlsNanos;
+
+    /**
+     * Constructor
+     * @param trace Traza de la descarga (null si la petición no tiene)
+     * @param reuseListener Contador de conexiones del transporte
+     */
+    TracingEventListener(DownloadTrace trace, ConnectionReuseListener reuseListener) {
+        this.trace = trace;
+        this.reuseListener = reuseListener;
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        add(DownloadTrace.Phase.DNS, System.nanoTime() - dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+        tlsNanos = 0;
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        tlsNanos = System.nanoTime() - secureConnectStart;
+        add(DownloadTrace.Phase.TLS, tlsNanos);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        add(DownloadTrace.Phase.CONNECT, System.nanoTime() - connectStart - tlsNanos);
+        reuseListener.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+            IOException ioe) {
+        add(DownloadTrace.Phase.CONNECT, System.nanoTime() - connectStart - tlsNanos);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        reuseListener.connectionAcquired(call, connection);
+    }
+
+    private void add(DownloadTrace.Phase phase, long nanos) {
+        if (trace != null) {
+            trace.add(phase, nanos);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Almacén de validadores HTTP (ETag / Last-Modified) por URL.
+ *
+ * Permite repetir una descarga como petición condicional: si el servidor responde
+ * 304 Not Modified se conserva el archivo local y su hash sin volver a transferirlo.
+ * Cada entrada recuerda también el archivo que produjo, y sólo se usa mientras ese
+ * archivo siga intacto. El índice se persiste en JSON con {@link JsonIndex}.
+ */
+public class ValidatorStore {
+    private static final String INDEX_FILE = "validators.json";
+
+    private final JsonIndex<Entry> store;
+    private final Map<String, Entry> validators;
+
+    /**
+     * Constructor
+     * @param directory Directorio donde se guarda el índice
+     */
+    public ValidatorStore(String directory) {
+        this.store = new JsonIndex<>(Paths.get(directory, INDEX_FILE), Entry.class, "validadores");
+        this.validators = store.entries();
+    }
+
+    /**
+     * Obtiene los validadores de una URL si el archivo asociado sigue intacto
+     * @param url URL descargada anteriormente
+     * @return Entrada con validadores o null si no hay una utilizable
+     */
+    public Entry lookup(String url) {
+        Entry entry = validators.get(url);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!JsonIndex.isUnchanged(entry.getPath(), entry.getSize(), entry.getFileTime())) {
+            validators.remove(url, entry);
+            store.changed();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Registra los validadores de una descarga completada
+     * @param url URL descargada
+     * @param etag Valor de la cabecera ETag (puede ser null)
+     * @param lastModified Valor de la cabecera Last-Modified (puede ser null)
+     * @param filePath Archivo descargado
+     * @param hash Hash calculado del archivo
+     */
+    public void record(String url, String etag, String lastModified, String filePath, String hash) {
+        if (put(url, etag, lastModified, filePath, hash)) {
+            store.changed();
+        }
+    }
+
+    /**
+     * Registra los validadores de varias descargas completadas de una vez.
+     * Usa el ETag y Last-Modified que cada item recibió en su respuesta.
+     * @param items Descargas terminadas (las que no estén completadas se ignoran)
+     */
+    public void recordAll(List<DownloadItem> items) {
+        boolean changed = false;
+        for (DownloadItem item : items) {
+            // Sin validadores no se borra nada: la entrada anterior deja de ser válida sola
+            // en cuanto el archivo cambia
+            boolean hasValidators = item.getEtag() != null || item.getLastModified() != null;
+            if (item.getStatus() == DownloadItem.DownloadStatus.COMPLETED && hasValidators && item.hasLocalFile()) {
+                changed |= put(item.getUrl(), item.getEtag(), item.getLastModified(),
+                        item.getDestinationPath(), item.getHash());
+            }
+        }
+        if (changed) {
+            store.changed();
+        }
+    }
+
+    /**
+     * Actualiza la entrada de una URL en memoria
+     * @return true si el índice cambió
+     */
+    private boolean put(String url, String etag, String lastModified, String filePath, String hash) {
+        if (etag == null && lastModified == null) {
+            // Sin validadores no es posible una petición condicional
+            return validators.remove(url) != null;
+        }
+
+        try {
+            Path path = Paths.get(filePath).toAbsolutePath().normalize();
+            Entry entry = new Entry();
+            entry.setEtag(etag);
+            entry.setLastModified(lastModified);
+            entry.setPath(path.toString());
+            entry.setSize(Files.size(path));
+            entry.setFileTime(Files.getLastModifiedTime(path).toMillis());
+            entry.setHash(hash);
+
+            validators.put(url, entry);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error registrando validadores: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Elimina los validadores de una URL
+     */
+    public void remove(String url) {
+        if (validators.remove(url) != null) {
+            store.changed();
+        }
+    }
+
+    /**
+     * Escribe ya en disco los cambios del índice que aún no se guardaron
+     */
+    public void flush() {
+        store.flush();
+    }
+
+    /**
+     * Validadores de una URL y datos del archivo que produjo
+     */
+    public static class Entry {
+        private String etag;
+        private String lastModified;
+        private String path;
+        private long size;
+        private long fileTime;
+        private String hash;
+
+        public String getEtag() { return etag; }
+        public void setEtag(String etag) { this.etag = etag; }
+        public String getLastModified() { return lastModified; }
+        public void setLastModified(String lastModified) { this.lastModified = lastModified; }
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+        public long getFileTime() { return fileTime; }
+        public void setFileTime(long fileTime) { this.fileTime = fileTime; }
+        public String getHash() { return hash; }
+        public void setHash(String hash) { this.hash = hash; }
+    }
+}
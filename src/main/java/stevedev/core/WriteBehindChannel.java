@@ -0,0 +1,367 @@
+package stevedev.core;
+
+import stevedev.metrics.jfr.ChunkWriteEvent;
+import stevedev.util.FileUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de escritura diferida (write-behind) hacia un archivo.
+ *
+ * El hilo de red llena buffers y los encola en un anillo acotado; un hilo escritor
+ * dedicado por disco los vacía con escrituras agrupadas (gathering writes). El hilo de
+ * red sólo se bloquea cuando el anillo está lleno, de modo que una pausa breve del disco
+ * no detiene la lectura del socket. Los buffers del anillo se piden al {@link BufferPool}
+ * compartido y se devuelven al cerrar.
+ */
+class WriteBehindChannel implements Closeable {
+    static final int DEFAULT_RING_CAPACITY = 16;
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_BATCH = 16;
+    private static final int MAX_BATCHES_PER_TURN = 4;
+    private static final Map<Object, ExecutorService> DISK_WRITERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BufferPool bufferPool;
+    private final ExecutorService diskWriter;
+    private final BlockingQueue<ByteBuffer> ready;
+    private final BlockingQueue<ByteBuffer> free;
+    private final int ringCapacity;
+    private final int bufferSize;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong committedBytes = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private long preallocatedSize;
+
+    WriteBehindChannel(Path path) throws IOException {
+        this(path, DEFAULT_RING_CAPACITY, DEFAULT_BUFFER_SIZE);
+    }
+
+    WriteBehindChannel(Path path, int ringCapacity, int bufferSize) throws IOException {
+        this(path, ringCapacity, bufferSize, 0);
+    }
+
+    /**
+     * Abre el archivo para continuar una descarga interrumpida: conserva los primeros
+     * bytes, descarta lo que haya detrás y escribe a partir de ahí
+     * @param resumeFrom Bytes ya escritos que se conservan (0 para empezar de cero)
+     */
+    WriteBehindChannel(Path path, long resumeFrom) throws IOException {
+        this(path, DEFAULT_RING_CAPACITY, DEFAULT_BUFFER_SIZE, resumeFrom);
+    }
+
+    private WriteBehindChannel(Path path, int ringCapacity, int bufferSize, long resumeFrom) throws IOException {
+        this.path = path;
+        this.bufferPool = BufferPool.shared();
+        this.ringCapacity = ringCapacity;
+        this.bufferSize = bufferSize;
+        this.ready = new ArrayBlockingQueue<>(ringCapacity);
+        this.free = new ArrayBlockingQueue<>(ringCapacity);
+        if (resumeFrom > 0) {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(resumeFrom);
+            channel.position(resumeFrom);
+            committedBytes.set(resumeFrom);
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        this.diskWriter = writerFor(path);
+    }
+
+    /**
+     * Reserva de una vez el tamaño final del archivo para que no crezca a trozos durante la
+     * transferencia. Falla antes de descargar nada si el disco no tiene sitio.
+     * @param size Tamaño esperado del archivo (Content-Length)
+     */
+    void preallocate(long size) throws IOException {
+        if (size <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            reserveSpace(channel, path, size);
+        }
+        preallocatedSize = size;
+    }
+
+    /**
+     * Comprueba que hay sitio y extiende el archivo hasta su tamaño final. También la usan
+     * las descargas por tramos, que escriben en cualquier orden sobre el archivo reservado.
+     * @param channel Canal abierto para escritura sobre {@code path}
+     * @param size Tamaño final del archivo
+     */
+    static void reserveSpace(FileChannel channel, Path path, long size) throws IOException {
+        checkUsableSpace(path, size);
+
+        // Java no expone fallocate: extender el archivo hasta su tamaño final (archivo disperso)
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Falla si el disco del archivo no tiene sitio para los bytes indicados
+     */
+    static void checkUsableSpace(Path path, long size) throws IOException {
+        long available = FileUtils.getUsableSpace(path);
+        if (size > available) {
+            throw new IOException("Espacio insuficiente en disco: se necesitan " + FileUtils.formatBytes(size) +
+                    " y hay " + FileUtils.formatBytes(available) + " disponibles");
+        }
+    }
+
+    /**
+     * Obtiene un buffer vacío para llenarlo con datos de la red.
+     * Bloquea sólo si todos los buffers del anillo están pendientes de escribirse.
+     */
+    ByteBuffer acquireBuffer() throws IOException {
+        try {
+            while (true) {
+                ByteBuffer buffer = tryAcquireBuffer();
+                if (buffer == null) {
+                    buffer = free.poll(10, TimeUnit.MILLISECONDS);
+                }
+                checkFailure();
+
+                if (buffer != null) {
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando al disco");
+        }
+    }
+
+    /**
+     * Obtiene un buffer vacío sin esperar, para quien no puede bloquear su hilo
+     * @return Buffer o null si todos los del anillo están pendientes de escribirse
+     */
+    ByteBuffer tryAcquireBuffer() throws IOException {
+        checkFailure();
+
+        ByteBuffer buffer = free.poll();
+        if (buffer == null && allocated.get() < ringCapacity) {
+            // Crecer el anillo sólo si el pool global tiene memoria disponible
+            buffer = bufferPool.tryAcquire(bufferSize);
+            if (buffer != null) {
+                allocated.incrementAndGet();
+            }
+        }
+        if (buffer != null) {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /**
+     * Devuelve al anillo un buffer obtenido con acquireBuffer que no llegó a encolarse
+     */
+    void recycle(ByteBuffer buffer) {
+        free.offer(buffer);
+        if (closed) {
+            returnBuffersToPool();
+        }
+    }
+
+    /**
+     * Encola un buffer lleno (ya preparado con flip) para escribirse en orden
+     */
+    void submit(ByteBuffer buffer) throws IOException {
+        checkFailure();
+        if (!buffer.hasRemaining()) {
+            recycle(buffer);
+            return;
+        }
+
+        pending.incrementAndGet();
+        ready.offer(buffer);
+        scheduleDrain();
+    }
+
+    /**
+     * Bytes ya escritos en el archivo, incluidos los conservados al reanudar
+     */
+    long getCommittedBytes() {
+        return committedBytes.get();
+    }
+
+    /**
+     * Espera a que se escriban todos los buffers encolados y cierra el archivo
+     */
+    void finish() throws IOException {
+        try {
+            synchronized (this) {
+                while (pending.get() > 0 && failure == null) {
+                    wait(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando al disco");
+        } finally {
+            close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Cierra el archivo descartando lo que quede pendiente
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (this) {
+            try {
+                if (preallocatedSize > 0 && channel.size() > committedBytes.get()) {
+                    // Recortar lo reservado que no llegó a escribirse
+                    channel.truncate(committedBytes.get());
+                }
+            } finally {
+                channel.close();
+            }
+        }
+        returnBuffersToPool();
+    }
+
+    /**
+     * Devuelve al pool global los buffers del anillo que no estén en uso
+     */
+    private void returnBuffersToPool() {
+        ByteBuffer buffer;
+        while ((buffer = ready.poll()) != null) {
+            bufferPool.release(buffer);
+        }
+        while ((buffer = free.poll()) != null) {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            diskWriter.execute(this::drain);
+        }
+    }
+
+    /**
+     * Vacía el anillo en el hilo escritor del disco. Tras unos cuantos lotes cede el
+     * turno para no acaparar el disco frente a otras descargas.
+     */
+    private void drain() {
+        List<ByteBuffer> batch = new ArrayList<>(MAX_BATCH);
+        for (int turn = 0; turn < MAX_BATCHES_PER_TURN; turn++) {
+            ready.drainTo(batch, MAX_BATCH);
+            if (batch.isEmpty()) {
+                break;
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+
+        drainScheduled.set(false);
+        if (!ready.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void writeBatch(List<ByteBuffer> batch) {
+        try {
+            if (failure == null && !closed) {
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                ChunkWriteEvent event = new ChunkWriteEvent();
+                event.begin();
+                long batchBytes = remaining;
+                synchronized (this) {
+                    while (remaining > 0) {
+                        long written = channel.write(buffers);
+                        remaining -= written;
+                        committedBytes.addAndGet(written);
+                    }
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.path = path.toString();
+                    event.bytes = batchBytes;
+                    event.commit();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (ByteBuffer buffer : batch) {
+                free.offer(buffer);
+            }
+            pending.addAndGet(-batch.size());
+            if (closed) {
+                returnBuffersToPool();
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException error = failure;
+        if (error != null) {
+            throw new IOException("Error escribiendo en disco: " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Obtiene (o crea) el hilo escritor asociado al disco del archivo
+     */
+    private static ExecutorService writerFor(Path path) {
+        Object disk;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            disk = Files.getFileStore(parent != null ? parent : path.toAbsolutePath());
+        } catch (IOException e) {
+            // Disco desconocido: compartir un escritor común
+            disk = "default";
+        }
+        return DISK_WRITERS.computeIfAbsent(disk, key -> newWriter());
+    }
+
+    private static ExecutorService newWriter() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "disk-writer-" + WRITER_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
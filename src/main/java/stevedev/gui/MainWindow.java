@@ -9,9 +9,12 @@ import javafx.scene.layout.*;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import stevedev.core.ConnectionStats;
 import stevedev.core.DownloadManager;
+import stevedev.metrics.jfr.FxUpdateEvent;
 import stevedev.model.DownloadItem;
 import stevedev.util.FileUtils;
+import stevedev.util.ProgressListener;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -49,7 +52,17 @@ public class MainWindow {
         this.downloadItems = new ArrayList<>();
         
         // Configurar listener global
-        downloadManager.setGlobalProgressListener(this::onDownloadProgress);
+        downloadManager.setGlobalProgressListener(new ProgressListener() {
+            @Override
+            public void onProgressUpdate(DownloadItem item) {
+                onDownloadProgress(item);
+            }
+
+            @Override
+            public void onProgressBatch(List<DownloadItem> items) {
+                onDownloadProgressBatch(items);
+            }
+        });
         
         initializeComponents();
         layoutComponents();
@@ -327,31 +340,66 @@ public class MainWindow {
 
     private void onDownloadProgress(DownloadItem item) {
         Platform.runLater(() -> {
-            DownloadItemPanel panel = downloadPanels.get(item);
-            if (panel != null) {
-                panel.updateDisplay();
-                
-                // Mostrar error si es necesario
-                if (item.getErrorMessage() != null) {
-                    panel.showError(item.getErrorMessage());
-                }
-            }
+            FxUpdateEvent event = new FxUpdateEvent();
+            event.begin();
+            refreshPanel(item);
+            updateGlobalStatus();
+            commitFxUpdate(event, 1);
+        });
+    }
+
+    /**
+     * Actualiza varios paneles con una sola tarea en el hilo de la interfaz
+     */
+    private void onDownloadProgressBatch(List<DownloadItem> items) {
+        Platform.runLater(() -> {
+            FxUpdateEvent event = new FxUpdateEvent();
+            event.begin();
+            items.forEach(this::refreshPanel);
             updateGlobalStatus();
+            commitFxUpdate(event, items.size());
         });
     }
 
+    private static void commitFxUpdate(FxUpdateEvent event, int items) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.items = items;
+            event.commit();
+        }
+    }
+
+    private void refreshPanel(DownloadItem item) {
+        DownloadItemPanel panel = downloadPanels.get(item);
+        if (panel != null) {
+            panel.updateDisplay();
+            
+            // Mostrar error si es necesario
+            if (item.getErrorMessage() != null) {
+                panel.showError(item.getErrorMessage());
+            }
+        }
+    }
+
     private void updateGlobalStatus() {
-        int activeDownloads = (int) downloadItems.stream()
+        int activeDownloads = downloadItems.stream()
                 .mapToInt(item -> downloadManager.isDownloadActive(item) ? 1 : 0)
                 .sum();
         
-        int completedDownloads = (int) downloadItems.stream()
+        int completedDownloads = downloadItems.stream()
                 .mapToInt(item -> item.getStatus() == DownloadItem.DownloadStatus.COMPLETED ? 1 : 0)
                 .sum();
         
         if (activeDownloads > 0) {
-            statusLabel.setText(String.format("Descargando %d archivo(s)... | %d completados", 
-                    activeDownloads, completedDownloads));
+            String status = String.format("Descargando %d archivo(s)... | %d completados",
+                    activeDownloads, completedDownloads);
+            ConnectionStats connections = downloadManager.getConnectionStats();
+            if (connections != null) {
+                status += String.format(" | Conexiones: %d activas, %d ociosas, %.0f%% reutilizadas",
+                        connections.getActiveConnections(), connections.getIdleConnections(),
+                        connections.getReuseRatio() * 100);
+            }
+            statusLabel.setText(status);
             globalProgressBar.setVisible(true);
             
             // Calcular progreso global aproximado
@@ -0,0 +1,28 @@
+package stevedev.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador que sólo crece. Sumar no usa cerrojos y apenas compite entre hilos, así que
+ * se puede llamar desde el bucle de transferencia.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Suma una cantidad (las negativas se ignoran)
+     */
+    public void add(long amount) {
+        if (amount > 0) {
+            value.add(amount);
+        }
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,190 @@
+package stevedev.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Conjunto de métricas con nombre: contadores, medidores e histogramas.
+ *
+ * Registrar una métrica devuelve el objeto que la actualiza, y registrar dos veces el
+ * mismo nombre devuelve la misma métrica. Actualizar no pasa por el registro ni usa
+ * cerrojos; el registro sólo interviene al leer, cuando {@link #scrape()} escribe todas
+ * las métricas en el formato de texto de Prometheus.
+ */
+public final class MetricsRegistry {
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registra (o devuelve) un contador
+     * @param name Nombre de la métrica; por convención de Prometheus termina en _total
+     * @param help Descripción de una línea
+     */
+    public Counter counter(String name, String help) {
+        return register(name, new CounterMetric(help, new Counter()), CounterMetric.class).counter;
+    }
+
+    /**
+     * Registra un medidor cuyo valor se calcula al leerlo (descargas activas, tamaño de cola...)
+     * @param value Se llama en cada lectura, desde el hilo que lee
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(name, new GaugeMetric(help, value), GaugeMetric.class);
+    }
+
+    /**
+     * Registra (o devuelve) un histograma
+     * @param scale Factor que pasa los valores registrados a la unidad publicada
+     *              (1e-9 para registrar nanosegundos y publicar segundos)
+     * @param buckets Límites superiores de las cubetas publicadas, en la unidad publicada y
+     *                en orden creciente; se añade siempre la cubeta +Inf
+     */
+    public Histogram histogram(String name, String help, double scale, double... buckets) {
+        return register(name, new HistogramMetric(help, new Histogram(), scale, buckets), HistogramMetric.class).histogram;
+    }
+
+    private <T extends Metric> T register(String name, T metric, Class<T> type) {
+        if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) {
+            throw new IllegalArgumentException("Nombre de métrica no válido: " + name);
+        }
+        Metric existing = metrics.putIfAbsent(name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("La métrica " + name + " ya existe con otro tipo");
+        }
+        return type.cast(existing);
+    }
+
+    /**
+     * Todas las métricas en el formato de texto de Prometheus (versión 0.0.4), por nombre
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            Metric metric = entry.getValue();
+            text.append("# HELP ").append(entry.getKey()).append(' ').append(escapeHelp(metric.help)).append('\n');
+            text.append("# TYPE ").append(entry.getKey()).append(' ').append(metric.type()).append('\n');
+            metric.write(entry.getKey(), text);
+        }
+        return text.toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        String text = String.format(Locale.ROOT, "%.6g", value);
+        return text.indexOf('.') >= 0 ? text.replaceAll("\\.?0+(e|$)", "$1") : text;
+    }
+
+    private abstract static class Metric {
+        final String help;
+
+        Metric(String help) {
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void write(String name, StringBuilder text);
+    }
+
+    private static final class CounterMetric extends Metric {
+        final Counter counter;
+
+        CounterMetric(String help, Counter counter) {
+            super(help);
+            this.counter = counter;
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void write(String name, StringBuilder text) {
+            text.append(name).append(' ').append(counter.get()).append('\n');
+        }
+    }
+
+    private static final class GaugeMetric extends Metric {
+        final DoubleSupplier value;
+
+        GaugeMetric(String help, DoubleSupplier value) {
+            super(help);
+            this.value = value;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void write(String name, StringBuilder text) {
+            double current;
+            try {
+                current = value.getAsDouble();
+            } catch (RuntimeException e) {
+                System.err.println("Error leyendo la métrica " + name + ": " + e.getMessage());
+                current = Double.NaN;
+            }
+            text.append(name).append(' ').append(formatValue(current)).append('\n');
+        }
+    }
+
+    /**
+     * Histograma publicado con cubetas acumuladas. Cada cubeta cuenta también los valores
+     * de su cubeta interna, así que puede incluir alguno hasta un 3 % por encima del límite.
+     */
+    private static final class HistogramMetric extends Metric {
+        final Histogram histogram;
+        final double scale;
+        final double[] buckets;
+
+        HistogramMetric(String help, Histogram histogram, double scale, double[] buckets) {
+            super(help);
+            this.histogram = histogram;
+            this.scale = scale;
+            this.buckets = buckets.clone();
+            for (int i = 1; i < this.buckets.length; i++) {
+                if (this.buckets[i] <= this.buckets[i - 1]) {
+                    throw new IllegalArgumentException("Las cubetas deben ir en orden creciente");
+                }
+            }
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+
+        @Override
+        void write(String name, StringBuilder text) {
+            // Las cubetas antes que la cuenta: un registro a medias nunca deja +Inf por debajo
+            for (double bucket : buckets) {
+                long count = histogram.getCountAtOrBelow(Math.round(bucket / scale));
+                text.append(name).append("_bucket{le=\"").append(formatValue(bucket)).append("\"} ")
+                        .append(count).append('\n');
+            }
+            long total = histogram.getCountAtOrBelow(Long.MAX_VALUE);
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+            text.append(name).append("_sum ").append(formatValue(histogram.getSum() * scale)).append('\n');
+            text.append(name).append("_count ").append(total).append('\n');
+        }
+    }
+}
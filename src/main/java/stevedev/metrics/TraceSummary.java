@@ -0,0 +1,99 @@
+package stevedev.metrics;
+
+import stevedev.model.DownloadTrace;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Reparto del tiempo de un lote de descargas entre fases.
+ *
+ * Cada descarga terminada aporta su tiempo total y el de cada fase a un histograma; la
+ * tabla de {@link #format()} muestra, por fase, cuántas descargas pasaron por ella, el
+ * tiempo acumulado, qué parte del tiempo total supone y sus percentiles. La fila
+ * "sin fase" es lo que no cubre ninguna (cola, extracción, avisos de progreso).
+ */
+public final class TraceSummary {
+    private final Histogram total = new Histogram();
+    private final Map<DownloadTrace.Phase, Histogram> phases = new EnumMap<>(DownloadTrace.Phase.class);
+
+    public TraceSummary() {
+        for (DownloadTrace.Phase phase : DownloadTrace.Phase.values()) {
+            phases.put(phase, new Histogram());
+        }
+    }
+
+    /**
+     * Suma la traza de una descarga terminada; se puede llamar desde cualquier hilo
+     */
+    public void record(DownloadTrace trace) {
+        long elapsed = trace.getElapsedNanos();
+        if (elapsed <= 0) {
+            return;
+        }
+        total.record(elapsed);
+        for (Map.Entry<DownloadTrace.Phase, Histogram> entry : phases.entrySet()) {
+            long nanos = trace.getNanos(entry.getKey());
+            if (nanos > 0) {
+                entry.getValue().record(nanos);
+            }
+        }
+    }
+
+    public long getDownloads() {
+        return total.getCount();
+    }
+
+    /**
+     * Histograma del tiempo total de cada descarga (nanosegundos)
+     */
+    public Histogram getTotal() {
+        return total;
+    }
+
+    /**
+     * Histograma de una fase (nanosegundos, sólo descargas que pasaron por ella)
+     */
+    public Histogram getPhase(DownloadTrace.Phase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Tabla con el reparto del tiempo por fase
+     */
+    public String format() {
+        StringBuilder table = new StringBuilder(String.format("%-12s %10s %10s %9s %9s %9s%n",
+                "Fase", "Descargas", "Total s", "% tiempo", "p50 ms", "p99 ms"));
+        long totalNanos = total.getSum();
+        appendRow(table, "total", total, totalNanos);
+
+        long covered = 0;
+        for (Map.Entry<DownloadTrace.Phase, Histogram> entry : phases.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getCount() > 0) {
+                appendRow(table, entry.getKey().name().toLowerCase(), histogram, totalNanos);
+                covered += histogram.getSum();
+            }
+        }
+
+        long uncovered = Math.max(0, totalNanos - covered);
+        table.append(String.format("%-12s %10s %10.2f %8.1f%%%n", "sin fase", "",
+                uncovered / 1e9, share(uncovered, totalNanos)));
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, String name, Histogram histogram, long totalNanos) {
+        table.append(String.format("%-12s %10d %10.2f %8.1f%% %9.1f %9.1f%n", name, histogram.getCount(),
+                histogram.getSum() / 1e9, share(histogram.getSum(), totalNanos),
+                histogram.getValueAtQuantile(0.50) / 1e6, histogram.getValueAtQuantile(0.99) / 1e6));
+    }
+
+    private static double share(long part, long whole) {
+        return whole > 0 ? part * 100.0 / whole : 0;
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
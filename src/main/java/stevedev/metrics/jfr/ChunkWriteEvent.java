@@ -0,0 +1,26 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Escritura de un bloque en disco más lenta que el umbral (10 ms por defecto, ajustable
+ * en la configuración de la grabación). Las escrituras rápidas no llegan a registrarse.
+ */
+@Name("stevedev.ChunkWrite")
+@Label("Escritura lenta en disco")
+@Category({"Gestor de descargas", "Disco"})
+@StackTrace(false)
+@Threshold("10 ms")
+public final class ChunkWriteEvent extends jdk.jfr.Event {
+    @Label("Archivo")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,33 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Una descarga completa, desde que empieza a transferir hasta que termina con cualquier
+ * resultado. Su duración se puede cruzar con pausas de GC y muestras de CPU del mismo periodo.
+ */
+@Name("stevedev.Download")
+@Label("Descarga")
+@Category({"Gestor de descargas", "Descargas"})
+@StackTrace(false)
+public final class DownloadEvent extends jdk.jfr.Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Archivo")
+    public String fileName;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Estado")
+    public String status;
+
+    @Label("Reintentos")
+    public int retries;
+}
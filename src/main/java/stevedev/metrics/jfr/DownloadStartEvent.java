@@ -0,0 +1,28 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Una descarga empieza a transferir (tras la cola y el sondeo)
+ */
+@Name("stevedev.DownloadStart")
+@Label("Inicio de descarga")
+@Category({"Gestor de descargas", "Descargas"})
+@StackTrace(false)
+public final class DownloadStartEvent extends jdk.jfr.Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Archivo")
+    public String fileName;
+
+    @Label("Tamaño esperado")
+    @Description("Tamaño anunciado por el sondeo, o -1 si no se conoce")
+    @DataAmount
+    public long expectedBytes;
+}
@@ -0,0 +1,18 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Tarea de actualización de la interfaz en el hilo de JavaFX
+ */
+@Name("stevedev.FxUpdate")
+@Label("Actualización de la interfaz")
+@Category({"Gestor de descargas", "Interfaz"})
+@StackTrace(false)
+public final class FxUpdateEvent extends jdk.jfr.Event {
+    @Label("Descargas actualizadas")
+    public int items;
+}
@@ -0,0 +1,26 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Relectura de un archivo para calcular o verificar su hash
+ */
+@Name("stevedev.Hash")
+@Label("Hash de archivo")
+@Category({"Gestor de descargas", "Disco"})
+@StackTrace(false)
+public final class HashEvent extends jdk.jfr.Event {
+    @Label("Archivo")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Verificación")
+    public boolean verification;
+}
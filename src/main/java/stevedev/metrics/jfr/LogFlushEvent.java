@@ -0,0 +1,18 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Escritura del registro de descargas (JSON y CSV)
+ */
+@Name("stevedev.LogFlush")
+@Label("Escritura del registro")
+@Category({"Gestor de descargas", "Disco"})
+@StackTrace(false)
+public final class LogFlushEvent extends jdk.jfr.Event {
+    @Label("Entradas")
+    public int entries;
+}
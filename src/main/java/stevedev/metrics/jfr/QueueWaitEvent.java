@@ -0,0 +1,24 @@
+package stevedev.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Tiempo de una descarga en la cola del gestor, desde que se pide hasta que se admite
+ */
+@Name("stevedev.QueueWait")
+@Label("Espera en cola")
+@Category({"Gestor de descargas", "Planificación"})
+@StackTrace(false)
+public final class QueueWaitEvent extends jdk.jfr.Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Carril de archivos pequeños")
+    public boolean smallFileLane;
+
+    @Label("En cola al salir")
+    public int queued;
+}
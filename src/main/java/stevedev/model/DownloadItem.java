@@ -1,6 +1,10 @@
 package stevedev.model;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Representa un elemento de descarga con toda su información
@@ -19,6 +23,20 @@ public class DownloadItem {
     private LocalDateTime endTime;
     private String errorMessage;
     private boolean cancelled;
+    private String contentType;
+    private String etag;
+    private String lastModified;
+    private boolean rangeSupported;
+    private boolean probed;
+    private String group;
+    private long memoryLimit;
+    private ByteBuffer content;
+    private String extractTo;
+    private boolean keepArchive = true;
+    private int extractedEntries;
+    private int retries;
+    private List<String> mirrors = new ArrayList<>();
+    private final DownloadTrace trace = new DownloadTrace();
 
     public enum DownloadStatus {
         PENDING,
@@ -153,6 +171,158 @@ public class DownloadItem {
         }
     }
 
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public boolean isRangeSupported() {
+        return rangeSupported;
+    }
+
+    public void setRangeSupported(boolean rangeSupported) {
+        this.rangeSupported = rangeSupported;
+    }
+
+    public boolean isProbed() {
+        return probed;
+    }
+
+    public void setProbed(boolean probed) {
+        this.probed = probed;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    /**
+     * Tamaño máximo que se recibe en memoria en lugar de escribirse en el destino.
+     * 0 indica una descarga normal a disco.
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Contenido recibido en memoria, o null si la descarga se guardó en disco.
+     * Cada llamada devuelve una vista de sólo lectura con su propia posición.
+     */
+    public ByteBuffer getContent() {
+        return content != null ? content.asReadOnlyBuffer() : null;
+    }
+
+    public void setContent(ByteBuffer content) {
+        this.content = content;
+    }
+
+    /**
+     * Indica si el resultado está en memoria y no en el archivo de destino
+     */
+    public boolean hasContent() {
+        return content != null;
+    }
+
+    /**
+     * Directorio donde se extrae el archivo comprimido mientras se descarga, o null
+     * si no se extrae
+     */
+    public String getExtractTo() {
+        return extractTo;
+    }
+
+    public void setExtractTo(String extractTo) {
+        this.extractTo = extractTo;
+    }
+
+    /**
+     * Indica si al extraer también se guarda el archivo comprimido en el destino
+     */
+    public boolean isKeepArchive() {
+        return keepArchive;
+    }
+
+    public void setKeepArchive(boolean keepArchive) {
+        this.keepArchive = keepArchive;
+    }
+
+    public int getExtractedEntries() {
+        return extractedEntries;
+    }
+
+    public void setExtractedEntries(int extractedEntries) {
+        this.extractedEntries = extractedEntries;
+    }
+
+    /**
+     * URLs alternativas con el mismo contenido. Sólo se usan las que el sondeo confirma
+     * (mismo tamaño y mismo ETag, Last-Modified o hash esperado).
+     */
+    public List<String> getMirrors() {
+        return Collections.unmodifiableList(mirrors);
+    }
+
+    public void setMirrors(List<String> mirrors) {
+        this.mirrors = new ArrayList<>(mirrors);
+    }
+
+    public void addMirror(String mirrorUrl) {
+        mirrors.add(mirrorUrl);
+    }
+
+    /**
+     * Reintentos hechos tras errores transitorios de red
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Tiempo de la descarga repartido por fases
+     */
+    public DownloadTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Indica si el resultado queda en el archivo de destino (no en memoria ni descartado
+     * tras la extracción)
+     */
+    public boolean hasLocalFile() {
+        return content == null && (extractTo == null || keepArchive);
+    }
+
     public String getFormattedSize() {
         return formatBytes(downloadedSize) + " / " + formatBytes(totalSize);
     }
@@ -1,6 +1,7 @@
 package stevedev.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
 
 /**
@@ -128,6 +129,7 @@ public class DownloadLog {
         this.errorMessage = errorMessage;
     }
 
+    @JsonIgnore
     public String getFormattedDuration() {
         if (durationSeconds < 60) {
             return durationSeconds + "s";
@@ -138,6 +140,7 @@ public class DownloadLog {
         }
     }
 
+    @JsonIgnore
     public String getFormattedSize() {
         if (fileSize < 1024) return fileSize + " B";
         int exp = (int) (Math.log(fileSize) / Math.log(1024));
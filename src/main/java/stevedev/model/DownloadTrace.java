@@ -0,0 +1,97 @@
+package stevedev.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tiempo de una descarga repartido por fases.
+ *
+ * Las fases de red las anota el transporte (DNS, conexión TCP y TLS, sólo cuando se abre
+ * una conexión nueva) y el resto la tarea y el gestor. Se acumulan entre reintentos y no se
+ * solapan, así que la suma se compara con el tiempo total y la diferencia es lo que no
+ * pertenece a ninguna fase (cola, extracción, avisos de progreso). En una descarga por
+ * tramos la transferencia es el tiempo de reloj de todas las conexiones juntas.
+ */
+public class DownloadTrace {
+
+    public enum Phase {
+        /** Resolución del nombre del servidor */
+        DNS,
+        /** Conexión TCP */
+        CONNECT,
+        /** Negociación TLS */
+        TLS,
+        /** Desde la petición hasta las cabeceras de la respuesta, sin DNS, TCP ni TLS */
+        FIRST_BYTE,
+        /** Recepción del cuerpo, con su escritura y el hash al vuelo */
+        TRANSFER,
+        /** Relectura del archivo para calcular o verificar el hash */
+        HASH,
+        /** Esperas entre reintentos */
+        RETRY_WAIT,
+        /** Escritura del registro de la descarga */
+        LOG
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    /**
+     * Suma tiempo a una fase; se puede llamar desde cualquier hilo
+     */
+    public void add(Phase phase, long elapsedNanos) {
+        if (elapsedNanos > 0) {
+            nanos.addAndGet(phase.ordinal(), elapsedNanos);
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * Tiempo de establecer conexiones nuevas: DNS, TCP y TLS
+     */
+    public long getConnectionSetupNanos() {
+        return getNanos(Phase.DNS) + getNanos(Phase.CONNECT) + getNanos(Phase.TLS);
+    }
+
+    /**
+     * Anota el inicio de la descarga (sólo la primera vez)
+     */
+    public void markStarted() {
+        if (startedAt == 0) {
+            startedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Anota el final de la descarga; se puede llamar de nuevo si se añaden fases después
+     */
+    public void markFinished() {
+        finishedAt = System.nanoTime();
+    }
+
+    /**
+     * Tiempo total desde el inicio hasta el final anotados, o 0 si falta alguno
+     */
+    public long getElapsedNanos() {
+        return startedAt != 0 && finishedAt >= startedAt ? finishedAt - startedAt : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("DownloadTrace{total=")
+                .append(getElapsedNanos() / 1_000_000).append("ms");
+        for (Phase phase : PHASES) {
+            long value = getNanos(phase);
+            if (value > 0) {
+                text.append(", ").append(phase.name().toLowerCase()).append('=')
+                        .append(value / 1_000_000).append("ms");
+            }
+        }
+        return text.append('}').toString();
+    }
+}
@@ -2,16 +2,21 @@ package stevedev.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import stevedev.model.DownloadItem;
 import stevedev.model.DownloadLog;
 
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Utilidades para manejo de archivos y logs
@@ -19,6 +24,7 @@ import java.util.List;
 public class FileUtils {
     private static final String LOG_DIR = "logs";
     private static final String DOWNLOADS_DIR = "downloads";
+    private static final String CACHE_DIR = "cache";
     private static final ObjectMapper objectMapper;
     
     static {
@@ -33,6 +39,7 @@ public class FileUtils {
         try {
             Files.createDirectories(Paths.get(LOG_DIR));
             Files.createDirectories(Paths.get(DOWNLOADS_DIR));
+            Files.createDirectories(Paths.get(CACHE_DIR));
         } catch (IOException e) {
             System.err.println("Error creando directorios: " + e.getMessage());
         }
@@ -45,10 +52,50 @@ public class FileUtils {
         return DOWNLOADS_DIR;
     }
 
+    /**
+     * Obtiene el directorio de caché (índices locales del gestor)
+     */
+    public static String getCacheDirectory() {
+        return CACHE_DIR;
+    }
+
+    /**
+     * Coloca el contenido de un archivo existente en otra ruta sin descargarlo de nuevo.
+     * Intenta primero un enlace duro (instantáneo y sin ocupar espacio extra) y, si el
+     * sistema de archivos no lo permite, recurre a una copia.
+     * @param source Archivo existente
+     * @param target Ruta destino (se reemplaza si existe)
+     */
+    public static void linkOrCopy(Path source, Path target) throws IOException {
+        if (source.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())) {
+            return;
+        }
+
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.deleteIfExists(target);
+
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Distinto sistema de archivos o enlaces no soportados: copiar
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Guarda un log de descarga en formato JSON
      */
     public static void saveLogAsJson(DownloadLog log) {
+        saveLogsAsJson(List.of(log));
+    }
+
+    /**
+     * Guarda varios logs en formato JSON con una sola lectura y escritura del archivo
+     */
+    public static synchronized void saveLogsAsJson(List<DownloadLog> newLogs) {
         String fileName = "download_log_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + ".json";
         Path logFile = Paths.get(LOG_DIR, fileName);
         
@@ -60,8 +107,8 @@ public class FileUtils {
                 logs = loadLogsFromJson(logFile.toString());
             }
             
-            // Agregar nuevo log
-            logs.add(log);
+            // Agregar nuevos logs
+            logs.addAll(newLogs);
             
             // Guardar todos los logs
             objectMapper.writerWithDefaultPrettyPrinter().writeValue(logFile.toFile(), logs);
@@ -75,6 +122,13 @@ public class FileUtils {
      * Guarda un log de descarga en formato CSV
      */
     public static void saveLogAsCsv(DownloadLog log) {
+        saveLogsAsCsv(List.of(log));
+    }
+
+    /**
+     * Guarda varios logs en formato CSV abriendo el archivo una sola vez
+     */
+    public static synchronized void saveLogsAsCsv(List<DownloadLog> logs) {
         String fileName = "download_log_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + ".csv";
         Path logFile = Paths.get(LOG_DIR, fileName);
         
@@ -87,18 +141,20 @@ public class FileUtils {
                     writer.println("Timestamp,URL,FileName,FileSize,Hash,ExpectedHash,Duration,Result,ErrorMessage");
                 }
                 
-                // Escribir datos del log
-                writer.printf("%s,%s,%s,%d,%s,%s,%d,%s,%s%n",
-                    log.getTimestamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                    escapeCSV(log.getUrl()),
-                    escapeCSV(log.getFileName()),
-                    log.getFileSize(),
-                    escapeCSV(log.getHash()),
-                    escapeCSV(log.getExpectedHash()),
-                    log.getDurationSeconds(),
-                    escapeCSV(log.getResult()),
-                    escapeCSV(log.getErrorMessage())
-                );
+                // Escribir datos de los logs
+                for (DownloadLog log : logs) {
+                    writer.printf("%s,%s,%s,%d,%s,%s,%d,%s,%s%n",
+                        log.getTimestamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
+                        escapeCSV(log.getUrl()),
+                        escapeCSV(log.getFileName()),
+                        log.getFileSize(),
+                        escapeCSV(log.getHash()),
+                        escapeCSV(log.getExpectedHash()),
+                        log.getDurationSeconds(),
+                        escapeCSV(log.getResult()),
+                        escapeCSV(log.getErrorMessage())
+                    );
+                }
             }
             
         } catch (IOException e) {
@@ -140,6 +196,24 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Obtiene el espacio libre utilizable del sistema de archivos que contiene una ruta
+     * @param path Archivo o directorio (si no existe se usa el directorio padre existente)
+     * @return Bytes disponibles o Long.MAX_VALUE si no se puede determinar
+     */
+    public static long getUsableSpace(Path path) {
+        Path existing = path.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        
+        try {
+            return existing != null ? Files.getFileStore(existing).getUsableSpace() : Long.MAX_VALUE;
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
     /**
      * Elimina un archivo
      */
@@ -186,6 +260,18 @@ public class FileUtils {
         }
     }
     
+    /**
+     * Obtiene el host (en minúsculas) de una URL, o la propia URL si no tiene host
+     */
+    public static String extractHostFromUrl(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : url;
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
     /**
      * Genera un nombre de archivo basado en el patrón de la URL
      */
@@ -243,4 +329,87 @@ public class FileUtils {
         String pre = "KMGTPE".charAt(exp - 1) + "";
         return String.format("%.1f %sB", bytes / Math.pow(1024, exp), pre);
     }
+    
+    /**
+     * Detecta y actualiza la extensión del archivo de una descarga basado en el Content-Type
+     */
+    public static void applyContentTypeExtension(DownloadItem item, String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return;
+        }
+        
+        String currentPath = item.getDestinationPath();
+        String fileName = item.getFileName();
+        
+        // Si el archivo ya tiene una extensión apropiada, no cambiar
+        if (fileName.contains(".") && !fileName.endsWith(".bin") && !fileName.endsWith(".tmp")) {
+            return;
+        }
+        
+        String extension = getExtensionFromContentType(contentType.toLowerCase());
+        if (extension != null) {
+            // Remover extensión actual si es genérica
+            String baseName = fileName;
+            if (baseName.endsWith(".bin") || baseName.endsWith(".tmp")) {
+                baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+            }
+            
+            // Crear nuevo nombre y ruta
+            String newFileName = baseName + extension;
+            String newPath = Paths.get(currentPath).resolveSibling(newFileName).toString();
+            
+            // Actualizar el item
+            item.setFileName(newFileName);
+            item.setDestinationPath(newPath);
+        }
+    }
+    
+    /**
+     * Obtiene la extensión apropiada basada en el Content-Type
+     */
+    public static String getExtensionFromContentType(String contentType) {
+        if (contentType.contains("image/jpeg") || contentType.contains("image/jpg")) {
+            return ".jpg";
+        } else if (contentType.contains("image/png")) {
+            return ".png";
+        } else if (contentType.contains("image/gif")) {
+            return ".gif";
+        } else if (contentType.contains("image/webp")) {
+            return ".webp";
+        } else if (contentType.contains("image/svg")) {
+            return ".svg";
+        } else if (contentType.contains("application/pdf")) {
+            return ".pdf";
+        } else if (contentType.contains("text/plain")) {
+            return ".txt";
+        } else if (contentType.contains("text/html")) {
+            return ".html";
+        } else if (contentType.contains("text/css")) {
+            return ".css";
+        } else if (contentType.contains("application/javascript") || contentType.contains("text/javascript")) {
+            return ".js";
+        } else if (contentType.contains("application/json")) {
+            return ".json";
+        } else if (contentType.contains("application/xml") || contentType.contains("text/xml")) {
+            return ".xml";
+        } else if (contentType.contains("video/mp4")) {
+            return ".mp4";
+        } else if (contentType.contains("video/webm")) {
+            return ".webm";
+        } else if (contentType.contains("video/quicktime")) {
+            return ".mov";
+        } else if (contentType.contains("audio/mpeg")) {
+            return ".mp3";
+        } else if (contentType.contains("audio/wav")) {
+            return ".wav";
+        } else if (contentType.contains("application/zip")) {
+            return ".zip";
+        } else if (contentType.contains("application/x-rar")) {
+            return ".rar";
+        } else if (contentType.contains("application/octet-stream")) {
+            return ".bin";
+        }
+        
+        return null; // No se pudo determinar
+    }
 }
\ No newline at end of file
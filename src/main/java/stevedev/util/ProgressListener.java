@@ -2,6 +2,8 @@ package stevedev.util;
 
 import stevedev.model.DownloadItem;
 
+import java.util.List;
+
 /**
  * Interface para escuchar cambios en el progreso de descarga
  */
@@ -12,4 +14,13 @@ public interface ProgressListener {
      * @param item El elemento de descarga actualizado
      */
     void onProgressUpdate(DownloadItem item);
-}
\ No newline at end of file
+
+    /**
+     * Se llama con varias actualizaciones agrupadas (por ejemplo, las descargas pequeñas
+     * terminadas en el último intervalo). Por defecto las reenvía una a una.
+     * @param items Elementos actualizados
+     */
+    default void onProgressBatch(List<DownloadItem> items) {
+        items.forEach(this::onProgressUpdate);
+    }
+}
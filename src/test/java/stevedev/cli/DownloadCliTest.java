@@ -0,0 +1,127 @@
+package stevedev.cli;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stevedev.core.HashVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del modo sin interfaz contra un servidor HTTP local
+ */
+class DownloadCliTest {
+
+    private static final byte[] CONTENT = new byte[300 * 1024];
+    private static final byte[] OTHER_CONTENT = new byte[200 * 1024];
+
+    static {
+        new Random(7).nextBytes(CONTENT);
+        new Random(8).nextBytes(OTHER_CONTENT);
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private DownloadCli cli;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cli/", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("missing.bin")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENT);
+            }
+        });
+        server.createContext("/cli/v2/", exchange -> {
+            exchange.sendResponseHeaders(200, OTHER_CONTENT.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(OTHER_CONTENT);
+            }
+        });
+        server.start();
+        cli = new DownloadCli(new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String name) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/cli/" + name;
+    }
+
+    @Test
+    void testDownloadsListFileAndExitsWithZero() throws Exception {
+        String hash = HashVerifier.calculateHash(CONTENT, HashVerifier.HashType.SHA256);
+        Path list = tempDir.resolve("urls.txt");
+        Files.writeString(list, String.join("\n",
+                "# lista de prueba",
+                url("uno.bin") + " " + hash,
+                "",
+                url("dos.bin")));
+        Path output = tempDir.resolve("salida");
+
+        int exit = cli.run(new String[] {"-i", list.toString(), "-o", output.toString(), "-c", "2", "--trace"});
+
+        assertEquals(DownloadCli.EXIT_OK, exit, err.toString(StandardCharsets.UTF_8));
+        assertArrayEquals(CONTENT, Files.readAllBytes(output.resolve("uno.bin")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(output.resolve("dos.bin")));
+        String printed = out.toString(StandardCharsets.UTF_8);
+        assertTrue(printed.contains("2/2 completadas"), printed);
+        assertTrue(printed.contains("transfer"), "Con --trace se muestra el reparto por fases");
+    }
+
+    @Test
+    void testFailedDownloadExitsWithOne() {
+        int exit = cli.run(new String[] {"-o", tempDir.toString(), "--interval", "0",
+                url("bien.bin"), url("missing.bin")});
+
+        assertEquals(DownloadCli.EXIT_FAILED, exit);
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("missing.bin"));
+        assertTrue(Files.exists(tempDir.resolve("bien.bin")));
+    }
+
+    @Test
+    void testSameFileNameFromDifferentUrlsGetsSuffix() throws Exception {
+        int exit = cli.run(new String[] {"-o", tempDir.toString(), "--interval", "0",
+                url("v1/index.html"), url("v2/index.html"), url("v1/index.html")});
+
+        assertEquals(DownloadCli.EXIT_OK, exit, err.toString(StandardCharsets.UTF_8));
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("index.html")));
+        assertArrayEquals(OTHER_CONTENT, Files.readAllBytes(tempDir.resolve("index-2.html")));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("2 de 2 descargas completadas"));
+    }
+
+    @Test
+    void testInvalidArgumentsExitWithTwo() {
+        assertEquals(DownloadCli.EXIT_USAGE, cli.run(new String[0]));
+        assertEquals(DownloadCli.EXIT_USAGE, cli.run(new String[] {"ftp://127.0.0.1/archivo"}));
+        assertEquals(DownloadCli.EXIT_USAGE, cli.run(new String[] {"-c", "cero", url("a.bin")}));
+        assertEquals(DownloadCli.EXIT_USAGE, cli.run(new String[] {"-i", tempDir.resolve("no-existe.txt").toString()}));
+        assertEquals(DownloadCli.EXIT_OK, cli.run(new String[] {"--help"}));
+    }
+}
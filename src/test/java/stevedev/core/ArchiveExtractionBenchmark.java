@@ -0,0 +1,121 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import stevedev.model.DownloadItem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Benchmark de extracción: tiempo hasta tener los archivos extraídos descargando primero
+ * y extrayendo después, frente a extraer mientras se descarga.
+ *
+ * El servidor local limita el ancho de banda para que la red no sea infinitamente rápida.
+ * Ejecutar con:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=stevedev.core.ArchiveExtractionBenchmark
+ * </pre>
+ */
+public class ArchiveExtractionBenchmark {
+    private static final int ENTRIES = 400;
+    private static final int ENTRY_SIZE = 256 * 1024;
+    private static final long BYTES_PER_SECOND = 100L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        byte[] archive = buildArchive();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/bundle.tar.gz", exchange -> {
+            exchange.sendResponseHeaders(200, archive.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                int chunk = 64 * 1024;
+                long nanosPerChunk = chunk * 1_000_000_000L / BYTES_PER_SECOND;
+                for (int offset = 0; offset < archive.length; offset += chunk) {
+                    long start = System.nanoTime();
+                    out.write(archive, offset, Math.min(chunk, archive.length - offset));
+                    while (System.nanoTime() - start < nanosPerChunk) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }
+        });
+        server.start();
+
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/bundle.tar.gz";
+        System.out.printf("Archivo de %.1f MB, %d entradas, red limitada a %d MB/s%n",
+                archive.length / (1024.0 * 1024), ENTRIES, BYTES_PER_SECOND / (1024 * 1024));
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                run("descargar y extraer", () -> {
+                    Path directory = Files.createTempDirectory("bench");
+                    DownloadItem item = newItem(url, directory);
+                    new DownloadTask(item, null, transport).executeAsync().get();
+                    try (InputStream input = Files.newInputStream(Path.of(item.getDestinationPath()))) {
+                        new ArchiveExtractor(ArchiveExtractor.Format.TAR_GZ, directory.resolve("x")).extract(input);
+                    }
+                });
+                run("extraer al vuelo", () -> {
+                    Path directory = Files.createTempDirectory("bench");
+                    DownloadItem item = newItem(url, directory);
+                    item.setExtractTo(directory.resolve("x").toString());
+                    new DownloadTask(item, null, transport).executeAsync().get();
+                });
+                run("al vuelo sin archivo", () -> {
+                    Path directory = Files.createTempDirectory("bench");
+                    DownloadItem item = newItem(url, directory);
+                    item.setExtractTo(directory.resolve("x").toString());
+                    item.setKeepArchive(false);
+                    new DownloadTask(item, null, transport).executeAsync().get();
+                });
+            }
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static DownloadItem newItem(String url, Path directory) {
+        return new DownloadItem(url, "bundle.tar.gz", directory.resolve("bundle.tar.gz").toString());
+    }
+
+    private static void run(String label, Step step) throws Exception {
+        long start = System.nanoTime();
+        step.run();
+        System.out.printf("%-22s %8.2f s%n", label, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static byte[] buildArchive() throws Exception {
+        Random random = new Random(5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            byte[] data = new byte[ENTRY_SIZE];
+            for (int i = 0; i < ENTRIES; i++) {
+                random.nextBytes(data);
+                byte[] header = new byte[512];
+                byte[] name = ("archivo_" + i + ".bin").getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(name, 0, header, 0, name.length);
+                byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(size, 0, header, 124, size.length);
+                header[156] = '0';
+                gzip.write(header);
+                gzip.write(data);
+            }
+            gzip.write(new byte[1024]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+}
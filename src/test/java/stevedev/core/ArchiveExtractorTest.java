@@ -0,0 +1,125 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para ArchiveExtractor
+ */
+class ArchiveExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDetectFormat() {
+        assertEquals(ArchiveExtractor.Format.ZIP, ArchiveExtractor.Format.detect("datos.zip", null));
+        assertEquals(ArchiveExtractor.Format.TAR_GZ, ArchiveExtractor.Format.detect("datos.tar.gz", null));
+        assertEquals(ArchiveExtractor.Format.TAR_GZ, ArchiveExtractor.Format.detect("datos.tgz", null));
+        assertEquals(ArchiveExtractor.Format.TAR_GZ, ArchiveExtractor.Format.detect("datos", "application/gzip"));
+        assertNull(ArchiveExtractor.Format.detect("datos.pdf", "application/pdf"));
+    }
+
+    @Test
+    void testExtractZip() throws Exception {
+        byte[] archive = zip("a.txt", "uno", "dir/b.txt", "dos");
+
+        int entries = new ArchiveExtractor(ArchiveExtractor.Format.ZIP, tempDir)
+                .extract(new ByteArrayInputStream(archive));
+
+        assertEquals(2, entries);
+        assertEquals("uno", Files.readString(tempDir.resolve("a.txt")));
+        assertEquals("dos", Files.readString(tempDir.resolve("dir/b.txt")));
+    }
+
+    @Test
+    void testExtractTarGzWithLongName() throws Exception {
+        String longName = "directorio/" + "x".repeat(120) + ".txt";
+        byte[] archive = tarGz("corto.txt", "uno", longName, "dos");
+
+        int entries = new ArchiveExtractor(ArchiveExtractor.Format.TAR_GZ, tempDir)
+                .extract(new ByteArrayInputStream(archive));
+
+        assertEquals(2, entries);
+        assertEquals("uno", Files.readString(tempDir.resolve("corto.txt")));
+        assertEquals("dos", Files.readString(tempDir.resolve(longName)));
+    }
+
+    @Test
+    void testSkipsEntryForTargetDirectory() throws Exception {
+        // Así empieza cualquier tar creado con "tar -C dir ."
+        byte[] archive = tarGz("./", "", "./datos/", "", "./datos/a.txt", "uno");
+
+        int entries = new ArchiveExtractor(ArchiveExtractor.Format.TAR_GZ, tempDir)
+                .extract(new ByteArrayInputStream(archive));
+
+        assertEquals(2, entries);
+        assertEquals("uno", Files.readString(tempDir.resolve("datos/a.txt")));
+    }
+
+    @Test
+    void testRejectsEntriesOutsideTarget() throws Exception {
+        byte[] archive = zip("../fuera.txt", "malicioso");
+
+        assertThrows(IOException.class, () -> new ArchiveExtractor(ArchiveExtractor.Format.ZIP, tempDir)
+                .extract(new ByteArrayInputStream(archive)));
+        assertFalse(Files.exists(tempDir.resolve("../fuera.txt")));
+    }
+
+    static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] tarGz(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                byte[] name = namesAndContents[i].getBytes(StandardCharsets.UTF_8);
+                byte[] data = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+                if (name.length > 100) {
+                    // Entrada de nombre largo al estilo GNU
+                    writeTarEntry(gzip, "././@LongLink".getBytes(StandardCharsets.UTF_8), 'L', name);
+                    name = Arrays.copyOf(name, 100);
+                }
+                // Los nombres terminados en / son directorios
+                writeTarEntry(gzip, name, namesAndContents[i].endsWith("/") ? '5' : '0', data);
+            }
+            gzip.write(new byte[1024]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeTarEntry(OutputStream out, byte[] name, char type, byte[] data)
+            throws IOException {
+        byte[] header = new byte[512];
+        System.arraycopy(name, 0, header, 0, Math.min(100, name.length));
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+}
@@ -0,0 +1,172 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark del motor asíncrono: hilos vivos y latencia con 1000 descargas simultáneas,
+ * frente al motor bloqueante (un hilo por descarga, como el pool del gestor con 1000 huecos).
+ *
+ * Lanza las tareas igual que {@link DownloadManager} pero sin el registro de cada descarga,
+ * que con miles de ellas pesa más que la transferencia. El servidor local sirve cada
+ * archivo de golpe ("servidor rápido") o en bloques con pausas ("servidor lento"), para
+ * que las descargas se solapen. Los hilos del servidor no cuentan en el pico. Ejecutar con:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=stevedev.core.AsyncEngineBenchmark
+ * </pre>
+ */
+public class AsyncEngineBenchmark {
+    private static final int DOWNLOADS = 1000;
+    private static final int FILE_SIZE = 128 * 1024;
+    private static final int SLOW_CHUNK = 16 * 1024;
+    private static final long SLOW_PAUSE_MS = 5;
+
+    public static void main(String[] args) throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(3).nextBytes(content);
+
+        AtomicInteger serverThreads = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), DOWNLOADS);
+        server.setExecutor(Executors.newCachedThreadPool(runnable ->
+                new Thread(runnable, "bench-server-" + serverThreads.incrementAndGet())));
+        server.createContext("/fast/", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.createContext("/slow/", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < content.length; offset += SLOW_CHUNK) {
+                    out.write(content, offset, SLOW_CHUNK);
+                    out.flush();
+                    Thread.sleep(SLOW_PAUSE_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            System.out.printf("%d descargas simultáneas de %d KB, %d núcleos%n",
+                    DOWNLOADS, FILE_SIZE / 1024, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%-30s %8s %8s %8s %8s %8s%n", "", "total s", "p50 ms", "p99 ms", "max ms", "hilos");
+            for (int round = 0; round < 2; round++) {
+                run("servidor rápido, bloqueante", base + "/fast/", false);
+                run("servidor rápido, asíncrono", base + "/fast/", true);
+                run("servidor lento, bloqueante", base + "/slow/", false);
+                run("servidor lento, asíncrono", base + "/slow/", true);
+            }
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static void run(String label, String base, boolean async) throws Exception {
+        Path directory = Files.createTempDirectory("async-engine");
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(DOWNLOADS, 5, TimeUnit.MINUTES))
+                .build());
+        ExecutorService blocking = Executors.newFixedThreadPool(DOWNLOADS);
+        AsyncTransferEngine engine = async ? new AsyncTransferEngine(transport.getClient()) : null;
+
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        AtomicInteger peakThreads = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                peakThreads.accumulateAndGet(countClientThreads(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "bench-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        List<CompletableFuture<Long>> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < DOWNLOADS; i++) {
+            String name = "f" + i + ".bin";
+            DownloadTask task = new DownloadTask(new DownloadItem(base + i, name, directory.resolve(name).toString()),
+                    null, transport);
+            task.setRetryPolicy(RetryPolicy.defaults());
+            task.setStallPolicy(StallPolicy.defaults());
+            CompletableFuture<DownloadItem> running = async ? task.executeOn(engine) : task.executeAsync(blocking);
+            latencies.add(running.thenApply(item -> item.getStatus() == DownloadItem.DownloadStatus.COMPLETED
+                    ? (System.nanoTime() - start) / 1_000_000 : -1L));
+        }
+        long[] sorted = latencies.stream()
+                .mapToLong(CompletableFuture::join)
+                .filter(latency -> latency >= 0)
+                .sorted()
+                .toArray();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampling.set(false);
+        sampler.join();
+
+        if (sorted.length < DOWNLOADS) {
+            System.out.printf("%-30s %d descargas sin completar%n", label, DOWNLOADS - sorted.length);
+        }
+        if (sorted.length > 0) {
+            System.out.printf("%-30s %8.2f %8d %8d %8d %8d%n", label, seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1], peakThreads.get());
+        }
+
+        if (engine != null) {
+            engine.shutdown();
+        }
+        blocking.shutdown();
+        transport.shutdown();
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Hilos vivos del proceso sin contar los del servidor ni el propio muestreo
+     */
+    private static int countClientThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (!name.startsWith("bench-") && !name.startsWith("HTTP-Dispatcher")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
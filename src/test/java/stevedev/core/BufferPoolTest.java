@@ -0,0 +1,78 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para BufferPool
+ */
+class BufferPoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void testSizeClasses() {
+        BufferPool pool = new BufferPool(4 * MB);
+
+        assertEquals(8 * 1024, pool.tryAcquire(100).capacity());
+        assertEquals(64 * 1024, pool.tryAcquire(64 * 1024).capacity());
+        assertEquals(256 * 1024, pool.tryAcquire(64 * 1024 + 1).capacity());
+        assertTrue(pool.tryAcquire(1).isDirect());
+        assertThrows(IllegalArgumentException.class, () -> pool.tryAcquire(2 * MB));
+    }
+
+    @Test
+    void testReleasedBuffersAreReused() {
+        BufferPool pool = new BufferPool(4 * MB);
+
+        ByteBuffer first = pool.tryAcquire(64 * 1024);
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer second = pool.tryAcquire(64 * 1024);
+
+        assertSame(first, second);
+        assertEquals(0, second.position(), "El buffer reutilizado debe llegar limpio");
+        assertEquals(64 * 1024, pool.getReservedBytes());
+    }
+
+    @Test
+    void testCeilingIsEnforced() {
+        BufferPool pool = new BufferPool(2 * MB);
+
+        ByteBuffer a = pool.tryAcquire(MB);
+        ByteBuffer b = pool.tryAcquire(MB);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(pool.tryAcquire(8 * 1024), "No debe superarse el techo de memoria");
+
+        pool.release(a);
+        assertNotNull(pool.tryAcquire(8 * 1024), "Los buffers en caché se liberan para otras clases");
+        assertTrue(pool.getReservedBytes() <= pool.getMaxBytes());
+    }
+
+    @Test
+    void testRejectsForeignAndRepeatedRelease() {
+        BufferPool pool = new BufferPool(4 * MB);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(1000)));
+        assertThrows(IllegalStateException.class, () -> pool.release(ByteBuffer.allocateDirect(64 * 1024)));
+
+        ByteBuffer buffer = pool.tryAcquire(64 * 1024);
+        pool.release(buffer);
+        assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+        assertEquals(0, pool.getInUseBytes());
+        assertEquals(64 * 1024, pool.getReservedBytes());
+
+        // La segunda devolución no dejó el buffer dos veces en caché
+        assertSame(buffer, pool.tryAcquire(64 * 1024));
+        assertNotSame(buffer, pool.tryAcquire(64 * 1024));
+    }
+
+    @Test
+    void testInvalidCeiling() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(1024));
+    }
+}
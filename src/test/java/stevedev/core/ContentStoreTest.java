@@ -0,0 +1,87 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para ContentStore
+ */
+class ContentStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRegisterAndMaterialize() throws IOException {
+        Path original = Files.writeString(tempDir.resolve("original.txt"), "contenido de prueba");
+        String hash = HashVerifier.calculateSHA256(original.toString());
+
+        ContentStore store = new ContentStore(tempDir.toString());
+        store.register(hash, original.toString());
+
+        Path copy = tempDir.resolve("otro/nombre.txt");
+        assertTrue(store.materialize(hash.toUpperCase(), copy));
+        assertEquals("contenido de prueba", Files.readString(copy));
+    }
+
+    @Test
+    void testUnknownHash() throws IOException {
+        ContentStore store = new ContentStore(tempDir.toString());
+
+        assertNull(store.lookup("1234567890abcdef1234567890abcdef1234567890abcdef1234567890abcdef"));
+        assertFalse(store.materialize("1234567890abcdef1234567890abcdef1234567890abcdef1234567890abcdef",
+                tempDir.resolve("nada.txt")));
+        assertFalse(Files.exists(tempDir.resolve("nada.txt")));
+    }
+
+    @Test
+    void testModifiedFileIsEvicted() throws IOException {
+        Path original = Files.writeString(tempDir.resolve("original.txt"), "contenido de prueba");
+        String hash = HashVerifier.calculateSHA256(original.toString());
+
+        ContentStore store = new ContentStore(tempDir.toString());
+        store.register(hash, original.toString());
+
+        Files.writeString(original, "contenido modificado con otro tamaño");
+
+        assertNull(store.lookup(hash), "Un archivo modificado no debe reutilizarse");
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testIndexIsPersisted() throws IOException {
+        Path original = Files.writeString(tempDir.resolve("original.txt"), "contenido de prueba");
+        String hash = HashVerifier.calculateSHA256(original.toString());
+
+        ContentStore store = new ContentStore(tempDir.toString());
+        store.register(hash, original.toString());
+        store.flush();
+
+        ContentStore reloaded = new ContentStore(tempDir.toString());
+        assertEquals(original.toAbsolutePath().normalize(), reloaded.lookup(hash));
+    }
+
+    @Test
+    void testRegistrationsShareOneDeferredWrite() throws Exception {
+        ContentStore store = new ContentStore(tempDir.toString());
+        Path index = tempDir.resolve("content-index.json");
+        for (int i = 0; i < 20; i++) {
+            Path file = Files.writeString(tempDir.resolve("archivo_" + i + ".txt"), "contenido " + i);
+            store.register(HashVerifier.calculateSHA256(file.toString()), file.toString());
+        }
+
+        // Las altas sólo programan la escritura; el índice llega entero al disco después
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.exists(index) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(20, new ContentStore(tempDir.toString()).size());
+    }
+}
@@ -3,11 +3,33 @@ package stevedev.core;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
 import stevedev.model.DownloadItem;
 import stevedev.util.ProgressListener;
 
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,6 +40,9 @@ class DownloadManagerTest {
     
     private DownloadManager downloadManager;
     
+    @TempDir
+    Path tempDir;
+    
     @BeforeEach
     void setUp() {
         downloadManager = new DownloadManager(2); // 2 descargas concurrentes para pruebas
@@ -30,6 +55,13 @@ class DownloadManagerTest {
         }
     }
     
+    /**
+     * Descarga con destino en el directorio temporal de la prueba
+     */
+    private DownloadItem localItem(String url, String fileName) {
+        return new DownloadItem(url, fileName, tempDir.resolve(fileName).toString());
+    }
+    
     @Test
     void testStartDownload() {
         // URL de prueba (archivo pequeño)
@@ -105,6 +137,260 @@ class DownloadManagerTest {
                   "No debe exceder el límite de descargas concurrentes");
     }
     
+    @Test
+    void testDuplicateUrlSharesTransfer() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(7).nextBytes(content);
+        AtomicInteger requests = new AtomicInteger();
+        
+        // Servidor local lento para que la segunda descarga llegue mientras la primera sigue en curso
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/shared.bin", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                // Sondeo previo: sólo cabeceras
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < content.length; offset += 8192) {
+                    out.write(content, offset, 8192);
+                    out.flush();
+                    Thread.sleep(50);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/shared.bin";
+            DownloadItem first = downloadManager.startDownload(localItem(url, "shared_a.bin"));
+            DownloadItem second = downloadManager.startDownload(localItem(url, "shared_b.bin"));
+            
+            downloadManager.waitForAllDownloads();
+            
+            assertEquals(1, requests.get(), "La URL duplicada no debe abrir otra conexión");
+            assertEquals(DownloadItem.DownloadStatus.COMPLETED, first.getStatus());
+            assertEquals(DownloadItem.DownloadStatus.COMPLETED, second.getStatus());
+            assertArrayEquals(content, Files.readAllBytes(Paths.get(second.getDestinationPath())));
+            assertEquals(first.getHash(), second.getHash());
+        } finally {
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testFollowerOfCancelledLeaderCompletesItsFuture() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(9).nextBytes(content);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        
+        // La primera petición se queda esperando para poder cancelar al líder en mitad
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/leader.bin", exchange -> {
+            boolean first = requests.incrementAndGet() == 1;
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (first) {
+                    out.write(content, 0, 1024);
+                    out.flush();
+                    releaseFirst.await(10, TimeUnit.SECONDS);
+                }
+                out.write(content, first ? 1024 : 0, first ? content.length - 1024 : content.length);
+            } catch (InterruptedException | IOException e) {
+                // El cliente cerró la conexión al cancelar
+            }
+        });
+        server.start();
+        
+        try {
+            downloadManager.setProbeEnabled(false);
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/leader.bin";
+            DownloadItem leader = new DownloadItem(url, "leader_a.bin", tempDir.resolve("leader_a.bin").toString());
+            DownloadItem follower = new DownloadItem(url, "leader_b.bin", tempDir.resolve("leader_b.bin").toString());
+            CompletableFuture<DownloadItem> leaderResult = downloadManager.startDownloadAsync(leader);
+            CompletableFuture<DownloadItem> followerResult = downloadManager.startDownloadAsync(follower);
+            
+            while (leader.getDownloadedSize() == 0 && !leaderResult.isDone()) {
+                Thread.sleep(10);
+            }
+            downloadManager.cancelDownload(leader);
+            releaseFirst.countDown();
+            
+            assertEquals(DownloadItem.DownloadStatus.CANCELLED, leaderResult.get(10, TimeUnit.SECONDS).getStatus());
+            DownloadItem finished = followerResult.get(10, TimeUnit.SECONDS);
+            assertEquals(DownloadItem.DownloadStatus.COMPLETED, finished.getStatus());
+            assertArrayEquals(content, Files.readAllBytes(Paths.get(follower.getDestinationPath())));
+        } finally {
+            releaseFirst.countDown();
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testAsyncEngineDownloadsThroughManager() throws Exception {
+        byte[] content = new byte[512 * 1024];
+        new Random(11).nextBytes(content);
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/async/", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+        
+        try {
+            downloadManager.setAsyncEngineEnabled(true);
+            downloadManager.setProbeEnabled(false);
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/async/";
+            DownloadItem[] items = new DownloadItem[6];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = downloadManager.startDownload(localItem(base + i, "async_" + i + ".bin"));
+            }
+            
+            downloadManager.waitForAllDownloads();
+            
+            for (DownloadItem item : items) {
+                assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+                assertArrayEquals(content, Files.readAllBytes(Paths.get(item.getDestinationPath())));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testSmallFilesAreReportedInBatches() throws Exception {
+        byte[] content = "{\"icono\": true}".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger singleUpdates = new AtomicInteger();
+        AtomicInteger batchedItems = new AtomicInteger();
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/icons", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+        
+        downloadManager.setGlobalProgressListener(new ProgressListener() {
+            @Override
+            public void onProgressUpdate(DownloadItem item) {
+                singleUpdates.incrementAndGet();
+            }
+            
+            @Override
+            public void onProgressBatch(List<DownloadItem> items) {
+                batchedItems.addAndGet(items.size());
+            }
+        });
+        
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/icons/";
+            List<DownloadItem> items = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                items.add(downloadManager.startDownload(localItem(base + i, "icon_" + i + ".json")));
+            }
+            
+            downloadManager.waitForAllDownloads();
+            
+            for (DownloadItem item : items) {
+                assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+                assertArrayEquals(content, Files.readAllBytes(Paths.get(item.getDestinationPath())));
+                assertNotNull(item.getHash());
+            }
+            assertEquals(items.size(), batchedItems.get());
+            assertEquals(0, singleUpdates.get(), "Las descargas pequeñas sólo se notifican por lotes");
+        } finally {
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testDownloadToMemory() throws Exception {
+        byte[] content = "manifest: v2".getBytes(StandardCharsets.UTF_8);
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/manifest-memoria.yml", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+        
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/manifest-memoria.yml";
+            DownloadItem item = downloadManager.downloadToMemory(url, null, 64 * 1024).get(30, TimeUnit.SECONDS);
+            
+            assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+            assertEquals(ByteBuffer.wrap(content), item.getContent());
+            assertFalse(Files.exists(Paths.get(item.getDestinationPath())), "No debe escribirse en disco");
+        } finally {
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testOpenStreamBeforeDownloadStarts() throws Exception {
+        byte[] content = new byte[512 * 1024];
+        new Random(3).nextBytes(content);
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream.bin", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+        
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stream.bin";
+            DownloadItem item = downloadManager.startDownload(localItem(url, "stream.bin"));
+            
+            try (InputStream stream = downloadManager.openStream(item)) {
+                assertArrayEquals(content, stream.readAllBytes());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    void testDownloadHeldWithoutDiskSpace() {
+        // Un tamaño conocido que ningún disco puede alojar
+        DownloadItem item = localItem("http://127.0.0.1:1/enorme.bin", "enorme.bin");
+        item.setTotalSize(Long.MAX_VALUE / 4);
+        
+        downloadManager.startDownload(item);
+        
+        assertEquals(DownloadItem.DownloadStatus.PENDING, item.getStatus());
+        assertEquals(1, downloadManager.getQueuedDownloadsCount());
+        assertFalse(downloadManager.isDownloadActive(item));
+        
+        downloadManager.cancelDownload(item);
+        
+        assertEquals(DownloadItem.DownloadStatus.CANCELLED, item.getStatus());
+        assertEquals(0, downloadManager.getQueuedDownloadsCount());
+    }
+    
     @Test
     void testDownloadStats() {
         DownloadManager.DownloadStats stats = downloadManager.getStats();
@@ -116,6 +402,57 @@ class DownloadManagerTest {
         assertTrue(stats.getTotalBytesDownloaded() >= 0);
     }
     
+    @Test
+    void testMetricsCountFinishedDownloads() throws Exception {
+        byte[] content = new byte[256 * 1024];
+        new Random(5).nextBytes(content);
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/metrics-test/", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("missing")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+        
+        try {
+            downloadManager.setProbeEnabled(false);
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/metrics-test/";
+            downloadManager.startDownload(localItem(base + "a", "metrics_a.bin"));
+            downloadManager.startDownload(localItem(base + "b", "metrics_b.bin"));
+            downloadManager.startDownload(localItem(base + "missing", "metrics_missing.bin"));
+            downloadManager.waitForAllDownloads();
+            
+            DownloadManager.DownloadStats stats = downloadManager.getStats();
+            assertEquals(2, stats.getCompletedDownloads());
+            assertEquals(1, stats.getFailedDownloads());
+            
+            int port = downloadManager.startMetricsServer(0);
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            String text = response.body();
+            
+            assertEquals(200, response.statusCode());
+            assertTrue(text.contains("downloader_completed_total 2"), text);
+            assertTrue(text.contains("downloader_failed_total 1"), text);
+            assertTrue(text.contains("downloader_duration_seconds_count 3"), text);
+            assertTrue(text.contains("downloader_active_downloads 0"), text);
+            long received = Long.parseLong(text.lines()
+                    .filter(line -> line.startsWith("downloader_received_bytes_total "))
+                    .findFirst().orElseThrow().split(" ")[1]);
+            assertEquals(2L * content.length, received);
+        } finally {
+            server.stop(0);
+        }
+    }
+    
     @Test
     void testInvalidUrl() {
         assertThrows(Exception.class, () -> {
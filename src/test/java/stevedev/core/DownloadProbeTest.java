@@ -0,0 +1,114 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de DownloadProbe contra un servidor HTTP local
+ */
+class DownloadProbeTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private OkHttpTransport transport;
+    private DownloadProbe probe;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/head", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/pdf");
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", "\"abc\"");
+            exchange.getResponseHeaders().add("Content-Length", "5000");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/range-only", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.getResponseHeaders().add("Content-Range", "bytes 0-0/123456");
+            exchange.sendResponseHeaders(206, 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(0);
+            }
+        });
+        server.start();
+        transport = new OkHttpTransport(new OkHttpClient());
+        probe = new DownloadProbe(transport, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        probe.shutdown();
+        server.stop(0);
+        transport.shutdown();
+    }
+
+    @Test
+    void testHeadProbe() throws Exception {
+        DownloadItem item = newItem("/head", "documento.bin");
+
+        probe.probe(item).get(10, TimeUnit.SECONDS);
+
+        assertTrue(item.isProbed());
+        assertEquals(5000, item.getTotalSize());
+        assertTrue(item.isRangeSupported());
+        assertEquals("\"abc\"", item.getEtag());
+        assertEquals("documento.pdf", item.getFileName());
+        assertEquals(tempDir.resolve("documento.pdf").toString(), item.getDestinationPath());
+    }
+
+    @Test
+    void testRangeFallbackWhenHeadIsRejected() throws Exception {
+        DownloadItem item = newItem("/range-only", "imagen");
+
+        probe.probe(item).get(10, TimeUnit.SECONDS);
+
+        assertEquals(123456, item.getTotalSize());
+        assertTrue(item.isRangeSupported());
+        assertEquals("imagen.png", item.getFileName());
+    }
+
+    @Test
+    void testUnreachableServerStillMarksProbed() throws Exception {
+        DownloadItem item = new DownloadItem("http://127.0.0.1:1/nada", "nada.bin",
+                tempDir.resolve("nada.bin").toString());
+
+        probe.probe(item).get(15, TimeUnit.SECONDS);
+
+        assertTrue(item.isProbed());
+        assertEquals(0, item.getTotalSize());
+    }
+
+    @Test
+    void testParseContentRangeTotal() {
+        assertEquals(123456, DownloadProbe.parseContentRangeTotal("bytes 0-0/123456"));
+        assertEquals(-1, DownloadProbe.parseContentRangeTotal("bytes 0-0/*"));
+        assertEquals(-1, DownloadProbe.parseContentRangeTotal(null));
+    }
+
+    private DownloadItem newItem(String path, String fileName) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        return new DownloadItem(url, fileName, tempDir.resolve(fileName).toString());
+    }
+}
@@ -0,0 +1,119 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para DownloadStream
+ */
+class DownloadStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReadsChunksInOrder() throws Exception {
+        byte[] content = randomBytes(3000);
+        DownloadStream stream = new DownloadStream(8);
+
+        stream.offer(0, ByteBuffer.wrap(content, 0, 1000));
+        stream.offer(1000, ByteBuffer.wrap(content, 1000, 2000));
+        stream.finish(completedItem(content, null));
+
+        assertArrayEquals(content, stream.readAllBytes());
+    }
+
+    @Test
+    void testDroppedChunksAreReadFromFile() throws Exception {
+        byte[] content = randomBytes(3000);
+        Path file = tempDir.resolve("parcial.bin");
+        Files.write(file, content);
+
+        // Cola de un solo bloque y nadie leyendo: el segundo y el tercero se descartan
+        DownloadStream stream = new DownloadStream(1);
+        stream.attachFile(file, () -> content.length);
+        stream.offer(0, ByteBuffer.wrap(content, 0, 1000));
+        stream.offer(1000, ByteBuffer.wrap(content, 1000, 1000));
+        stream.offer(2000, ByteBuffer.wrap(content, 2000, 1000));
+        stream.finish(completedItem(content, file));
+
+        assertEquals(2, stream.getDroppedChunks());
+        assertArrayEquals(content, stream.readAllBytes());
+    }
+
+    @Test
+    void testLaggingConsumerDoesNotThrottleProducer() throws Exception {
+        byte[] content = randomBytes(100 * 1000);
+        Path file = tempDir.resolve("lento.bin");
+        Files.write(file, content);
+
+        // Tras el primer descarte los bloques siguientes se descartan sin esperar
+        DownloadStream stream = new DownloadStream(1);
+        stream.attachFile(file, () -> content.length);
+        long started = System.nanoTime();
+        for (int offset = 0; offset < content.length; offset += 1000) {
+            stream.offer(offset, ByteBuffer.wrap(content, offset, 1000));
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        stream.finish(completedItem(content, file));
+
+        assertEquals(99, stream.getDroppedChunks());
+        assertTrue(elapsedMs < 1000, "Sólo el primer descarte espera: " + elapsedMs + " ms");
+        assertArrayEquals(content, stream.readAllBytes());
+    }
+
+    @Test
+    void testRepeatedChunksAreSkipped() throws Exception {
+        byte[] content = randomBytes(2000);
+        DownloadStream stream = new DownloadStream(8);
+
+        // Al pasar de memoria a disco los primeros bytes se vuelven a ofrecer
+        stream.offer(0, ByteBuffer.wrap(content, 0, 1000));
+        stream.offer(0, ByteBuffer.wrap(content, 0, 1500));
+        stream.offer(1500, ByteBuffer.wrap(content, 1500, 500));
+        stream.finish(completedItem(content, null));
+
+        assertArrayEquals(content, stream.readAllBytes());
+    }
+
+    @Test
+    void testFailedDownloadRaisesError() {
+        DownloadItem item = new DownloadItem("http://127.0.0.1:1/x", "x", tempDir.resolve("x").toString());
+        item.setStatus(DownloadItem.DownloadStatus.FAILED);
+        item.setErrorMessage("HTTP Error: 500");
+
+        InputStream stream = new DownloadStream(8);
+        ((DownloadStream) stream).finish(item);
+
+        IOException error = assertThrows(IOException.class, stream::read);
+        assertTrue(error.getMessage().contains("HTTP Error: 500"));
+    }
+
+    private DownloadItem completedItem(byte[] content, Path file) {
+        Path destination = file != null ? file : tempDir.resolve("memoria.bin");
+        DownloadItem item = new DownloadItem("http://127.0.0.1:1/x", "x", destination.toString());
+        item.setTotalSize(content.length);
+        item.setStatus(DownloadItem.DownloadStatus.COMPLETED);
+        if (file == null) {
+            item.setContent(ByteBuffer.wrap(Arrays.copyOf(content, content.length)));
+        }
+        return item;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,580 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stevedev.model.DownloadItem;
+import stevedev.model.DownloadTrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de DownloadTask contra un servidor HTTP local
+ */
+class DownloadTaskTest {
+
+    private static final byte[] CONTENT = "contenido servido por el servidor de pruebas".getBytes(StandardCharsets.UTF_8);
+    private static final String ETAG = "\"v1\"";
+    private static final byte[] LARGE_CONTENT = new byte[5 * 1024 * 1024 + 123];
+
+    private static final byte[] ARCHIVE;
+
+    static {
+        new Random(42).nextBytes(LARGE_CONTENT);
+        try {
+            ARCHIVE = ArchiveExtractorTest.zip("config.json", "{}", "iconos/a.svg", "<svg/>");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private OkHttpTransport transport;
+    private final AtomicInteger bodiesSent = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final List<String> rangesRequested = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/file.txt", exchange -> {
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            bodiesSent.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.createContext("/large.bin", exchange -> {
+            exchange.sendResponseHeaders(200, LARGE_CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(LARGE_CONTENT);
+            }
+        });
+        server.createContext("/huge.bin", exchange -> {
+            // Anuncia un tamaño imposible de guardar y cierra sin enviar el cuerpo
+            exchange.sendResponseHeaders(200, Long.MAX_VALUE / 2);
+            exchange.close();
+        });
+        server.createContext("/bundle.zip", exchange -> {
+            exchange.sendResponseHeaders(200, ARCHIVE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(ARCHIVE);
+            }
+        });
+        server.createContext("/flaky.bin", exchange -> serveInterrupted(exchange, 0));
+        server.createContext("/stalled.bin", exchange -> serveInterrupted(exchange, 10_000));
+        server.createContext("/busy.txt", exchange -> {
+            if (attempts.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.createContext("/missing.txt", exchange -> {
+            attempts.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        transport = new OkHttpTransport(new OkHttpClient());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        transport.shutdown();
+    }
+
+    @Test
+    void testDownloadWritesFileAndHash() throws Exception {
+        DownloadItem item = download(null);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateSHA256(item.getDestinationPath()), item.getHash());
+        assertEquals(CONTENT.length, item.getTotalSize());
+    }
+
+    @Test
+    void testLargeDownloadIsWrittenInOrder() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(LARGE_CONTENT.length, item.getDownloadedSize());
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testFailsFastWithoutDiskSpace() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/huge.bin";
+        DownloadItem item = new DownloadItem(url, "huge.bin", tempDir.resolve("huge.bin").toString());
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.FAILED, item.getStatus());
+        assertTrue(item.getErrorMessage().contains("Espacio insuficiente"));
+        assertEquals(0, item.getDownloadedSize());
+    }
+
+    @Test
+    void testNotModifiedKeepsExistingFile() throws Exception {
+        ValidatorStore validators = new ValidatorStore(tempDir.toString());
+
+        DownloadItem first = download(validators);
+        DownloadItem second = download(validators);
+
+        assertEquals(1, bodiesSent.get(), "La segunda descarga debe resolverse con 304");
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, second.getStatus());
+        assertEquals(first.getHash(), second.getHash());
+        assertEquals(CONTENT.length, second.getDownloadedSize());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(second.getDestinationPath())));
+    }
+
+    @Test
+    void testChangedFileIsDownloadedAgain() throws Exception {
+        ValidatorStore validators = new ValidatorStore(tempDir.toString());
+
+        DownloadItem first = download(validators);
+        Files.writeString(Path.of(first.getDestinationPath()), "modificado localmente");
+        DownloadItem second = download(validators);
+
+        assertEquals(2, bodiesSent.get(), "Un archivo local modificado no debe validarse con 304");
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(second.getDestinationPath())));
+    }
+
+    @Test
+    void testInMemoryDownloadHashesWithoutRereading() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+        DownloadItem item = new DownloadItem(url, "file.txt", tempDir.resolve("file.txt").toString());
+        item.setExpectedHash(HashVerifier.calculateHash(CONTENT, HashVerifier.HashType.MD5));
+
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setInMemoryLimit(64 * 1024);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(item.getExpectedHash(), item.getHash());
+        assertEquals(ETAG, item.getEtag());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testInMemoryDownloadDetectsHashMismatch() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+        DownloadItem item = new DownloadItem(url, "file.txt", tempDir.resolve("file.txt").toString());
+        item.setExpectedHash("0".repeat(64));
+
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setInMemoryLimit(64 * 1024);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.HASH_MISMATCH, item.getStatus());
+    }
+
+    @Test
+    void testMemoryTargetSkipsFileSystem() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+        DownloadItem item = new DownloadItem(url, "file.txt", tempDir.resolve("file.txt").toString());
+        item.setMemoryLimit(1024);
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertFalse(Files.exists(Path.of(item.getDestinationPath())));
+        byte[] received = new byte[item.getContent().remaining()];
+        item.getContent().get(received);
+        assertArrayEquals(CONTENT, received);
+        assertEquals(HashVerifier.calculateHash(CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testMemoryTargetSpillsToDiskOverLimit() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+        item.setMemoryLimit(1024 * 1024);
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertNull(item.getContent());
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testStreamReadsWhileDownloading() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+        DownloadTask task = new DownloadTask(item, null, transport);
+        DownloadStream stream = new DownloadStream(4);
+        task.addStream(stream);
+
+        task.executeAsync();
+        try (stream) {
+            assertArrayEquals(LARGE_CONTENT, stream.readAllBytes());
+        }
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+    }
+
+    @Test
+    void testExtractsWhileDownloadingWithoutKeepingArchive() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/bundle.zip";
+        Path extractTo = tempDir.resolve("bundle");
+        DownloadItem item = new DownloadItem(url, "bundle.zip", tempDir.resolve("bundle.zip").toString());
+        item.setExtractTo(extractTo.toString());
+        item.setKeepArchive(false);
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(2, item.getExtractedEntries());
+        assertEquals("<svg/>", Files.readString(extractTo.resolve("iconos/a.svg")));
+        assertFalse(Files.exists(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(ARCHIVE, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testExtractsWhileDownloadingAndKeepsArchive() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/bundle.zip";
+        Path extractTo = tempDir.resolve("bundle");
+        DownloadItem item = new DownloadItem(url, "bundle.zip", tempDir.resolve("bundle.zip").toString());
+        item.setExtractTo(extractTo.toString());
+
+        new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals("{}", Files.readString(extractTo.resolve("config.json")));
+        assertArrayEquals(ARCHIVE, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testResumesFromLastWrittenByte() throws Exception {
+        DownloadItem item = downloadWithRetries("/flaky.bin");
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, item.getRetries());
+        assertEquals(1, rangesRequested.size());
+        assertTrue(rangesRequested.get(0).endsWith(ETAG), "La reanudación debe enviar If-Range con el ETag");
+        assertFalse(rangesRequested.get(0).startsWith("bytes=0-"), "Debe reanudar tras lo ya escrito");
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+        assertTrue(item.getTrace().getNanos(DownloadTrace.Phase.RETRY_WAIT) > 0);
+        assertTrue(item.getTrace().getNanos(DownloadTrace.Phase.HASH) > 0, "Reanudar relee lo ya escrito para el hash");
+    }
+
+    @Test
+    void testEmitsFlightRecorderEvents() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+        Path dump = tempDir.resolve("descarga.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("stevedev.DownloadStart");
+            recording.enable("stevedev.Download");
+            recording.enable("stevedev.ChunkWrite").withThreshold(Duration.ZERO);
+            recording.start();
+            new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent download = events.stream()
+                .filter(event -> event.getEventType().getName().equals("stevedev.Download"))
+                .findFirst().orElseThrow();
+        assertEquals(url, download.getString("url"));
+        assertEquals(LARGE_CONTENT.length, download.getLong("bytes"));
+        assertEquals("COMPLETED", download.getString("status"));
+        assertNull(download.getStackTrace(), "Los eventos no llevan pila");
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("stevedev.DownloadStart")));
+        long written = events.stream()
+                .filter(event -> event.getEventType().getName().equals("stevedev.ChunkWrite"))
+                .mapToLong(event -> event.getLong("bytes"))
+                .sum();
+        assertEquals(LARGE_CONTENT.length, written);
+    }
+
+    @Test
+    void testTraceSeparatesConnectionFromTransfer() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+        OkHttpTransport transport = new OkHttpTransport(HttpClientConfig.defaults(1));
+        try {
+            new DownloadTask(item, null, transport).executeAsync().get(30, TimeUnit.SECONDS);
+        } finally {
+            transport.shutdown();
+        }
+
+        DownloadTrace trace = item.getTrace();
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertTrue(trace.getNanos(DownloadTrace.Phase.CONNECT) > 0);
+        assertTrue(trace.getNanos(DownloadTrace.Phase.FIRST_BYTE) > 0);
+        assertTrue(trace.getNanos(DownloadTrace.Phase.TRANSFER) > 0);
+        assertEquals(0, trace.getNanos(DownloadTrace.Phase.TLS), "Sin https no hay TLS");
+        long phases = 0;
+        for (DownloadTrace.Phase phase : DownloadTrace.Phase.values()) {
+            phases += trace.getNanos(phase);
+        }
+        assertTrue(phases <= trace.getElapsedNanos(), "Las fases no se solapan: " + trace);
+    }
+
+    @Test
+    void testAbortsStalledConnectionAndResumes() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stalled.bin";
+        DownloadItem item = new DownloadItem(url, "stalled.bin", tempDir.resolve("stalled.bin").toString());
+
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        task.setStallPolicy(new StallPolicy(0, Duration.ofSeconds(30), Duration.ofSeconds(5),
+                Duration.ofMillis(300), Duration.ofMillis(500)));
+        long start = System.nanoTime();
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, item.getRetries());
+        assertEquals(1, rangesRequested.size());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "El servidor retiene la conexión 10 s");
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testRetriesServiceUnavailable() throws Exception {
+        DownloadItem item = downloadWithRetries("/busy.txt");
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(2, attempts.get());
+        assertNull(item.getErrorMessage());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testDoesNotRetryPermanentErrors() throws Exception {
+        DownloadItem item = downloadWithRetries("/missing.txt");
+
+        assertEquals(DownloadItem.DownloadStatus.FAILED, item.getStatus());
+        assertEquals(1, attempts.get());
+        assertTrue(item.getErrorMessage().startsWith("HTTP Error: 404"));
+    }
+
+    @Test
+    void testAsyncEngineRunsManyDownloadsOnFewThreads() throws Exception {
+        AsyncTransferEngine engine = new AsyncTransferEngine(transport.getClient(), 2, 8);
+        try {
+            List<DownloadItem> items = new ArrayList<>();
+            List<CompletableFuture<DownloadItem>> running = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+                DownloadItem item = new DownloadItem(url, "large" + i + ".bin", tempDir.resolve("large" + i + ".bin").toString());
+                DownloadTask task = new DownloadTask(item, null, transport);
+                assertTrue(task.canRunAsync());
+                items.add(item);
+                running.add(task.executeOn(engine));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+            String expectedHash = HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256);
+            for (DownloadItem item : items) {
+                assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+                assertEquals(expectedHash, item.getHash());
+                assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void testAsyncEngineResumesAfterDroppedConnection() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/flaky.bin";
+        DownloadItem item = new DownloadItem(url, "flaky.bin", tempDir.resolve("flaky.bin").toString());
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+
+        AsyncTransferEngine engine = new AsyncTransferEngine(transport.getClient(), 2, 8);
+        try {
+            task.executeOn(engine).get(30, TimeUnit.SECONDS);
+        } finally {
+            engine.shutdown();
+        }
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, item.getRetries());
+        assertEquals(1, rangesRequested.size());
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testAsyncEngineHonoursNotModified() throws Exception {
+        ValidatorStore validators = new ValidatorStore(tempDir.toString());
+        download(validators);
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+        DownloadItem item = new DownloadItem(url, "file.txt", tempDir.resolve("file.txt").toString());
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setValidatorStore(validators);
+        AsyncTransferEngine engine = new AsyncTransferEngine(transport.getClient(), 2, 8);
+        try {
+            task.executeOn(engine).get(30, TimeUnit.SECONDS);
+        } finally {
+            engine.shutdown();
+        }
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, bodiesSent.get());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testJdkTransportWritesLargeFileDirectly() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large.bin";
+        DownloadItem item = new DownloadItem(url, "large.bin", tempDir.resolve("large.bin").toString());
+
+        new DownloadTask(item, null, new JdkHttpTransport()).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(LARGE_CONTENT.length, item.getTotalSize());
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testJdkTransportResumesAndAbortsStalledConnection() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stalled.bin";
+        DownloadItem item = new DownloadItem(url, "stalled.bin", tempDir.resolve("stalled.bin").toString());
+
+        DownloadTask task = new DownloadTask(item, null, new JdkHttpTransport());
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        task.setStallPolicy(new StallPolicy(0, Duration.ofSeconds(30), Duration.ofSeconds(5),
+                Duration.ofMillis(300), Duration.ofMillis(500)));
+        long start = System.nanoTime();
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, item.getRetries());
+        assertEquals(1, rangesRequested.size());
+        assertTrue(rangesRequested.get(0).endsWith(ETAG), "La reanudación debe enviar If-Range con el ETag");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "El servidor retiene la conexión 10 s");
+        assertArrayEquals(LARGE_CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertEquals(HashVerifier.calculateHash(LARGE_CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testJdkTransportHonoursNotModifiedAndErrors() throws Exception {
+        ValidatorStore validators = new ValidatorStore(tempDir.toString());
+        download(validators);
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        DownloadItem item = new DownloadItem(base + "/file.txt", "file.txt", tempDir.resolve("file.txt").toString());
+        DownloadTask task = new DownloadTask(item, null, new JdkHttpTransport());
+        task.setValidatorStore(validators);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertEquals(1, bodiesSent.get());
+
+        DownloadItem missing = new DownloadItem(base + "/missing.txt", "missing.txt", tempDir.resolve("missing.txt").toString());
+        new DownloadTask(missing, null, new JdkHttpTransport()).executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.FAILED, missing.getStatus());
+        assertTrue(missing.getErrorMessage().startsWith("HTTP Error: 404"));
+    }
+
+    private DownloadItem downloadWithRetries(String path) throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        String name = path.substring(1);
+        DownloadItem item = new DownloadItem(url, name, tempDir.resolve(name).toString());
+
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        return task.executeAsync().get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sirve la mitad del archivo y corta la conexión tras retenerla el tiempo indicado;
+     * las peticiones de rango reciben el resto
+     */
+    private void serveInterrupted(HttpExchange exchange, long holdMillis) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        if (range == null) {
+            exchange.sendResponseHeaders(200, LARGE_CONTENT.length);
+            try {
+                OutputStream out = exchange.getResponseBody();
+                out.write(LARGE_CONTENT, 0, LARGE_CONTENT.length / 2);
+                out.flush();
+                Thread.sleep(holdMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+
+        rangesRequested.add(range + " " + exchange.getRequestHeaders().getFirst("If-Range"));
+        int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        exchange.getResponseHeaders().add("Content-Range",
+                "bytes " + start + "-" + (LARGE_CONTENT.length - 1) + "/" + LARGE_CONTENT.length);
+        exchange.sendResponseHeaders(206, LARGE_CONTENT.length - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(LARGE_CONTENT, start, LARGE_CONTENT.length - start);
+        }
+    }
+
+    private DownloadItem download(ValidatorStore validators) throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+        DownloadItem item = new DownloadItem(url, "file.txt", tempDir.resolve("file.txt").toString());
+
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setValidatorStore(validators);
+        return task.executeAsync().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,73 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del reparto y la degradación de mirrors
+ */
+class MirrorSetTest {
+
+    @Test
+    void testTriesUnmeasuredMirrorsFirst() {
+        MirrorSet.Mirror a = new MirrorSet.Mirror("http://a/f", "\"v\"");
+        MirrorSet.Mirror b = new MirrorSet.Mirror("http://b/f", "\"v\"");
+        MirrorSet mirrors = new MirrorSet(List.of(a, b));
+
+        MirrorSet.Mirror first = mirrors.acquire(null);
+        MirrorSet.Mirror second = mirrors.acquire(null);
+        assertNotSame(first, second, "Cada conexión inicial debe probar un origen distinto");
+    }
+
+    @Test
+    void testPicksInProportionToThroughput() {
+        MirrorSet.Mirror fast = new MirrorSet.Mirror("http://fast/f", "\"v\"");
+        MirrorSet.Mirror slow = new MirrorSet.Mirror("http://slow/f", "\"v\"");
+        MirrorSet mirrors = new MirrorSet(List.of(fast, slow));
+        mirrors.record(fast, 9_000_000, 1_000_000_000L);
+        mirrors.record(slow, 1_000_000, 1_000_000_000L);
+
+        int fastPicks = 0;
+        for (int i = 0; i < 2000; i++) {
+            MirrorSet.Mirror chosen = mirrors.acquire(null);
+            mirrors.release(chosen);
+            if (chosen == fast) {
+                fastPicks++;
+            }
+        }
+        assertTrue(fastPicks > 1600 && fastPicks < 1990, "Elecciones del rápido: " + fastPicks);
+    }
+
+    @Test
+    void testDemotedMirrorIsAvoided() {
+        MirrorSet.Mirror a = new MirrorSet.Mirror("http://a/f", "\"v\"");
+        MirrorSet.Mirror b = new MirrorSet.Mirror("http://b/f", "\"v\"");
+        MirrorSet mirrors = new MirrorSet(List.of(a, b));
+        mirrors.record(a, 1_000_000, 1_000_000_000L);
+        mirrors.record(b, 1_000_000, 1_000_000_000L);
+
+        mirrors.demote(a);
+        for (int i = 0; i < 100; i++) {
+            MirrorSet.Mirror chosen = mirrors.acquire(null);
+            mirrors.release(chosen);
+            assertSame(b, chosen);
+        }
+        assertEquals(500_000, mirrors.getBytesPerSecond(a), 1);
+        assertSame(a, mirrors.acquire(b), "Si no queda otro, se usa el apartado");
+    }
+
+    @Test
+    void testKeepsLastMirror() {
+        MirrorSet.Mirror a = new MirrorSet.Mirror("http://a/f", "\"v\"");
+        MirrorSet.Mirror b = new MirrorSet.Mirror("http://b/f", "\"v\"");
+        MirrorSet mirrors = new MirrorSet(List.of(a, b));
+
+        assertTrue(mirrors.remove(a));
+        assertTrue(mirrors.remove(a), "Descartarlo dos veces no es un error");
+        assertFalse(mirrors.remove(b));
+        assertEquals(1, mirrors.size());
+    }
+}
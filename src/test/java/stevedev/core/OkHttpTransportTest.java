@@ -0,0 +1,98 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de OkHttpTransport: configuración del cliente y estadísticas de conexiones
+ */
+class OkHttpTransportTest {
+
+    private static final byte[] CONTENT = "respuesta".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private OkHttpTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file.txt", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        if (transport != null) {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    void testConfigIsAppliedToClient() {
+        transport = new OkHttpTransport(new HttpClientConfig(3, Duration.ofSeconds(2), 100, 50,
+                HttpClientConfig.Protocol.HTTP_1_1));
+        OkHttpClient client = transport.getClient();
+
+        assertEquals(100, client.dispatcher().getMaxRequests());
+        assertEquals(50, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(List.of(Protocol.HTTP_1_1), client.protocols());
+    }
+
+    @Test
+    void testDefaultsDoNotCapSingleHostBatches() {
+        HttpClientConfig config = HttpClientConfig.defaults(32);
+
+        assertTrue(config.getMaxRequestsPerHost() >= 32 * DownloadManager.DEFAULT_SEGMENTS);
+        assertTrue(config.getMaxIdleConnections() >= 32);
+    }
+
+    @Test
+    void testSeparateConnectionsShareOnePool() {
+        transport = new OkHttpTransport(HttpClientConfig.defaults(4));
+
+        OkHttpTransport first = (OkHttpTransport) transport.withSeparateConnections();
+        OkHttpTransport second = (OkHttpTransport) transport.withCallTimeout(Duration.ofSeconds(5))
+                .withSeparateConnections();
+
+        assertNotSame(transport.getClient().connectionPool(), first.getClient().connectionPool());
+        assertSame(first.getClient().connectionPool(), second.getClient().connectionPool());
+    }
+
+    @Test
+    void testStatsReportConnectionReuse() throws Exception {
+        transport = new OkHttpTransport(HttpClientConfig.defaults(4));
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.txt";
+
+        for (int i = 0; i < 5; i++) {
+            try (HttpTransport.Response response = transport.newCall(HttpTransport.Request.get(url)).execute()) {
+                assertArrayEquals(CONTENT, response.body().readByteArray());
+            }
+        }
+
+        ConnectionStats stats = transport.getConnectionStats();
+        assertEquals(1, stats.getConnectionsOpened());
+        assertEquals(5, stats.getConnectionsAcquired());
+        assertEquals(0.8, stats.getReuseRatio(), 1e-9);
+        assertEquals(1, stats.getIdleConnections());
+        assertEquals(0, stats.getActiveConnections());
+    }
+}
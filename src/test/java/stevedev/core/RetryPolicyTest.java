@@ -0,0 +1,92 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de RetryPolicy
+ */
+class RetryPolicyTest {
+
+    @Test
+    void testClassifiesTransientErrors() {
+        RetryPolicy policy = RetryPolicy.defaults();
+
+        assertTrue(policy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(policy.isRetryable(new SocketTimeoutException("timeout")));
+        assertTrue(policy.isRetryable(new ProtocolException("unexpected end of stream")));
+        assertTrue(policy.isRetryable(new EOFException()));
+        assertTrue(policy.isRetryable(new HttpStatusException(503, "Service Unavailable", -1)));
+        assertTrue(policy.isRetryable(new HttpStatusException(429, "Too Many Requests", 1000)));
+        assertTrue(policy.isRetryable(new IOException("stream was reset: INTERNAL_ERROR")));
+
+        assertFalse(policy.isRetryable(new HttpStatusException(404, "Not Found", -1)));
+        assertFalse(policy.isRetryable(new UnknownHostException("nada.invalid")));
+        assertFalse(policy.isRetryable(new IOException("Espacio insuficiente en disco")));
+    }
+
+    @Test
+    void testBackoffGrowsAndIsCapped() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(1000));
+        IOException error = new SocketException("reset");
+
+        for (int i = 0; i < 50; i++) {
+            long first = policy.delayMillis(1, error);
+            long third = policy.delayMillis(3, error);
+            long tenth = policy.delayMillis(10, error);
+            assertTrue(first >= 50 && first <= 100, "Primer reintento: " + first);
+            assertTrue(third >= 200 && third <= 400, "Tercer reintento: " + third);
+            assertTrue(tenth >= 500 && tenth <= 1000, "Con tope: " + tenth);
+        }
+    }
+
+    @Test
+    void testHonorsRetryAfter() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(20));
+        policy.setMaxRetryAfter(Duration.ofSeconds(10));
+
+        HttpStatusException shortWait = new HttpStatusException(429, "Too Many Requests", 5000);
+        assertEquals(5000, policy.delayMillis(1, shortWait));
+        assertTrue(policy.shouldRetry(shortWait, 0, "host"));
+
+        HttpStatusException longWait = new HttpStatusException(503, "Service Unavailable", 60_000);
+        assertFalse(policy.shouldRetry(longWait, 0, "host"), "Una espera mayor que el máximo no se reintenta");
+    }
+
+    @Test
+    void testParsesRetryAfter() {
+        assertEquals(120_000, RetryPolicy.parseRetryAfter("120"));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("pronto"));
+        assertEquals(0, RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    void testStopsAtMaxRetriesAndHostBudget() {
+        RetryPolicy policy = new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(1));
+        policy.setHostBudget(3, Duration.ofHours(1));
+        IOException error = new SocketException("reset");
+
+        assertFalse(policy.shouldRetry(error, 2, "a"));
+
+        assertTrue(policy.shouldRetry(error, 0, "a"));
+        assertTrue(policy.shouldRetry(error, 1, "a"));
+        assertTrue(policy.shouldRetry(error, 0, "a"));
+        assertFalse(policy.shouldRetry(error, 0, "a"), "El presupuesto del host está agotado");
+        assertTrue(policy.shouldRetry(error, 0, "b"), "Cada host tiene su propio presupuesto");
+    }
+
+    @Test
+    void testNoneNeverRetries() {
+        assertFalse(RetryPolicy.none().shouldRetry(new SocketException("reset"), 0, "a"));
+    }
+}
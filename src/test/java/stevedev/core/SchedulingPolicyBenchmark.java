@@ -0,0 +1,128 @@
+package stevedev.core;
+
+import stevedev.model.DownloadItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark de las políticas de planificación sobre una carga mixta.
+ *
+ * Simula la cola del gestor con un número fijo de huecos y un ancho de banda constante
+ * por conexión, y reporta el tiempo medio de finalización de cada política. Ejecutar con:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=stevedev.core.SchedulingPolicyBenchmark
+ * </pre>
+ */
+public class SchedulingPolicyBenchmark {
+    static final int SLOTS = 4;
+    static final double BYTES_PER_SECOND = 50.0 * 1024 * 1024;
+    static final double OVERHEAD_SECONDS = 0.05;
+
+    public static void main(String[] args) {
+        Map<String, Supplier<SchedulingPolicy>> policies = new LinkedHashMap<>();
+        policies.put("fifo", SchedulingPolicy::fifo);
+        policies.put("shortest-first", SchedulingPolicy::shortestFirst);
+        policies.put("largest-first", SchedulingPolicy::largestFirst);
+        policies.put("fair-share", SchedulingPolicy::fairShare);
+
+        System.out.printf("Carga mixta: %d descargas, %d huecos, %.0f MB/s por conexión%n",
+                mixedWorkload().size(), SLOTS, BYTES_PER_SECOND / (1024 * 1024));
+        System.out.printf("%-16s %14s %14s %14s%n", "política", "media (s)", "grupo a (s)", "grupo b (s)");
+
+        for (Map.Entry<String, Supplier<SchedulingPolicy>> entry : policies.entrySet()) {
+            Result result = simulate(entry.getValue().get(), mixedWorkload());
+            System.out.printf("%-16s %14.2f %14.2f %14.2f%n", entry.getKey(),
+                    result.meanCompletion, result.meanByGroup.get("a"), result.meanByGroup.get("b"));
+        }
+    }
+
+    /**
+     * Carga mixta: unos pocos archivos enormes del grupo "a" encolados delante de cientos
+     * de archivos pequeños y medianos del grupo "b"
+     */
+    static List<DownloadItem> mixedWorkload() {
+        List<DownloadItem> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            items.add(item("a", i, 4L * 1024 * 1024 * 1024));
+        }
+        for (int i = 0; i < 20; i++) {
+            items.add(item("a", 100 + i, 200L * 1024 * 1024));
+        }
+        for (int i = 0; i < 400; i++) {
+            items.add(item("b", i, 50L * 1024 + (i % 7) * 100L * 1024));
+        }
+        return items;
+    }
+
+    /**
+     * Simula la ejecución de la cola con la política indicada
+     */
+    static Result simulate(SchedulingPolicy policy, List<DownloadItem> workload) {
+        List<DownloadItem> queue = new ArrayList<>(workload);
+        PriorityQueue<Running> running = new PriorityQueue<>((a, b) -> Double.compare(a.finish, b.finish));
+        Map<String, double[]> byGroup = new LinkedHashMap<>();
+        double totalCompletion = 0;
+
+        for (int slot = 0; slot < SLOTS && !queue.isEmpty(); slot++) {
+            running.add(start(policy, queue, 0));
+        }
+
+        while (!running.isEmpty()) {
+            Running done = running.poll();
+            done.item.setDownloadedSize(done.item.getTotalSize());
+            policy.onFinished(done.item);
+
+            totalCompletion += done.finish;
+            double[] group = byGroup.computeIfAbsent(done.item.getGroup(), key -> new double[2]);
+            group[0] += done.finish;
+            group[1]++;
+
+            if (!queue.isEmpty()) {
+                running.add(start(policy, queue, done.finish));
+            }
+        }
+
+        Map<String, Double> meanByGroup = new LinkedHashMap<>();
+        byGroup.forEach((group, sums) -> meanByGroup.put(group, sums[0] / sums[1]));
+        return new Result(totalCompletion / workload.size(), meanByGroup);
+    }
+
+    private static Running start(SchedulingPolicy policy, List<DownloadItem> queue, double now) {
+        DownloadItem next = policy.select(new ArrayList<>(queue));
+        queue.remove(next);
+        policy.onStarted(next);
+        return new Running(next, now + OVERHEAD_SECONDS + next.getTotalSize() / BYTES_PER_SECOND);
+    }
+
+    private static DownloadItem item(String group, int index, long size) {
+        DownloadItem item = new DownloadItem("http://" + group + ".example/" + index, group + index, group + index);
+        item.setGroup(group);
+        item.setTotalSize(size);
+        return item;
+    }
+
+    private static final class Running {
+        final DownloadItem item;
+        final double finish;
+
+        Running(DownloadItem item, double finish) {
+            this.item = item;
+            this.finish = finish;
+        }
+    }
+
+    static final class Result {
+        final double meanCompletion;
+        final Map<String, Double> meanByGroup;
+
+        Result(double meanCompletion, Map<String, Double> meanByGroup) {
+            this.meanCompletion = meanCompletion;
+            this.meanByGroup = meanByGroup;
+        }
+    }
+}
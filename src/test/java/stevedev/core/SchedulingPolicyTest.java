@@ -0,0 +1,84 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+import stevedev.model.DownloadItem;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para SchedulingPolicy
+ */
+class SchedulingPolicyTest {
+
+    @Test
+    void testFifo() {
+        DownloadItem first = item("http://a.example/1", 500);
+        DownloadItem second = item("http://a.example/2", 10);
+
+        assertSame(first, SchedulingPolicy.fifo().select(List.of(first, second)));
+    }
+
+    @Test
+    void testShortestFirstPutsUnknownSizesLast() {
+        DownloadItem unknown = item("http://a.example/1", 0);
+        DownloadItem large = item("http://a.example/2", 5000);
+        DownloadItem small = item("http://a.example/3", 10);
+
+        SchedulingPolicy policy = SchedulingPolicy.shortestFirst();
+
+        assertSame(small, policy.select(List.of(unknown, large, small)));
+        assertSame(large, policy.select(List.of(unknown, large)));
+    }
+
+    @Test
+    void testLargestFirst() {
+        DownloadItem unknown = item("http://a.example/1", 0);
+        DownloadItem large = item("http://a.example/2", 5000);
+        DownloadItem small = item("http://a.example/3", 10);
+
+        assertSame(large, SchedulingPolicy.largestFirst().select(List.of(unknown, small, large)));
+    }
+
+    @Test
+    void testFairShareAlternatesGroupsByBytes() {
+        SchedulingPolicy policy = SchedulingPolicy.fairShare();
+        DownloadItem bigA = item("http://a.example/1", 1000);
+        DownloadItem smallA = item("http://a.example/2", 10);
+        DownloadItem smallB = item("http://b.example/1", 10);
+
+        policy.onStarted(bigA);
+
+        // El grupo "a" ya recibió 1000 bytes: le toca a "b" aunque "a" llegó antes
+        assertSame(smallB, policy.select(List.of(smallA, smallB)));
+    }
+
+    @Test
+    void testFairShareCorrectsChargeOnFinish() {
+        SchedulingPolicy.FairShare policy = new SchedulingPolicy.FairShare();
+        DownloadItem unknown = item("http://a.example/1", 0);
+
+        policy.onStarted(unknown);
+        unknown.setDownloadedSize(300);
+        policy.onFinished(unknown);
+
+        assertEquals(300, policy.getGroupBytes("a.example"));
+    }
+
+    @Test
+    void testShortestFirstLowersMeanCompletionTime() {
+        double fifo = SchedulingPolicyBenchmark.simulate(SchedulingPolicy.fifo(),
+                SchedulingPolicyBenchmark.mixedWorkload()).meanCompletion;
+        double shortest = SchedulingPolicyBenchmark.simulate(SchedulingPolicy.shortestFirst(),
+                SchedulingPolicyBenchmark.mixedWorkload()).meanCompletion;
+
+        assertTrue(shortest < fifo, "SJF debe reducir el tiempo medio de finalización");
+    }
+
+    private static DownloadItem item(String url, long size) {
+        DownloadItem item = new DownloadItem(url, "archivo", "archivo");
+        item.setTotalSize(size);
+        return item;
+    }
+}
@@ -0,0 +1,314 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la descarga por tramos contra un servidor HTTP local con rangos
+ */
+class SegmentedDownloadTest {
+
+    private static final byte[] CONTENT = new byte[16 * 1024 * 1024];
+    private static final String ETAG = "\"tramos\"";
+    private static final int CHUNK = 64 * 1024;
+
+    static {
+        new Random(7).nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private OkHttpTransport transport;
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean dropNext = new AtomicBoolean();
+    private final Map<String, AtomicLong> bytesServed = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/ranged.bin", exchange -> serveRange(exchange, false));
+        server.createContext("/slow-start.bin", exchange -> serveRange(exchange, true));
+        server.createContext("/throttled.bin", exchange -> serveRange(exchange, true));
+        server.createContext("/broken.bin", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                serveRange(exchange, false);
+                return;
+            }
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.createContext("/other-version.bin", exchange -> {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", "\"otra\"");
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(CONTENT.length - 1));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/no-ranges.bin", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.start();
+        transport = new OkHttpTransport(new OkHttpClient());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        transport.shutdown();
+    }
+
+    @Test
+    void testDownloadsAllSegments() throws Exception {
+        SegmentedDownload download = newDownload("/ranged.bin");
+        download.run();
+
+        assertEquals(CONTENT.length, download.getDownloadedBytes());
+        assertEquals(CONTENT.length, download.getContiguousBytes());
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("out.bin")));
+        assertTrue(ranges.size() >= 4);
+    }
+
+    @Test
+    void testIdleConnectionsStealFromSlowSegment() throws Exception {
+        SegmentedDownload download = newDownload("/slow-start.bin");
+        download.run();
+
+        assertTrue(ranges.size() > 4, "Las conexiones libres deben robar parte del tramo lento: " + ranges);
+        assertEquals(CONTENT.length, download.getDownloadedBytes(), "Los bytes robados no se cuentan dos veces");
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("out.bin")));
+    }
+
+    @Test
+    void testHedgesSlowTail() throws Exception {
+        SegmentedDownload download = newDownload("/slow-start.bin");
+        download.setHedgePolicy(new HedgePolicy(8 * 1024 * 1024, 4.0, 0.25, Duration.ofMillis(200)));
+        download.run();
+
+        assertTrue(download.getHedgeWins() >= 1, "El duplicado del tramo lento debe ganar");
+        assertEquals(CONTENT.length, download.getDownloadedBytes(), "Los bytes duplicados no se cuentan");
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("out.bin")));
+    }
+
+    @Test
+    void testHedgingRespectsBudget() throws Exception {
+        SegmentedDownload download = newDownload("/slow-start.bin");
+        download.setHedgePolicy(new HedgePolicy(8 * 1024 * 1024, 4.0, 0, Duration.ofMillis(200)));
+        download.run();
+
+        assertEquals(0, download.getHedges());
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("out.bin")));
+    }
+
+    @Test
+    void testRetriesFailedSegment() throws Exception {
+        dropNext.set(true);
+        SegmentedDownload download = newDownload("/ranged.bin");
+        download.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+        download.run();
+
+        assertEquals(1, download.getRetries());
+        assertEquals(CONTENT.length, download.getDownloadedBytes());
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("out.bin")));
+    }
+
+    @Test
+    void testFailedDownloadLeavesNoPadding() throws Exception {
+        dropNext.set(true);
+        SegmentedDownload download = newDownload("/ranged.bin");
+
+        assertThrows(IOException.class, download::run);
+        long kept = Files.size(tempDir.resolve("out.bin"));
+        assertTrue(kept < CONTENT.length, "El archivo no debe quedar con su tamaño final");
+        assertEquals(download.getContiguousBytes(), kept);
+    }
+
+    @Test
+    void testCancelledDownloadLeavesNoPadding() throws Exception {
+        SegmentedDownload download = newDownload("/ranged.bin");
+        download.setCancelled(() -> true);
+        download.run();
+
+        assertEquals(0, Files.size(tempDir.resolve("out.bin")));
+    }
+
+    @Test
+    void testDetectsServerIgnoringRanges() {
+        SegmentedDownload download = newDownload("/no-ranges.bin");
+
+        assertThrows(SegmentedDownload.RangeNotHonouredException.class, download::run);
+    }
+
+    @Test
+    void testTaskDownloadsInSegmentsAndHashesResult() throws Exception {
+        DownloadItem item = probedItem("/ranged.bin");
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setSegments(4);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        // El robo de trabajo puede añadir algún tramo más si un segmento termina antes
+        assertTrue(ranges.size() >= 4, "Tramos pedidos: " + ranges);
+        assertEquals(CONTENT.length, item.getDownloadedSize());
+        assertEquals(HashVerifier.calculateHash(CONTENT, HashVerifier.HashType.SHA256), item.getHash());
+    }
+
+    @Test
+    void testTaskFallsBackToSingleConnection() throws Exception {
+        DownloadItem item = probedItem("/no-ranges.bin");
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setSegments(4);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testSpreadsSegmentsAcrossMirrorsByThroughput() throws Exception {
+        DownloadItem item = probedItem("/throttled.bin");
+        item.addMirror(url("/ranged.bin"));
+        item.addMirror(url("/other-version.bin"));
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setSegments(4);
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+        assertNull(bytesServed.get("/other-version.bin"), "Un mirror con otro contenido no se usa");
+        long fast = bytesServed.get("/ranged.bin").get();
+        long throttled = bytesServed.getOrDefault("/throttled.bin", new AtomicLong()).get();
+        assertTrue(fast > throttled, "El mirror rápido debe servir más: " + fast + " frente a " + throttled);
+    }
+
+    @Test
+    void testFailingMirrorIsDemoted() throws Exception {
+        DownloadItem item = probedItem("/ranged.bin");
+        item.addMirror(url("/broken.bin"));
+        DownloadTask task = new DownloadTask(item, null, transport);
+        task.setSegments(4);
+        task.setRetryPolicy(new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(50)));
+        task.executeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadItem.DownloadStatus.COMPLETED, item.getStatus());
+        assertArrayEquals(CONTENT, Files.readAllBytes(Path.of(item.getDestinationPath())));
+    }
+
+    @Test
+    void testSplitShrinksSegmentSafely() {
+        Segment segment = new Segment(0, 4 * SegmentedDownload.MIN_SEGMENT_SIZE);
+        assertEquals(1000, segment.claim(1000));
+
+        Segment tail = segment.split(SegmentedDownload.MIN_SEGMENT_SIZE);
+        assertNotNull(tail);
+        assertEquals(segment.getEnd(), tail.getStart());
+        assertEquals(4 * SegmentedDownload.MIN_SEGMENT_SIZE, tail.getEnd());
+
+        // Un bloque que cruza el nuevo final sólo se acepta hasta él
+        int accepted = segment.claim((int) segment.remaining() + 500);
+        assertEquals(0, segment.remaining());
+        assertEquals(tail.getStart() - 1000, accepted);
+        assertNull(new Segment(0, SegmentedDownload.MIN_SEGMENT_SIZE).split(SegmentedDownload.MIN_SEGMENT_SIZE));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private DownloadItem probedItem(String path) {
+        DownloadItem item = new DownloadItem(url(path), "task.bin", tempDir.resolve("task.bin").toString());
+        // Lo que habría averiguado el sondeo
+        item.setTotalSize(CONTENT.length);
+        item.setRangeSupported(true);
+        item.setEtag(ETAG);
+        return item;
+    }
+
+    private SegmentedDownload newDownload(String path) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        return new SegmentedDownload(transport, MirrorSet.single(url, ETAG), tempDir.resolve("out.bin"),
+                CONTENT.length, 4);
+    }
+
+    /**
+     * Sirve el rango pedido; con slowStart, el tramo que empieza en 0 llega despacio
+     */
+    private void serveRange(HttpExchange exchange, boolean slowStart) throws IOException {
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(CONTENT.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = Integer.parseInt(bounds[1]) + 1;
+        ranges.add(range);
+        AtomicLong served = bytesServed.computeIfAbsent(exchange.getHttpContext().getPath(), key -> new AtomicLong());
+
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + CONTENT.length);
+        exchange.sendResponseHeaders(206, end - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (dropNext.compareAndSet(true, false)) {
+                // Cortar la conexión a mitad del tramo
+                out.write(CONTENT, start, (end - start) / 2);
+                served.addAndGet((end - start) / 2);
+                out.flush();
+                exchange.close();
+                return;
+            }
+            for (int offset = start; offset < end; offset += CHUNK) {
+                out.write(CONTENT, offset, Math.min(CHUNK, end - offset));
+                served.addAndGet(Math.min(CHUNK, end - offset));
+                if (exchange.getHttpContext().getPath().equals("/throttled.bin")) {
+                    out.flush();
+                    Thread.sleep(100);
+                } else if (slowStart && start == 0) {
+                    out.flush();
+                    Thread.sleep(30);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // El cliente cerró la conexión tras acortarse su tramo
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import stevedev.model.DownloadItem;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Benchmark de archivos pequeños: archivos por segundo con y sin el carril rápido.
+ *
+ * Sirve miles de archivos diminutos desde un servidor HTTP local y los descarga con un
+ * gestor de 4 huecos. Ejecutar con:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=stevedev.core.SmallFileBenchmark
+ * </pre>
+ */
+public class SmallFileBenchmark {
+    private static final int FILES = 2000;
+    private static final int FILE_SIZE = 4 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(1).nextBytes(content);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.createContext("/f", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.start();
+
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/f/";
+            System.out.printf("%d archivos de %d bytes%n", FILES, FILE_SIZE);
+            run("huecos normales", base, 0);
+            run("carril rápido", base, SmallFileLane.DEFAULT_THRESHOLD);
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static void run(String label, String base, long threshold) throws Exception {
+        Path directory = Files.createTempDirectory("small-files");
+        DownloadManager manager = new DownloadManager(4);
+        manager.setSmallFileThreshold(threshold);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < FILES; i++) {
+            String name = "f" + i + ".bin";
+            manager.startDownload(new DownloadItem(base + i, name, directory.resolve(name).toString()));
+        }
+        manager.waitForAllDownloads();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-16s %8.2f s %10.0f archivos/s%n", label, seconds, FILES / seconds);
+        manager.shutdown();
+    }
+}
@@ -0,0 +1,79 @@
+package stevedev.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de StallDetector y StallPolicy con instantes simulados
+ */
+class StallDetectorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testAbortsWhenNoDataArrives() {
+        StallPolicy policy = new StallPolicy(0, Duration.ofSeconds(30), Duration.ofSeconds(1),
+                Duration.ofSeconds(1), Duration.ofSeconds(10));
+        AtomicInteger aborts = new AtomicInteger();
+        StallDetector detector = new StallDetector(policy, aborts::incrementAndGet);
+        long start = System.nanoTime();
+
+        detector.readStarted(start);
+        detector.check(start + SECOND / 2);
+        assertFalse(detector.isStalled());
+
+        detector.check(start + 2 * SECOND);
+        detector.check(start + 3 * SECOND);
+        assertTrue(detector.isStalled());
+        assertEquals(1, aborts.get(), "Se aborta una sola vez");
+    }
+
+    @Test
+    void testIgnoresTimeNotSpentReading() {
+        StallPolicy policy = new StallPolicy(0, Duration.ofSeconds(30), Duration.ofSeconds(1),
+                Duration.ofSeconds(1), Duration.ofSeconds(1));
+        StallDetector detector = new StallDetector(policy, () -> { });
+        long start = System.nanoTime();
+
+        detector.readStarted(start);
+        detector.readFinished(64 * 1024);
+        // Esperando al disco: no cuenta como conexión estancada
+        detector.check(start + 5 * SECOND);
+        assertFalse(detector.isStalled());
+    }
+
+    @Test
+    void testAbortsWhenRateStaysBelowMinimum() {
+        StallPolicy policy = new StallPolicy(1000, Duration.ofSeconds(2), Duration.ofMinutes(1),
+                Duration.ofMinutes(1), Duration.ofMinutes(1));
+        StallDetector detector = new StallDetector(policy, () -> { });
+        long start = System.nanoTime();
+
+        detector.readStarted(start);
+        detector.check(start);
+        detector.readFinished(100);
+        detector.readStarted(start + SECOND);
+        detector.check(start + SECOND);
+        detector.check(start + 2 * SECOND);
+        assertFalse(detector.isStalled(), "Todavía dentro de la ventana");
+
+        detector.check(start + 7 * SECOND / 2);
+        assertTrue(detector.isStalled());
+        assertTrue(detector.getStallReason().contains("/s"));
+    }
+
+    @Test
+    void testIdleTimeoutAdaptsToThroughput() {
+        StallPolicy policy = StallPolicy.defaults();
+
+        assertEquals(Duration.ofSeconds(30), policy.idleTimeout(-1));
+        assertEquals(Duration.ofSeconds(5), policy.idleTimeout(100 * 1024 * 1024));
+        assertEquals(Duration.ofSeconds(60), policy.idleTimeout(1024));
+        Duration medium = policy.idleTimeout(100 * 1024);
+        assertTrue(medium.compareTo(Duration.ofSeconds(5)) > 0 && medium.compareTo(Duration.ofSeconds(60)) < 0);
+    }
+}
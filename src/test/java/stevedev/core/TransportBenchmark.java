@@ -0,0 +1,122 @@
+package stevedev.core;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import stevedev.model.DownloadItem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark de transportes HTTP: OkHttp frente a {@code java.net.http.HttpClient} (que
+ * escribe el cuerpo directamente al archivo) con las cargas típicas del gestor: muchos
+ * archivos pequeños y pocos archivos grandes, siempre por {@link DownloadTask} contra un
+ * servidor local. El resultado depende del JDK, así que conviene repetirlo en cada versión
+ * que se use en producción. Ejecutar con:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=stevedev.core.TransportBenchmark
+ * </pre>
+ */
+public class TransportBenchmark {
+    private static final int SMALL_FILES = 500;
+    private static final int SMALL_SIZE = 16 * 1024;
+    private static final int LARGE_FILES = 4;
+    private static final int LARGE_SIZE = 32 * 1024 * 1024;
+    private static final int PARALLELISM = 8;
+
+    public static void main(String[] args) throws Exception {
+        byte[] small = new byte[SMALL_SIZE];
+        byte[] large = new byte[LARGE_SIZE];
+        Random random = new Random(5);
+        random.nextBytes(small);
+        random.nextBytes(large);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/small/", exchange -> {
+            exchange.sendResponseHeaders(200, small.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(small);
+            }
+        });
+        server.createContext("/large/", exchange -> {
+            exchange.sendResponseHeaders(200, large.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(large);
+            }
+        });
+        server.start();
+
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            System.out.printf("Java %s, %d núcleos, %d descargas a la vez%n",
+                    Runtime.version(), Runtime.getRuntime().availableProcessors(), PARALLELISM);
+            System.out.printf("%-34s %10s %10s %10s%n", "", "total s", "MB/s", "desc/s");
+
+            Supplier<HttpTransport> okhttp = () -> new OkHttpTransport(new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(PARALLELISM, 5, TimeUnit.MINUTES))
+                    .build());
+            Supplier<HttpTransport> jdk = JdkHttpTransport::new;
+            for (int round = 0; round < 2; round++) {
+                System.out.println(round == 0 ? "-- calentamiento" : "-- medida");
+                run("okhttp, " + SMALL_FILES + " x " + SMALL_SIZE / 1024 + " KB", okhttp, base + "/small/", SMALL_FILES, SMALL_SIZE);
+                run("jdk, " + SMALL_FILES + " x " + SMALL_SIZE / 1024 + " KB", jdk, base + "/small/", SMALL_FILES, SMALL_SIZE);
+                run("okhttp, " + LARGE_FILES + " x " + LARGE_SIZE / (1024 * 1024) + " MB", okhttp, base + "/large/", LARGE_FILES, LARGE_SIZE);
+                run("jdk, " + LARGE_FILES + " x " + LARGE_SIZE / (1024 * 1024) + " MB", jdk, base + "/large/", LARGE_FILES, LARGE_SIZE);
+            }
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static void run(String label, Supplier<HttpTransport> transports, String base, int files, int size)
+            throws Exception {
+        Path directory = Files.createTempDirectory("transport-bench");
+        HttpTransport transport = transports.get();
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<DownloadItem>> running = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            String name = "f" + i + ".bin";
+            DownloadItem item = new DownloadItem(base + i, name, directory.resolve(name).toString());
+            running.add(new DownloadTask(item, null, transport).executeAsync(executor));
+        }
+        long completed = running.stream()
+                .map(CompletableFuture::join)
+                .filter(item -> item.getStatus() == DownloadItem.DownloadStatus.COMPLETED)
+                .count();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (completed < files) {
+            System.out.printf("%-34s %d descargas sin completar%n", label, files - completed);
+        }
+        System.out.printf("%-34s %10.2f %10.1f %10.0f%n", label, seconds,
+                completed * (double) size / (1024 * 1024) / seconds, completed / seconds);
+
+        executor.shutdown();
+        transport.shutdown();
+        deleteDirectory(directory);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
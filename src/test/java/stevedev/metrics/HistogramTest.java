@@ -0,0 +1,66 @@
+package stevedev.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del histograma log-lineal
+ */
+class HistogramTest {
+
+    @Test
+    void testBucketsCoverEveryValueWithSmallError() {
+        long[] values = {0, 1, 31, 32, 33, 1000, 123_456, 1_000_000_007L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        int previous = -1;
+        for (long value : values) {
+            int index = Histogram.indexOf(value);
+            long upper = Histogram.upperBoundOf(index);
+            assertTrue(index >= previous, "Las cubetas deben crecer con el valor");
+            assertTrue(upper >= value, "La cubeta de " + value + " debe contenerlo");
+            assertTrue(upper - value <= value / 32 + 1, "Error relativo demasiado grande para " + value);
+            previous = index;
+        }
+    }
+
+    @Test
+    void testQuantilesOfUniformValues() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 1);
+        assertEquals(5_000_000, histogram.getValueAtQuantile(0.50), 5_000_000 / 32.0);
+        assertEquals(9_900_000, histogram.getValueAtQuantile(0.99), 9_900_000 / 32.0);
+        assertEquals(10_000_000, histogram.getValueAtQuantile(1.0));
+        assertEquals(5000, histogram.getCountAtOrBelow(5_000_000), 5000 / 32.0);
+    }
+
+    @Test
+    void testConcurrentRecordsAreNotLost() throws Exception {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(4L * 49_999 * 50_000 / 2, histogram.getSum());
+        assertEquals(49_999, histogram.getMax());
+    }
+}
@@ -0,0 +1,69 @@
+package stevedev.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del registro de métricas y su publicación en formato Prometheus
+ */
+class MetricsRegistryTest {
+
+    @Test
+    void testScrapeWritesPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter bytes = registry.counter("test_bytes_total", "Bytes de prueba");
+        registry.gauge("test_queue", "Cola de prueba", () -> 3);
+        Histogram latency = registry.histogram("test_latency_seconds", "Latencia de prueba", 1e-9, 0.01, 0.1, 1);
+        bytes.add(1500);
+        bytes.add(-5);
+        latency.record(5_000_000);
+        latency.record(50_000_000);
+        latency.record(2_000_000_000L);
+
+        String text = registry.scrape();
+
+        assertTrue(text.contains("# TYPE test_bytes_total counter\ntest_bytes_total 1500\n"), text);
+        assertTrue(text.contains("# TYPE test_queue gauge\ntest_queue 3\n"), text);
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"0.01\"} 1\n"), text);
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"0.1\"} 2\n"), text);
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"1\"} 2\n"), text);
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("test_latency_seconds_sum 2.055\n"), text);
+        assertTrue(text.contains("test_latency_seconds_count 3\n"), text);
+    }
+
+    @Test
+    void testSameNameReturnsSameMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter first = registry.counter("test_total", "Prueba");
+        Counter second = registry.counter("test_total", "Prueba");
+
+        assertSame(first, second);
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("test_total", "Prueba", () -> 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("nombre con espacios", "Prueba"));
+    }
+
+    @Test
+    void testServerPublishesOnLoopback() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Prueba").add(7);
+        MetricsServer server = MetricsServer.start(registry, 0);
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + MetricsServer.PATH)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+            assertTrue(response.body().contains("test_requests_total 7"));
+        } finally {
+            server.stop();
+        }
+    }
+}
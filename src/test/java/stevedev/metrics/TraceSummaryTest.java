@@ -0,0 +1,38 @@
+package stevedev.metrics;
+
+import org.junit.jupiter.api.Test;
+import stevedev.model.DownloadTrace;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del resumen de fases de un lote
+ */
+class TraceSummaryTest {
+
+    @Test
+    void testSummaryBreaksDownWallTime() throws Exception {
+        TraceSummary summary = new TraceSummary();
+        for (int i = 0; i < 3; i++) {
+            DownloadTrace trace = new DownloadTrace();
+            trace.markStarted();
+            Thread.sleep(20);
+            trace.add(DownloadTrace.Phase.TRANSFER, 10_000_000);
+            trace.add(DownloadTrace.Phase.LOG, 2_000_000);
+            trace.markFinished();
+            summary.record(trace);
+        }
+        summary.record(new DownloadTrace());
+
+        assertEquals(3, summary.getDownloads(), "Una traza sin terminar no cuenta");
+        assertEquals(3, summary.getPhase(DownloadTrace.Phase.TRANSFER).getCount());
+        assertEquals(30_000_000, summary.getPhase(DownloadTrace.Phase.TRANSFER).getSum());
+        assertEquals(0, summary.getPhase(DownloadTrace.Phase.DNS).getCount());
+
+        String table = summary.format();
+        assertTrue(table.contains("transfer"));
+        assertTrue(table.contains("log"));
+        assertTrue(table.contains("sin fase"));
+        assertFalse(table.contains("dns"), "Las fases sin datos no aparecen");
+    }
+}